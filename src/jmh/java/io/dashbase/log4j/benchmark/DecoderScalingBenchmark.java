@@ -0,0 +1,104 @@
+package io.dashbase.log4j.benchmark;
+
+import io.dashbase.log4j.model.Log4jLoggingEvent;
+import io.dashbase.log4j.parser.Log4jDecoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time for each of {@code threads} threads to decode the same lines at once, through one thread-safe
+ * {@link Log4jDecoder} shared by all of them or through a {@link Log4jDecoder#copy()} per thread. Every thread
+ * decodes the same number of lines, so the time stays flat as long as decoding scales with the threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class DecoderScalingBenchmark {
+    private static final String PATTERN = "%d{DEFAULT} [%t] %-5p %c - %m%n";
+    private static final int LINES = 4096;
+
+    @Param({"1", "2", "4", "8", "16", "32"})
+    public int threads;
+
+    private String[] lines;
+    private Log4jDecoder shared;
+    private Log4jDecoder[] copies;
+    private ExecutorService executor;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        lines = new LogLineGenerator(PATTERN, ZoneOffset.UTC, 42).lines(LINES);
+        shared = Log4jDecoder.builder(PATTERN).threadSafe(true).build();
+        copies = new Log4jDecoder[threads];
+        for (int i = 0; i < threads; i++) {
+            copies[i] = shared.copy();
+        }
+        executor = Executors.newFixedThreadPool(threads);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Benchmark
+    public long shared() throws InterruptedException, ExecutionException {
+        List<Future<Long>> futures = new ArrayList<>(threads);
+        for (int i = 0; i < threads; i++) {
+            futures.add(executor.submit(() -> decode(shared)));
+        }
+        return sum(futures);
+    }
+
+    @Benchmark
+    public long perThread() throws InterruptedException, ExecutionException {
+        List<Future<Long>> futures = new ArrayList<>(threads);
+        for (int i = 0; i < threads; i++) {
+            Log4jDecoder decoder = copies[i];
+            futures.add(executor.submit(() -> decode(decoder)));
+        }
+        return sum(futures);
+    }
+
+    private long decode(Log4jDecoder decoder) {
+        Log4jLoggingEvent reuse = new Log4jLoggingEvent();
+        long result = 0;
+        for (String line : lines) {
+            if (decoder.parseInto(line, reuse)) {
+                result += reuse.epochSecond;
+            }
+        }
+        return result;
+    }
+
+    private static long sum(List<Future<Long>> futures) throws InterruptedException, ExecutionException {
+        long result = 0;
+        for (Future<Long> future : futures) {
+            result += future.get();
+        }
+        return result;
+    }
+}
@@ -0,0 +1,51 @@
+package io.dashbase.log4j.benchmark;
+
+import io.dashbase.log4j.parser.Log4jDecoder;
+import io.dashbase.log4j.parser.Log4jDecoderFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.ZoneOffset;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to build a decoder for a log source: compiling its pattern, or taking the compiled pattern from a
+ * {@link Log4jDecoderFactory} that has already seen it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class DecoderStartupBenchmark {
+    @Param({"%d{DEFAULT} [%t] %-5p %c - %m%n", "[%d] [%t] %-5p %c{2}: %m - tx.id=%X{tx.id} mdc=%X%n"})
+    public String pattern;
+
+    private Log4jDecoderFactory factory;
+
+    @Setup
+    public void setup() {
+        factory = new Log4jDecoderFactory();
+        factory.decoder(pattern, ZoneOffset.UTC);
+    }
+
+    @Benchmark
+    public Log4jDecoder compile() {
+        return Log4jDecoder.builder(pattern).build();
+    }
+
+    @Benchmark
+    public Log4jDecoder cached() {
+        return factory.decoder(pattern, ZoneOffset.UTC);
+    }
+}
@@ -0,0 +1,169 @@
+package io.dashbase.log4j.benchmark;
+
+import io.dashbase.log4j.model.ConversionPatternEl;
+import io.dashbase.log4j.model.Log4jEventBatch;
+import io.dashbase.log4j.model.Log4jLoggingEvent;
+import io.dashbase.log4j.parser.DecoderMetrics;
+import io.dashbase.log4j.parser.LazyLog4jEvent;
+import io.dashbase.log4j.parser.Log4jDecoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of {@link Log4jDecoder#parseString} and {@link Log4jDecoder#parseInto}, on chars and on UTF-8
+ * bytes, and of {@link Log4jDecoder#decodeBatch} per line, per scenario. {@code parseIntoProjected} only
+ * extracts the timestamp, level and message, {@code parseLazyLevel} matches lazily and only reads the level.
+ * Run with {@code gradle jmh}, which also attaches the gc profiler so the allocation rate per operation is
+ * reported next to the throughput.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class Log4jDecoderBenchmark {
+    private static final int LINES = 1024;
+
+    public enum Scenario {
+        DEFAULT("%d{DEFAULT} [%t] %-5p %c - %m%n"),
+        DEFAULT_PERIOD("%d{DEFAULT_PERIOD} [%t] %-5p %c - %m%n"),
+        DEFAULT_NANOS("%d{DEFAULT_NANOS} [%t] %-5p %c - %m%n"),
+        ISO8601("%d{ISO8601} [%t] %-5p %c - %m%n"),
+        ISO8601_BASIC("%d{ISO8601_BASIC} [%t] %-5p %c - %m%n"),
+        ABSOLUTE("%d{ABSOLUTE} [%t] %-5p %c - %m%n"),
+        DATE("%d{DATE} [%t] %-5p %c - %m%n"),
+        // DATE with unpadded days and hours, which the strict formatter rejects
+        DATE_UNPADDED("%d{DATE} [%t] %-5p %c - %m%n"),
+        LOCATION("%d [%-6p] %C{1}.%M(%F:%L) - %m%n"),
+        MDC_HEAVY("[%d] [%t] %-5p %c{2}: %m - tx.id=%X{tx.id} tx.seg=%X{tx.segment} mdc=%X%n"),
+        MAP_HEAVY("%d %-5p %c - %K - %m%n"),
+        LONG_MESSAGE("%d{DEFAULT} [%t] %-5p %c - %m%n"),
+        NON_MATCHING("%d{DEFAULT} [%t] %-5p %c - %m%n");
+
+        final String pattern;
+
+        Scenario(String pattern) {
+            this.pattern = pattern;
+        }
+    }
+
+    @Param
+    public Scenario scenario;
+
+    private Log4jDecoder decoder;
+    private Log4jDecoder projectedDecoder;
+    private Log4jDecoder measuredDecoder;
+    private final Log4jLoggingEvent reuse = new Log4jLoggingEvent();
+    private final Log4jEventBatch batch = new Log4jEventBatch(LINES);
+    private final LazyLog4jEvent lazy = new LazyLog4jEvent();
+    private String[] lines;
+    private byte[][] utf8Lines;
+    private int next;
+
+    @Setup
+    public void setup() {
+        decoder = Log4jDecoder.builder(scenario.pattern).build();
+        projectedDecoder = Log4jDecoder.builder(scenario.pattern)
+            .fields(EnumSet.of(ConversionPatternEl.Type.DATE, ConversionPatternEl.Type.LEVEL, ConversionPatternEl.Type.MESSAGE))
+            .build();
+        measuredDecoder = Log4jDecoder.builder(scenario.pattern).metrics(new DecoderMetrics()).build();
+        lines = generate(scenario);
+        utf8Lines = new byte[LINES][];
+        for (int i = 0; i < LINES; i++) {
+            utf8Lines[i] = lines[i].getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    static String[] generate(Scenario scenario) {
+        LogLineGenerator generator = new LogLineGenerator(scenario.pattern, ZoneOffset.UTC, 42);
+        switch (scenario) {
+            case MDC_HEAVY:
+            case MAP_HEAVY:
+                generator.mdcEntries(16);
+                break;
+            case LONG_MESSAGE:
+                // roughly 4KB per message
+                generator.messageWords(600);
+                break;
+            case NON_MATCHING:
+                String[] lines = new String[LINES];
+                for (int i = 0; i < LINES; i++) {
+                    lines[i] = generator.nextStackTraceLine();
+                }
+                return lines;
+            case DATE_UNPADDED:
+                lines = generator.lines(LINES);
+                for (int i = 0; i < LINES; i++) {
+                    lines[i] = lines[i].replaceFirst("^0", "").replaceFirst(" 0(\\d):", " $1:");
+                }
+                return lines;
+            default:
+        }
+        return generator.lines(LINES);
+    }
+
+    @Benchmark
+    public Log4jLoggingEvent parseString() {
+        String line = lines[next];
+        next = (next + 1) % LINES;
+        return decoder.parseString(line);
+    }
+
+    @Benchmark
+    public boolean parseInto() {
+        String line = lines[next];
+        next = (next + 1) % LINES;
+        return decoder.parseInto(line, reuse);
+    }
+
+    @Benchmark
+    public boolean parseIntoProjected() {
+        String line = lines[next];
+        next = (next + 1) % LINES;
+        return projectedDecoder.parseInto(line, reuse);
+    }
+
+    @Benchmark
+    public boolean parseIntoWithMetrics() {
+        String line = lines[next];
+        next = (next + 1) % LINES;
+        return measuredDecoder.parseInto(line, reuse);
+    }
+
+    @Benchmark
+    public Object parseLazyLevel() {
+        String line = lines[next];
+        next = (next + 1) % LINES;
+        return decoder.parseLazyInto(line, lazy) ? lazy.getLogLevel() : null;
+    }
+
+    @Benchmark
+    public boolean parseBytesInto() {
+        byte[] line = utf8Lines[next];
+        next = (next + 1) % LINES;
+        return decoder.parseInto(line, 0, line.length, reuse);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public int decodeBatch() {
+        return decoder.decodeBatch(Arrays.asList(lines).iterator(), batch);
+    }
+}
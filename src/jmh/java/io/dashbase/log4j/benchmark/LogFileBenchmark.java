@@ -0,0 +1,105 @@
+package io.dashbase.log4j.benchmark;
+
+import io.dashbase.log4j.model.Log4jLoggingEvent;
+import io.dashbase.log4j.parser.Log4jDecoder;
+import io.dashbase.log4j.parser.Log4jEventReader;
+import io.dashbase.log4j.parser.MappedLogFileDecoder;
+import io.dashbase.log4j.parser.ParallelLogFileDecoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZoneOffset;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Time to decode a whole log file with a stack trace every 50 events, through {@link Log4jEventReader} on a
+ * buffered reader, through {@link MappedLogFileDecoder} and through {@link ParallelLogFileDecoder} on the
+ * common pool.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class LogFileBenchmark {
+    private static final String PATTERN = "%d{DEFAULT} [%t] %-5p %c - %m%n";
+    private static final int EVENTS = 200_000;
+
+    private Path file;
+    private Log4jDecoder decoder;
+    private final Log4jLoggingEvent reuse = new Log4jLoggingEvent();
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        decoder = Log4jDecoder.builder(PATTERN).build();
+        LogLineGenerator generator = new LogLineGenerator(PATTERN, ZoneOffset.UTC, 42);
+        file = Files.createTempFile("log-file-benchmark", ".log");
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < EVENTS; i++) {
+                writer.write(generator.nextLine());
+                writer.newLine();
+                if (i % 50 == 0) {
+                    writer.write("java.lang.IllegalStateException: failed");
+                    writer.newLine();
+                    for (int j = 0; j < 12; j++) {
+                        writer.write(generator.nextStackTraceLine());
+                        writer.newLine();
+                    }
+                }
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public long reader() throws IOException {
+        long count = 0;
+        try (Log4jEventReader reader = new Log4jEventReader(decoder, Files.newBufferedReader(file, StandardCharsets.UTF_8))) {
+            while (reader.readInto(reuse)) {
+                count += reuse.epochSecond;
+            }
+        }
+        return count;
+    }
+
+    @Benchmark
+    public long mapped() throws IOException {
+        long count = 0;
+        try (MappedLogFileDecoder mapped = new MappedLogFileDecoder(decoder, file)) {
+            while (mapped.readInto(reuse)) {
+                count += reuse.epochSecond;
+            }
+        }
+        return count;
+    }
+
+    @Benchmark
+    public long parallel() throws IOException {
+        AtomicLong count = new AtomicLong();
+        new ParallelLogFileDecoder(() -> Log4jDecoder.builder(PATTERN).build())
+            .chunkSize(1 << 20)
+            .decode(file, event -> count.addAndGet(event.epochSecond));
+        return count.get();
+    }
+}
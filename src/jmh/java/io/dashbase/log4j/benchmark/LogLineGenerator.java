@@ -0,0 +1,191 @@
+package io.dashbase.log4j.benchmark;
+
+import io.dashbase.log4j.conversion.ConversionPatternParser;
+import io.dashbase.log4j.model.ConversionPatternEl;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Generates realistic log lines for any conversion pattern. The output only depends on the pattern,
+ * the seed and the settings, so benchmark runs can be compared with each other.
+ */
+public class LogLineGenerator {
+    private static final String[] LEVELS = {"TRACE", "DEBUG", "INFO", "INFO", "INFO", "WARN", "ERROR"};
+    private static final String[] PACKAGES = {"io.dashbase", "org.apache.kafka", "com.example.billing", "net.sf.util"};
+    private static final String[] CLASSES = {"RequestHandler", "Consumer", "InvoiceService", "ConnectionPool", "Indexer"};
+    private static final String[] METHODS = {"handle", "poll", "run", "close", "flush", "process"};
+    private static final String[] WORDS = {"request", "completed", "in", "ms", "user", "failed", "to", "connect",
+        "retrying", "partition", "offset", "committed", "batch", "of", "records", "cache", "miss", "for", "key"};
+
+    private final String conversionPattern;
+    private final List<ConversionPatternEl> els;
+    private final ZoneId zoneId;
+    private final Random random;
+    private int messageWords = 12;
+    private int mdcEntries = 4;
+    private long timestamp = Instant.parse("2020-06-01T08:00:00Z").toEpochMilli();
+
+    public LogLineGenerator(String conversionPattern, ZoneId zoneId, long seed) {
+        ConversionPatternParser parser = new ConversionPatternParser(zoneId);
+        this.conversionPattern = parser.prepare(conversionPattern);
+        this.els = parser.extractConversionPattern(this.conversionPattern);
+        this.zoneId = zoneId;
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Sets the number of words in each generated message.
+     */
+    public LogLineGenerator messageWords(int messageWords) {
+        this.messageWords = messageWords;
+        return this;
+    }
+
+    /**
+     * Sets the number of entries generated for %X and %K without a key.
+     */
+    public LogLineGenerator mdcEntries(int mdcEntries) {
+        this.mdcEntries = mdcEntries;
+        return this;
+    }
+
+    public String[] lines(int count) {
+        String[] lines = new String[count];
+        for (int i = 0; i < count; i++) {
+            lines[i] = nextLine();
+        }
+        return lines;
+    }
+
+    public String nextLine() {
+        // lines are mostly in time order, a few milliseconds apart
+        timestamp += random.nextInt(50);
+        StringBuilder sb = new StringBuilder();
+        int idx = 0;
+        for (ConversionPatternEl el : els) {
+            sb.append(conversionPattern, idx, el.getBeginIndex());
+            appendField(sb, el);
+            idx = el.getBeginIndex() + el.getLength();
+        }
+        sb.append(conversionPattern, idx, conversionPattern.length());
+        return sb.toString();
+    }
+
+    /**
+     * Returns a stack trace continuation line, which never matches a pattern that starts with a field.
+     */
+    public String nextStackTraceLine() {
+        return "\tat " + className() + "." + pick(METHODS) + "(" + pick(CLASSES) + ".java:" + (1 + random.nextInt(900)) + ")";
+    }
+
+    private void appendField(StringBuilder sb, ConversionPatternEl el) {
+        int start = sb.length();
+        switch (el.getType()) {
+            case DATE:
+                sb.append(el.dateTimeFormatter.format(ZonedDateTime.ofInstant(Instant.ofEpochMilli(timestamp), zoneId)));
+                break;
+            case LEVEL:
+                sb.append(pick(LEVELS));
+                break;
+            case LOGGER:
+            case FQCN:
+            case CLASS:
+                sb.append(className());
+                break;
+            case THREAD:
+                sb.append("worker-").append(random.nextInt(16));
+                break;
+            case MESSAGE:
+                appendMessage(sb);
+                break;
+            case EXCEPTION:
+                sb.append("java.lang.IllegalStateException: ").append(pick(WORDS));
+                for (int i = 0; i < 3; i++) {
+                    sb.append('\n').append(nextStackTraceLine());
+                }
+                break;
+            case LOCATION:
+                sb.append(className()).append('.').append(pick(METHODS))
+                    .append('(').append(pick(CLASSES)).append(".java:").append(1 + random.nextInt(900)).append(')');
+                break;
+            case FILE:
+                sb.append(pick(CLASSES)).append(".java");
+                break;
+            case METHOD:
+                sb.append(pick(METHODS));
+                break;
+            case MARKER:
+                sb.append("AUDIT");
+                break;
+            case UUID:
+                sb.append(new UUID(random.nextLong(), random.nextLong()));
+                break;
+            case NDC:
+                sb.append('[').append(pick(WORDS)).append(' ').append(pick(WORDS)).append(']');
+                break;
+            case MDC:
+                if (el.getModifier() != null && !el.getModifier().contains(",")) {
+                    sb.append(pick(WORDS)).append('-').append(random.nextInt(100000));
+                } else {
+                    appendMap(sb, "mdc");
+                }
+                break;
+            case MAP:
+                appendMap(sb, "key");
+                break;
+            case NANO_TS:
+                sb.append(timestamp * 1000 + random.nextInt(1000));
+                break;
+            case RELATIVE_TS:
+                sb.append(timestamp % 10000000);
+                break;
+            case THREAD_PRIORITY:
+                sb.append(1 + random.nextInt(10));
+                break;
+            case PID:
+            case SEQ:
+            case THREAD_ID:
+            case LINE:
+                sb.append(1 + random.nextInt(30000));
+                break;
+            default:
+                throw new IllegalArgumentException("Cannot generate a value for: " + el.getPlaceholderName());
+        }
+        while (sb.length() - start < el.getMinWidth()) {
+            sb.append(' ');
+        }
+    }
+
+    private void appendMessage(StringBuilder sb) {
+        for (int i = 0; i < messageWords; i++) {
+            if (i > 0) {
+                sb.append(' ');
+            }
+            sb.append(pick(WORDS));
+        }
+    }
+
+    private void appendMap(StringBuilder sb, String keyPrefix) {
+        sb.append('{');
+        for (int i = 0; i < mdcEntries; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(keyPrefix).append('.').append(i).append('=').append(pick(WORDS)).append(random.nextInt(1000));
+        }
+        sb.append('}');
+    }
+
+    private String className() {
+        return pick(PACKAGES) + "." + pick(CLASSES);
+    }
+
+    private String pick(String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+}
@@ -0,0 +1,89 @@
+package io.dashbase.log4j.benchmark;
+
+import io.dashbase.log4j.model.Log4jLoggingEvent;
+import io.dashbase.log4j.parser.Log4jDecoder;
+import io.dashbase.log4j.parser.Log4jMultiDecoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of decoding a stream that mixes lines of several patterns, in runs of a few lines per pattern,
+ * through {@link Log4jMultiDecoder} and by trying one decoder per pattern in turn.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class MultiDecoderBenchmark {
+    private static final int LINES = 1024;
+    private static final List<String> PATTERNS = List.of(
+        "%d{DEFAULT} [%t] %-5p %c - %m%n",
+        "%d{ISO8601} [%t] %-5p %c - %m%n",
+        "%d{DATE} [%t] %-5p %c - %m%n",
+        "[%d] [%t] %-5p %c{2}: %m%n",
+        "%d [%-6p] %C{1}.%M(%F:%L) - %m%n",
+        "%-5p %d{ABSOLUTE} [%t] %c - %m%n",
+        "%d{DEFAULT_NANOS} %-5p %c - %m%n",
+        "%d{COMPACT} %-5p %c - %m%n");
+
+    private Log4jMultiDecoder multiDecoder;
+    private Log4jDecoder[] decoders;
+    private final Log4jLoggingEvent reuse = new Log4jLoggingEvent();
+    private String[] lines;
+    private int next;
+
+    @Setup
+    public void setup() {
+        multiDecoder = new Log4jMultiDecoder(PATTERNS, ZoneOffset.UTC);
+        decoders = new Log4jDecoder[PATTERNS.size()];
+        List<LogLineGenerator> generators = new ArrayList<>();
+        for (int i = 0; i < PATTERNS.size(); i++) {
+            decoders[i] = Log4jDecoder.builder(PATTERNS.get(i)).build();
+            generators.add(new LogLineGenerator(PATTERNS.get(i), ZoneOffset.UTC, 42 + i));
+        }
+        Random random = new Random(42);
+        lines = new String[LINES];
+        int pattern = 0;
+        for (int i = 0; i < LINES; i++) {
+            if (random.nextInt(4) == 0) {
+                pattern = random.nextInt(PATTERNS.size());
+            }
+            lines[i] = generators.get(pattern).nextLine();
+        }
+    }
+
+    @Benchmark
+    public boolean multi() {
+        String line = lines[next];
+        next = (next + 1) % LINES;
+        return multiDecoder.parseInto(line, reuse);
+    }
+
+    @Benchmark
+    public boolean sequential() {
+        String line = lines[next];
+        next = (next + 1) % LINES;
+        for (Log4jDecoder decoder : decoders) {
+            if (decoder.parseInto(line, reuse)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
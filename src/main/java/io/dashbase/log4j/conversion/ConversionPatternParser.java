@@ -26,26 +26,70 @@ public class ConversionPatternParser {
     }
 
     public Pattern getRegexPattern(String conversionPattern) {
-        return Pattern.compile(toRegexPattern(conversionPattern));
+        return getRegexPattern(conversionPattern, extractConversionPattern(conversionPattern));
     }
 
-    private String toRegexPattern(String conversionPattern) {
+    /**
+     * Same as {@link #getRegexPattern(String)} with the rules already extracted from the pattern.
+     */
+    public Pattern getRegexPattern(String conversionPattern, List<ConversionPatternEl> els) {
+        return Pattern.compile(toRegexPattern(conversionPattern, els));
+    }
+
+    /**
+     * Compiles the conversion pattern into a regex-free {@link ScanPlan}, or returns null if the pattern
+     * contains an element the plan cannot reproduce exactly, e.g. free text with a width modifier or
+     * two free text fields with no literal between them.
+     */
+    public ScanPlan getScanPlan(String conversionPattern) {
+        return getScanPlan(conversionPattern, extractConversionPattern(conversionPattern));
+    }
+
+    /**
+     * Same as {@link #getScanPlan(String)} with the rules already extracted from the pattern.
+     */
+    public ScanPlan getScanPlan(String conversionPattern, List<ConversionPatternEl> els) {
+        markFollowedByQuotedString(conversionPattern, els);
+        String[] literals = new String[els.size() + 1];
+        ScanPlan.Field[] fields = new ScanPlan.Field[els.size()];
         int idx = 0;
-        List<ConversionPatternEl> els = extractConversionPattern(conversionPattern);
-        ConversionPatternEl prevRule = null;
-        for (ConversionPatternEl rule : els) {
-            if ((rule.getBeginIndex() > idx) && (prevRule != null)) {
-                prevRule.setFollowedByQuotedString(true);
+        for (int i = 0; i < els.size(); i++) {
+            ConversionPatternEl el = els.get(i);
+            literals[i] = conversionPattern.substring(idx, el.getBeginIndex());
+            fields[i] = getScanFieldForPatternEl(el);
+            if (fields[i] == null) {
+                return null;
             }
-            idx = rule.getBeginIndex();
-            idx += rule.getLength();
-            prevRule = rule;
+            idx = el.getBeginIndex() + el.getLength();
         }
-        if ((conversionPattern.length() > idx) && (prevRule != null)) {
-            prevRule.setFollowedByQuotedString(true);
+        literals[els.size()] = conversionPattern.substring(idx);
+        for (int i = 0; i < fields.length - 1; i++) {
+            // free text can only end at a literal or at the end of the line
+            if (fields[i].kind == ScanPlan.Kind.TEXT && literals[i + 1].isEmpty()) {
+                return null;
+            }
+        }
+        return new ScanPlan(literals, fields);
+    }
+
+    /**
+     * Builds the {@link LinePrefilter} of the conversion pattern from its extracted rules.
+     */
+    public LinePrefilter getPrefilter(String conversionPattern, List<ConversionPatternEl> els) {
+        List<String> literals = new ArrayList<>();
+        int idx = 0;
+        for (ConversionPatternEl el : els) {
+            literals.add(conversionPattern.substring(idx, el.getBeginIndex()));
+            idx = el.getBeginIndex() + el.getLength();
         }
+        literals.add(conversionPattern.substring(idx));
+        return new LinePrefilter(literals, els.isEmpty() ? null : els.get(0));
+    }
+
+    private String toRegexPattern(String conversionPattern, List<ConversionPatternEl> els) {
+        int idx = 0;
+        markFollowedByQuotedString(conversionPattern, els);
         StringBuilder sb = new StringBuilder();
-        idx = 0;
         for (ConversionPatternEl el : els) {
             if (el.getBeginIndex() > idx) {
                 sb.append(Pattern.quote(conversionPattern.substring(idx, el.getBeginIndex())));
@@ -61,6 +105,22 @@ public class ConversionPatternParser {
         return sb.toString();
     }
 
+    private void markFollowedByQuotedString(String conversionPattern, List<ConversionPatternEl> els) {
+        int idx = 0;
+        ConversionPatternEl prevRule = null;
+        for (ConversionPatternEl rule : els) {
+            if ((rule.getBeginIndex() > idx) && (prevRule != null)) {
+                prevRule.setFollowedByQuotedString(true);
+            }
+            idx = rule.getBeginIndex();
+            idx += rule.getLength();
+            prevRule = rule;
+        }
+        if ((conversionPattern.length() > idx) && (prevRule != null)) {
+            prevRule.setFollowedByQuotedString(true);
+        }
+    }
+
     /**
      * convert Log4j conversionPattern to conversion rule we use in parser
      */
@@ -185,6 +245,42 @@ public class ConversionPatternParser {
         throw new IllegalArgumentException("cannot find the corresponding regex pattern for the placeholder: " + el.getPlaceholderName());
     }
 
+    /**
+     * convert ConversionPatternEl to the scan plan field matching the same text as its regex, or null if
+     * the regex cannot be reproduced without backtracking.
+     */
+    private ScanPlan.Field getScanFieldForPatternEl(ConversionPatternEl el) {
+        if (el.getType() == null) {
+            return null;
+        }
+        // width modifiers on "*" quantifiers change how the regex backtracks
+        boolean hasLengthHint = RegexUtils.getLengthHint(el).length() > 0;
+        switch (el.getType()) {
+            case DATE:
+                return ScanPlan.date(RegexUtils.getRegexForSimpleDateFormat(el.getModifier()));
+            case LEVEL:
+                if (!hasLengthHint) {
+                    return ScanPlan.chars(ScanPlan.UPPER, 4, 5);
+                }
+                int minWidth = Math.max(0, el.getMinWidth());
+                int maxWidth = el.getMaxWidth() > 0 ? el.getMaxWidth() : Integer.MAX_VALUE;
+                return ScanPlan.chars(ScanPlan.UPPER | ScanPlan.SPACE, minWidth, maxWidth);
+            case MESSAGE:
+            case EXCEPTION:
+                return hasLengthHint ? null : ScanPlan.text(true);
+            case NANO_TS:
+            case PID:
+            case RELATIVE_TS:
+            case SEQ:
+            case THREAD_ID:
+            case THREAD_PRIORITY:
+            case LINE:
+                return hasLengthHint ? null : ScanPlan.chars(ScanPlan.DIGIT, 0, Integer.MAX_VALUE);
+            default:
+                return hasLengthHint ? null : ScanPlan.text(false);
+        }
+    }
+
     public String prepare(String conversionPattern) {
         if (!conversionPattern.endsWith("%n")) {
             return conversionPattern;
@@ -274,12 +370,11 @@ public class ConversionPatternParser {
                 el.lenientDateTimeFormatter = Optional.empty();
             }
             el.hasDate = DateTimeFormatUtils.containsDate(format);
-            el.useCache = !DateTimeFormatUtils.containsMilliSecond(format);
             format = format.toLowerCase();
             if (el.dateTimeFormatter.getZone() == null && !(format.contains("x") || format.contains("z"))) {
                 // if timestamp doesn't specify timezone, use defaultTimeZone instad.
                 el.dateTimeFormatter = el.dateTimeFormatter.withZone(defaultTimeZone);
-                el.lenientDateTimeFormatter.ifPresent(dtf -> dtf.withZone(defaultTimeZone));
+                el.lenientDateTimeFormatter = el.lenientDateTimeFormatter.map(dtf -> dtf.withZone(defaultTimeZone));
             }
         }
     }
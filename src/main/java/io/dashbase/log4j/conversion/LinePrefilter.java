@@ -0,0 +1,202 @@
+package io.dashbase.log4j.conversion;
+
+import io.dashbase.log4j.model.ConversionPatternEl;
+import io.dashbase.log4j.util.DateFormatPattern;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A cheap test that rejects most lines a conversion pattern cannot match, such as stack trace continuation
+ * lines, in a few char comparisons before the scan plan or the regex run. It checks the literal the pattern
+ * starts with, the fixed-width start of the first field (the digits and separators at the start of a %d, or
+ * the capitals of a level), that the literals between fields occur in order, and the literal it ends with.
+ *
+ * <p>Every check is implied by the regex, so a line the filter rejects never matches the pattern; a line it
+ * accepts may still not match.
+ */
+public final class LinePrefilter {
+    private static final byte LITERAL = 0;
+    private static final byte DIGIT = 1;
+    private static final byte UPPER = 2;
+    private static final byte UPPER_OR_SPACE = 3;
+
+    private final String leading;
+    // the non-empty literals between fields, in order
+    private final String[] inner;
+    private final String trailing;
+    // per char after the leading literal: its class, or LITERAL for the char in shapeChars
+    private final byte[] shapeClasses;
+    private final char[] shapeChars;
+    private final int minLength;
+
+    LinePrefilter(List<String> literals, ConversionPatternEl firstRule) {
+        leading = literals.get(0);
+        trailing = literals.size() > 1 ? literals.get(literals.size() - 1) : "";
+        List<String> inner = new ArrayList<>();
+        for (int i = 1; i < literals.size() - 1; i++) {
+            if (!literals.get(i).isEmpty()) {
+                inner.add(literals.get(i));
+            }
+        }
+        this.inner = inner.toArray(new String[0]);
+
+        StringBuilder classes = new StringBuilder();
+        StringBuilder chars = new StringBuilder();
+        if (firstRule != null) {
+            appendShape(firstRule, classes, chars);
+        }
+        shapeClasses = new byte[classes.length()];
+        shapeChars = new char[chars.length()];
+        for (int i = 0; i < shapeClasses.length; i++) {
+            shapeClasses[i] = (byte) classes.charAt(i);
+            shapeChars[i] = chars.charAt(i);
+        }
+        int minLength = leading.length() + shapeClasses.length + trailing.length();
+        for (String literal : this.inner) {
+            minLength += literal.length();
+        }
+        this.minLength = minLength;
+    }
+
+    /**
+     * Appends the chars every match of the rule's regex starts with, see ConversionPatternParser.
+     */
+    private static void appendShape(ConversionPatternEl rule, StringBuilder classes, StringBuilder chars) {
+        if (rule.getType() == ConversionPatternEl.Type.LEVEL) {
+            if (rule.getMinWidth() <= 0 && rule.getMaxWidth() <= 0) {
+                // [A-Z]{4,5}
+                appendClass(UPPER, 4, classes, chars);
+            } else if (rule.getMinWidth() > 0) {
+                appendClass(UPPER_OR_SPACE, 1, classes, chars);
+            }
+            return;
+        }
+        if (rule.getType() != ConversionPatternEl.Type.DATE || rule.getModifier() == null) {
+            return;
+        }
+        for (DateFormatPattern.Token token : DateFormatPattern.of(rule.getModifier()).tokens()) {
+            if (token.isLiteral()) {
+                for (int i = 0; i < token.literal().length(); i++) {
+                    classes.append((char) LITERAL);
+                    chars.append(token.literal().charAt(i));
+                }
+                continue;
+            }
+            switch (token.letter()) {
+                case 'y':
+                    appendClass(DIGIT, token.count() == 2 ? 2 : 4, classes, chars);
+                    continue;
+                case 'M':
+                    if (token.count() == 2) {
+                        appendClass(DIGIT, 2, classes, chars);
+                        continue;
+                    }
+                    if (token.count() == 1) {
+                        appendClass(DIGIT, 1, classes, chars);
+                    }
+                    return;
+                case 'W':
+                case 'F':
+                    appendClass(DIGIT, 1, classes, chars);
+                    continue;
+                case 'w':
+                case 'D':
+                case 'd':
+                case 'H':
+                case 'k':
+                case 'K':
+                case 'h':
+                case 'm':
+                case 's':
+                case 'S':
+                case 'n':
+                    // at least one digit, the width varies after it
+                    appendClass(DIGIT, 1, classes, chars);
+                    return;
+                default:
+                    return;
+            }
+        }
+    }
+
+    private static void appendClass(byte charClass, int count, StringBuilder classes, StringBuilder chars) {
+        for (int i = 0; i < count; i++) {
+            classes.append((char) charClass);
+            chars.append('\0');
+        }
+    }
+
+    /**
+     * Returns false if the line cannot match the pattern.
+     */
+    public boolean accepts(CharSequence line) {
+        int length = line.length();
+        if (length < minLength || !regionMatches(line, 0, leading)) {
+            return false;
+        }
+        int cursor = leading.length();
+        for (int i = 0; i < shapeClasses.length; i++) {
+            char c = line.charAt(cursor + i);
+            switch (shapeClasses[i]) {
+                case LITERAL:
+                    if (c != shapeChars[i]) {
+                        return false;
+                    }
+                    break;
+                case DIGIT:
+                    if (c < '0' || c > '9') {
+                        return false;
+                    }
+                    break;
+                case UPPER:
+                    if (c < 'A' || c > 'Z') {
+                        return false;
+                    }
+                    break;
+                default:
+                    if ((c < 'A' || c > 'Z') && c != ' ') {
+                        return false;
+                    }
+            }
+        }
+        cursor += shapeClasses.length;
+        int trailingStart = length - trailing.length();
+        if (!regionMatches(line, trailingStart, trailing)) {
+            return false;
+        }
+        for (String literal : inner) {
+            int found = indexOf(line, literal, cursor, trailingStart);
+            if (found < 0) {
+                return false;
+            }
+            cursor = found + literal.length();
+        }
+        return true;
+    }
+
+    private static boolean regionMatches(CharSequence line, int offset, String literal) {
+        if (offset < 0 || offset + literal.length() > line.length()) {
+            return false;
+        }
+        for (int i = 0; i < literal.length(); i++) {
+            if (line.charAt(offset + i) != literal.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the first index of the literal in line[from, to), or -1.
+     */
+    private static int indexOf(CharSequence line, String literal, int from, int to) {
+        char first = literal.charAt(0);
+        for (int i = from, last = to - literal.length(); i <= last; i++) {
+            if (line.charAt(i) == first && regionMatches(line, i, literal)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
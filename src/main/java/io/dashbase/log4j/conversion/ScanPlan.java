@@ -0,0 +1,232 @@
+package io.dashbase.log4j.conversion;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A regex-free matcher compiled from a conversion pattern: an ordered list of literal delimiters and
+ * field extractors, run by a cursor that finds field boundaries with literal searches.
+ *
+ * <p>The plan follows the same preference order as the regex built by {@link ConversionPatternParser},
+ * so whenever it reports {@link #MATCH} the field boundaries are exactly the regex's groups. When the
+ * first choice fails and the regex could still succeed by backtracking, it reports {@link #UNDECIDED}
+ * and the caller falls back to the regex.
+ */
+public final class ScanPlan {
+    public static final int NO_MATCH = 0;
+    public static final int MATCH = 1;
+    public static final int UNDECIDED = -1;
+
+    static final int DIGIT = 1;
+    static final int UPPER = 2;
+    static final int SPACE = 4;
+
+    enum Kind {
+        // a %d field, delimited by its own date regex
+        DATE,
+        // a run of characters from a fixed class, e.g. level or line number
+        CHARS,
+        // free text, delimited by the literal that follows it or by the end of the line
+        TEXT
+    }
+
+    static final class Field {
+        final Kind kind;
+        final Pattern datePattern;
+        final int charClass;
+        final int minLength;
+        final int maxLength;
+        final boolean dotAll;
+
+        private Field(Kind kind, Pattern datePattern, int charClass, int minLength, int maxLength, boolean dotAll) {
+            this.kind = kind;
+            this.datePattern = datePattern;
+            this.charClass = charClass;
+            this.minLength = minLength;
+            this.maxLength = maxLength;
+            this.dotAll = dotAll;
+        }
+
+        boolean accepts(char c) {
+            return ((charClass & DIGIT) != 0 && c >= '0' && c <= '9')
+                || ((charClass & UPPER) != 0 && c >= 'A' && c <= 'Z')
+                || ((charClass & SPACE) != 0 && c == ' ');
+        }
+    }
+
+    static Field date(String regex) {
+        return new Field(Kind.DATE, Pattern.compile(regex), 0, 0, 0, false);
+    }
+
+    static Field chars(int charClass, int minLength, int maxLength) {
+        return new Field(Kind.CHARS, null, charClass, minLength, maxLength, false);
+    }
+
+    static Field text(boolean dotAll) {
+        return new Field(Kind.TEXT, null, 0, 0, 0, dotAll);
+    }
+
+    // literals[i] precedes fields[i]; the last literal trails the last field
+    private final String[] literals;
+    private final Field[] fields;
+
+    ScanPlan(String[] literals, Field[] fields) {
+        this.literals = literals;
+        this.fields = fields;
+    }
+
+    public int fieldCount() {
+        return fields.length;
+    }
+
+    public Scanner newScanner() {
+        return new Scanner();
+    }
+
+    /**
+     * Mutable per-use state of a plan. A scanner is not thread-safe.
+     */
+    public final class Scanner {
+        private final Matcher[] dateMatchers = new Matcher[fields.length];
+
+        private Scanner() {
+        }
+
+        /**
+         * Scans the line and stores the start and end of field i in bounds[2 * i] and bounds[2 * i + 1].
+         *
+         * @return {@link #MATCH}, {@link #NO_MATCH}, or {@link #UNDECIDED} if only the regex can tell
+         */
+        public int scan(CharSequence line, int[] bounds) {
+            int length = line.length();
+            if (!regionMatches(line, 0, literals[0])) {
+                return NO_MATCH;
+            }
+            int cursor = literals[0].length();
+            // whether an earlier field had another candidate boundary the regex could backtrack into
+            boolean backtrackable = false;
+            for (int i = 0; i < fields.length; i++) {
+                Field field = fields[i];
+                String next = literals[i + 1];
+                boolean last = i == fields.length - 1;
+                int end;
+                switch (field.kind) {
+                    case DATE: {
+                        Matcher m = dateMatchers[i];
+                        if (m == null) {
+                            m = field.datePattern.matcher(line);
+                            dateMatchers[i] = m;
+                        } else {
+                            m.reset(line);
+                        }
+                        m.region(cursor, length);
+                        if (!m.lookingAt()) {
+                            return fail(backtrackable);
+                        }
+                        end = m.end();
+                        if (last ? end != length - next.length() : !regionMatches(line, end, next)) {
+                            return fail(true);
+                        }
+                        backtrackable = true;
+                        break;
+                    }
+                    case CHARS: {
+                        int limit = (int) Math.min(length, (long) cursor + field.maxLength);
+                        int run = cursor;
+                        while (run < limit && field.accepts(line.charAt(run))) {
+                            run++;
+                        }
+                        int min = cursor + field.minLength;
+                        if (last) {
+                            end = length - next.length();
+                        } else if (next.isEmpty()) {
+                            end = run;
+                        } else {
+                            // greedy: the longest run that is followed by the literal
+                            end = run;
+                            while (end >= min && !regionMatches(line, end, next)) {
+                                end--;
+                            }
+                        }
+                        if (end < min || end > run) {
+                            return fail(backtrackable);
+                        }
+                        backtrackable |= end > min;
+                        break;
+                    }
+                    case TEXT:
+                        if (last) {
+                            end = length - next.length();
+                            if (end < cursor) {
+                                return fail(backtrackable);
+                            }
+                        } else {
+                            // lazy: the first occurrence of the literal
+                            end = indexOf(line, next, cursor);
+                            if (end < 0) {
+                                return fail(backtrackable);
+                            }
+                            backtrackable = true;
+                        }
+                        if (!field.dotAll && containsLineTerminator(line, cursor, end)) {
+                            return fail(backtrackable);
+                        }
+                        break;
+                    default:
+                        throw new IllegalStateException("Unknown field kind: " + field.kind);
+                }
+                bounds[2 * i] = cursor;
+                bounds[2 * i + 1] = end;
+                cursor = end + next.length();
+            }
+            if (fields.length == 0) {
+                return cursor == length ? MATCH : NO_MATCH;
+            }
+            return regionMatches(line, length - literals[fields.length].length(), literals[fields.length])
+                ? MATCH : fail(backtrackable);
+        }
+    }
+
+    private static int fail(boolean backtrackable) {
+        return backtrackable ? UNDECIDED : NO_MATCH;
+    }
+
+    static boolean regionMatches(CharSequence text, int offset, String literal) {
+        if (offset < 0 || offset + literal.length() > text.length()) {
+            return false;
+        }
+        for (int i = 0; i < literal.length(); i++) {
+            if (text.charAt(offset + i) != literal.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static int indexOf(CharSequence text, String literal, int from) {
+        if (text instanceof String) {
+            return ((String) text).indexOf(literal, from);
+        }
+        char first = literal.charAt(0);
+        int max = text.length() - literal.length();
+        for (int i = from; i <= max; i++) {
+            if (text.charAt(i) == first && regionMatches(text, i, literal)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Line terminators as defined by {@link Pattern} for '.' without DOTALL.
+     */
+    private static boolean containsLineTerminator(CharSequence text, int start, int end) {
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029') {
+                return true;
+            }
+        }
+        return false;
+    }
+}
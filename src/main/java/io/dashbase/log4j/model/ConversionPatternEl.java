@@ -60,7 +60,6 @@ public final class ConversionPatternEl {
 	public DateTimeFormatter dateTimeFormatter;
 	public Optional<DateTimeFormatter> lenientDateTimeFormatter;
 	public boolean hasDate;
-	public boolean useCache;
 
 	public boolean isFollowedByQuotedString() {
 		return followedByQuotedString;
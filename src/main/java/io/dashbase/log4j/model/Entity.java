@@ -1,9 +1,12 @@
 package io.dashbase.log4j.model;
 
 public class Entity {
-    public final CharSequence value;
-    public final int start;
-    public final int end;
+    public CharSequence value;
+    public int start;
+    public int end;
+
+    // backs value when this entity is reused as a view
+    private TextSlice slice;
 
     public Entity(CharSequence value, int start, int end) {
         this.value = value;
@@ -11,6 +14,29 @@ public class Entity {
         this.end = end;
     }
 
+    /**
+     * Sets the value and offsets, for values that need no copy such as the name of a {@link Level}.
+     */
+    public Entity set(CharSequence value, int start, int end) {
+        this.value = value;
+        this.start = start;
+        this.end = end;
+        return this;
+    }
+
+    /**
+     * Turns this entity into an offset-only view over text[start, end), reusing the same slice each time.
+     */
+    public Entity view(CharSequence text, int start, int end) {
+        if (slice == null) {
+            slice = new TextSlice();
+        }
+        this.value = slice.set(text, start, end);
+        this.start = start;
+        this.end = end;
+        return this;
+    }
+
     @Override
     public String toString() {
         return value + "[" + start + "," + end + "]";
@@ -0,0 +1,229 @@
+package io.dashbase.log4j.model;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A compact map of MDC or %K entries: the keys, usually canonical Strings shared between events, and the
+ * value offsets of every entry in flat arrays. Lookups compare keys one by one, which is faster than hashing
+ * for the handful of entries of a log line.
+ *
+ * <p>Values added as views only get an {@link Entity} when they are read, and it is reused for the next line
+ * once the map is cleared, like the fields of a reused event. Copied values get an entity of their own.
+ *
+ * <p>The map is mutable: entries can be removed, also through the entry set and its iterator, and
+ * {@link Map.Entry#setValue} writes through.
+ */
+public final class EntityMap extends AbstractMap<String, Entity> {
+    private String[] keys = new String[8];
+    // start and end of every value
+    private int[] offsets = new int[16];
+    // the text of viewed values
+    private CharSequence[] texts = new CharSequence[8];
+    // the entity of every entry, null for views not read yet
+    private Entity[] entities = new Entity[8];
+    // entities reused for views
+    private Entity[] views = new Entity[8];
+    private int size;
+
+    private EntrySet entrySet;
+
+    /**
+     * Adds an entry whose value is text[start, end), copied to a String unless it is added as a view. A
+     * previous entry with the same key is replaced.
+     */
+    public void add(String key, CharSequence text, int start, int end, boolean copy) {
+        int i = indexOf(key);
+        if (i < 0) {
+            i = size++;
+            ensureCapacity(size);
+            keys[i] = key;
+        }
+        offsets[2 * i] = start;
+        offsets[2 * i + 1] = end;
+        if (copy) {
+            texts[i] = null;
+            entities[i] = new Entity(text.subSequence(start, end).toString(), start, end);
+        } else {
+            texts[i] = text;
+            entities[i] = null;
+        }
+    }
+
+    @Override
+    public Entity put(String key, Entity value) {
+        int i = indexOf(key);
+        Entity previous = i < 0 ? null : entity(i);
+        if (i < 0) {
+            i = size++;
+            ensureCapacity(size);
+            keys[i] = key;
+        }
+        offsets[2 * i] = value.start;
+        offsets[2 * i + 1] = value.end;
+        texts[i] = null;
+        entities[i] = value;
+        return previous;
+    }
+
+    @Override
+    public Entity get(Object key) {
+        int i = indexOf(key);
+        return i < 0 ? null : entity(i);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return indexOf(key) >= 0;
+    }
+
+    @Override
+    public Entity remove(Object key) {
+        int i = indexOf(key);
+        if (i < 0) {
+            return null;
+        }
+        Entity previous = entity(i);
+        removeAt(i);
+        return previous;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Removes all entries, keeping the arrays and entities for reuse.
+     */
+    @Override
+    public void clear() {
+        Arrays.fill(texts, 0, size, null);
+        Arrays.fill(entities, 0, size, null);
+        size = 0;
+    }
+
+    @Override
+    public Set<Entry<String, Entity>> entrySet() {
+        if (entrySet == null) {
+            entrySet = new EntrySet();
+        }
+        return entrySet;
+    }
+
+    private int indexOf(Object key) {
+        for (int i = 0; i < size; i++) {
+            if (keys[i] == key) {
+                return i;
+            }
+        }
+        if (key != null) {
+            for (int i = 0; i < size; i++) {
+                if (keys[i].equals(key)) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private Entity entity(int i) {
+        Entity entity = entities[i];
+        if (entity != null) {
+            return entity;
+        }
+        entity = views[i];
+        if (entity == null) {
+            entity = new Entity(null, 0, 0);
+            views[i] = entity;
+        }
+        entity.view(texts[i], offsets[2 * i], offsets[2 * i + 1]);
+        entities[i] = entity;
+        return entity;
+    }
+
+    private void removeAt(int i) {
+        // keeps the order of the other entries, and the view entity of the removed one for reuse
+        Entity view = views[i];
+        int moved = size - i - 1;
+        System.arraycopy(keys, i + 1, keys, i, moved);
+        System.arraycopy(offsets, 2 * i + 2, offsets, 2 * i, 2 * moved);
+        System.arraycopy(texts, i + 1, texts, i, moved);
+        System.arraycopy(entities, i + 1, entities, i, moved);
+        System.arraycopy(views, i + 1, views, i, moved);
+        size--;
+        keys[size] = null;
+        texts[size] = null;
+        entities[size] = null;
+        views[size] = view;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= keys.length) {
+            return;
+        }
+        int length = Math.max(capacity, 2 * keys.length);
+        keys = Arrays.copyOf(keys, length);
+        offsets = Arrays.copyOf(offsets, 2 * length);
+        texts = Arrays.copyOf(texts, length);
+        entities = Arrays.copyOf(entities, length);
+        views = Arrays.copyOf(views, length);
+    }
+
+    private final class EntrySet extends AbstractSet<Entry<String, Entity>> {
+        @Override
+        public Iterator<Entry<String, Entity>> iterator() {
+            return new Iterator<>() {
+                private int next;
+                private int last = -1;
+
+                @Override
+                public boolean hasNext() {
+                    return next < size;
+                }
+
+                @Override
+                public Entry<String, Entity> next() {
+                    if (next >= size) {
+                        throw new NoSuchElementException();
+                    }
+                    last = next++;
+                    return new MapEntry(keys[last], entity(last));
+                }
+
+                @Override
+                public void remove() {
+                    if (last < 0) {
+                        throw new IllegalStateException();
+                    }
+                    removeAt(last);
+                    next = last;
+                    last = -1;
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    // an entry whose setValue puts the value into the map
+    private final class MapEntry extends SimpleEntry<String, Entity> {
+        MapEntry(String key, Entity value) {
+            super(key, value);
+        }
+
+        @Override
+        public Entity setValue(Entity value) {
+            put(getKey(), value);
+            return super.setValue(value);
+        }
+    }
+}
@@ -1,9 +1,9 @@
 package io.dashbase.log4j.model;
 
 public class IntEntity {
-    public final int value;
-    public final int start;
-    public final int end;
+    public int value;
+    public int start;
+    public int end;
 
     public IntEntity(int value, int start, int end) {
         this.value = value;
@@ -14,4 +14,14 @@ public class IntEntity {
     public static IntEntity from(CharSequence text, int start, int end) {
         return new IntEntity(Integer.parseInt(text, start, end, 10), start, end);
     }
+
+    /**
+     * Refills this entity in place from text[start, end).
+     */
+    public IntEntity parse(CharSequence text, int start, int end) {
+        this.value = Integer.parseInt(text, start, end, 10);
+        this.start = start;
+        this.end = end;
+        return this;
+    }
 }
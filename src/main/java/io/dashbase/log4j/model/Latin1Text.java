@@ -0,0 +1,72 @@
+package io.dashbase.log4j.model;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A {@link CharSequence} view over a range of a {@link ByteBuffer}, one char per byte as in ISO-8859-1, which
+ * is also the right reading of ASCII text. Characters are read with absolute gets and nothing is copied until
+ * {@link #toString()}.
+ *
+ * <p>A view is only valid while the buffer is unchanged; readers move the same view from event to event.
+ */
+public final class Latin1Text implements CharSequence {
+    private ByteBuffer buffer;
+    private int offset;
+    private int length;
+
+    public Latin1Text() {
+    }
+
+    public Latin1Text(ByteBuffer buffer, int offset, int length) {
+        set(buffer, offset, length);
+    }
+
+    public Latin1Text set(ByteBuffer buffer, int offset, int length) {
+        this.buffer = buffer;
+        this.offset = offset;
+        this.length = length;
+        return this;
+    }
+
+    public ByteBuffer buffer() {
+        return buffer;
+    }
+
+    /**
+     * Returns the index in the buffer of the first char.
+     */
+    public int offset() {
+        return offset;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("index " + index + ", length " + length);
+        }
+        return (char) (buffer.get(offset + index) & 0xFF);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if (start < 0 || end > length || start > end) {
+            throw new IndexOutOfBoundsException("start " + start + ", end " + end + ", length " + length);
+        }
+        return new Latin1Text(buffer, offset + start, end - start);
+    }
+
+    @Override
+    public String toString() {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(offset + i);
+        }
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+}
@@ -0,0 +1,85 @@
+package io.dashbase.log4j.model;
+
+/**
+ * The level of an event. Decoders resolve it from the matched characters without allocating; names that
+ * are not one of the standard levels, such as custom levels, resolve to {@link #OTHER}.
+ */
+public enum Level {
+    TRACE(1),
+    DEBUG(2),
+    INFO(3),
+    WARN(4),
+    ERROR(5),
+    FATAL(6),
+    OTHER(7);
+
+    // code 0 is left for "no level" in columnar output
+    private static final Level[] BY_CODE = {null, TRACE, DEBUG, INFO, WARN, ERROR, FATAL, OTHER};
+
+    private final byte code;
+
+    Level(int code) {
+        this.code = (byte) code;
+    }
+
+    public byte code() {
+        return code;
+    }
+
+    /**
+     * Returns the level of a code, or null for 0.
+     */
+    public static Level fromCode(byte code) {
+        return BY_CODE[code];
+    }
+
+    /**
+     * Returns the level named by text[start, end), ignoring case.
+     */
+    public static Level of(CharSequence text, int start, int end) {
+        switch (end - start) {
+            case 4:
+                if (INFO.nameEqualsIgnoreCase(text, start)) return INFO;
+                if (WARN.nameEqualsIgnoreCase(text, start)) return WARN;
+                break;
+            case 5:
+                if (ERROR.nameEqualsIgnoreCase(text, start)) return ERROR;
+                if (DEBUG.nameEqualsIgnoreCase(text, start)) return DEBUG;
+                if (TRACE.nameEqualsIgnoreCase(text, start)) return TRACE;
+                if (FATAL.nameEqualsIgnoreCase(text, start)) return FATAL;
+                break;
+            default:
+                break;
+        }
+        return OTHER;
+    }
+
+    /**
+     * Returns whether text[start, end) is exactly the name of this level, so that the name can stand in
+     * for a copy of the text.
+     */
+    public boolean nameEquals(CharSequence text, int start, int end) {
+        String name = name();
+        if (this == OTHER || end - start != name.length()) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (text.charAt(start + i) != name.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean nameEqualsIgnoreCase(CharSequence text, int start) {
+        String name = name();
+        for (int i = 0; i < name.length(); i++) {
+            // the names are upper case letters only
+            char c = text.charAt(start + i);
+            if (c != name.charAt(i) && c != name.charAt(i) + ('a' - 'A')) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
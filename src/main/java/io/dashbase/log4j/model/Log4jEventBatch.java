@@ -0,0 +1,279 @@
+package io.dashbase.log4j.model;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A reusable batch of decoded events stored as columns. The text of every row is copied into one shared char
+ * buffer, and each field is a start/end pair of offsets into it, with a bitmap of the rows that have it.
+ * Timestamps and levels are stored as primitives. Rows are indexed from 0 to {@link #size()}.
+ *
+ * <p>Fields are columns per {@link ConversionPatternEl.Type}, except the values of %X{key} rules, which get
+ * a column per key so that several of them can be stored; a plain %X is in the {@code MDC} column.
+ *
+ * <p>Arrays returned by the accessors are the batch's own and are overwritten when it is refilled.
+ */
+public final class Log4jEventBatch {
+    private static final ConversionPatternEl.Type[] TYPES = ConversionPatternEl.Type.values();
+
+    private final int capacity;
+    private int size;
+
+    private char[] text = new char[4096];
+    private int textLength;
+    // start of every row in text, and the end of the last one
+    private final int[] rowOffsets;
+
+    private final long[] epochSeconds;
+    private final int[] nanos;
+    private final long[] timestampPresent;
+    private final byte[] levels;
+    // per type, allocated on first use
+    private final int[][] offsets = new int[TYPES.length][];
+    private final long[][] present = new long[TYPES.length][];
+    // per MDC key, in the order the keys were first set
+    private String[] mdcKeys = new String[0];
+    private int[][] mdcOffsets = new int[0][];
+    private long[][] mdcPresent = new long[0][];
+
+    public Log4jEventBatch(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.rowOffsets = new int[capacity + 1];
+        this.epochSeconds = new long[capacity];
+        this.nanos = new int[capacity];
+        this.timestampPresent = new long[bitmapLength(capacity)];
+        this.levels = new byte[capacity];
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isFull() {
+        return size == capacity;
+    }
+
+    /**
+     * Removes all rows, keeping the arrays.
+     */
+    public void clear() {
+        size = 0;
+        textLength = 0;
+        Arrays.fill(timestampPresent, 0);
+        Arrays.fill(levels, (byte) 0);
+        for (long[] bitmap : present) {
+            if (bitmap != null) {
+                Arrays.fill(bitmap, 0);
+            }
+        }
+        for (long[] bitmap : mdcPresent) {
+            Arrays.fill(bitmap, 0);
+        }
+    }
+
+    /**
+     * Copies the text of a new row into the buffer.
+     *
+     * @return the index of the row
+     */
+    public int addRow(CharSequence line) {
+        if (size == capacity) {
+            throw new IllegalStateException("Batch is full: " + capacity);
+        }
+        int length = line.length();
+        if (textLength + length > text.length) {
+            text = Arrays.copyOf(text, Math.max(text.length * 2, textLength + length));
+        }
+        if (line instanceof String) {
+            ((String) line).getChars(0, length, text, textLength);
+        } else {
+            for (int i = 0; i < length; i++) {
+                text[textLength + i] = line.charAt(i);
+            }
+        }
+        rowOffsets[size] = textLength;
+        textLength += length;
+        rowOffsets[size + 1] = textLength;
+        return size++;
+    }
+
+    /**
+     * Sets a field of the row from offsets into the row's text.
+     */
+    public void set(ConversionPatternEl.Type type, int row, int start, int end) {
+        int index = type.ordinal();
+        if (offsets[index] == null) {
+            offsets[index] = new int[2 * capacity];
+            present[index] = new long[bitmapLength(capacity)];
+        }
+        offsets[index][2 * row] = rowOffsets[row] + start;
+        offsets[index][2 * row + 1] = rowOffsets[row] + end;
+        present[index][row >>> 6] |= 1L << row;
+    }
+
+    /**
+     * Sets the value of an MDC key of the row from offsets into the row's text.
+     */
+    public void setMdc(String key, int row, int start, int end) {
+        int column = mdcColumn(key);
+        if (column < 0) {
+            column = mdcKeys.length;
+            mdcKeys = Arrays.copyOf(mdcKeys, column + 1);
+            mdcOffsets = Arrays.copyOf(mdcOffsets, column + 1);
+            mdcPresent = Arrays.copyOf(mdcPresent, column + 1);
+            mdcKeys[column] = key;
+            mdcOffsets[column] = new int[2 * capacity];
+            mdcPresent[column] = new long[bitmapLength(capacity)];
+        }
+        mdcOffsets[column][2 * row] = rowOffsets[row] + start;
+        mdcOffsets[column][2 * row + 1] = rowOffsets[row] + end;
+        mdcPresent[column][row >>> 6] |= 1L << row;
+    }
+
+    public void setTimestamp(int row, long epochSecond, int nano) {
+        epochSeconds[row] = epochSecond;
+        nanos[row] = nano;
+        timestampPresent[row >>> 6] |= 1L << row;
+    }
+
+    public void setLevel(int row, Level level) {
+        levels[row] = level.code();
+    }
+
+    /**
+     * Returns the shared buffer the field offsets point into.
+     */
+    public char[] text() {
+        return text;
+    }
+
+    public int rowStart(int row) {
+        return rowOffsets[row];
+    }
+
+    public int rowEnd(int row) {
+        return rowOffsets[row + 1];
+    }
+
+    public long[] epochSeconds() {
+        return epochSeconds;
+    }
+
+    public int[] nanos() {
+        return nanos;
+    }
+
+    public boolean hasTimestamp(int row) {
+        return (timestampPresent[row >>> 6] & 1L << row) != 0;
+    }
+
+    /**
+     * Returns the {@link Level#code()} of every row, 0 for rows without a level.
+     */
+    public byte[] levels() {
+        return levels;
+    }
+
+    /**
+     * Returns the level of the row, or null if it has none.
+     */
+    public Level level(int row) {
+        return Level.fromCode(levels[row]);
+    }
+
+    public boolean has(ConversionPatternEl.Type type, int row) {
+        long[] bitmap = present[type.ordinal()];
+        return bitmap != null && (bitmap[row >>> 6] & 1L << row) != 0;
+    }
+
+    /**
+     * Returns the start/end pairs of a field, the pair of row r at 2r and 2r + 1, or null if no row has it.
+     * Pairs of rows without the field are stale, see {@link #presence(ConversionPatternEl.Type)}.
+     */
+    public int[] offsets(ConversionPatternEl.Type type) {
+        return offsets[type.ordinal()];
+    }
+
+    /**
+     * Returns the bitmap of the rows that have a field, bit r % 64 of word r / 64, or null if no row has it.
+     */
+    public long[] presence(ConversionPatternEl.Type type) {
+        return present[type.ordinal()];
+    }
+
+    public int start(ConversionPatternEl.Type type, int row) {
+        return offsets[type.ordinal()][2 * row];
+    }
+
+    public int end(ConversionPatternEl.Type type, int row) {
+        return offsets[type.ordinal()][2 * row + 1];
+    }
+
+    /**
+     * Copies a field of the row to a String, or returns null if the row does not have it.
+     */
+    public String get(ConversionPatternEl.Type type, int row) {
+        if (!has(type, row)) {
+            return null;
+        }
+        int start = start(type, row);
+        return new String(text, start, end(type, row) - start);
+    }
+
+    /**
+     * Returns the MDC keys that have a column, which stay when the batch is cleared.
+     */
+    public List<String> mdcKeys() {
+        return Collections.unmodifiableList(Arrays.asList(mdcKeys));
+    }
+
+    /**
+     * Returns the start/end pairs of an MDC key like {@link #offsets(ConversionPatternEl.Type)}, or null if it
+     * has no column.
+     */
+    public int[] mdcOffsets(String key) {
+        int column = mdcColumn(key);
+        return column < 0 ? null : mdcOffsets[column];
+    }
+
+    /**
+     * Returns the bitmap of the rows that have a value for an MDC key, or null if it has no column.
+     */
+    public long[] mdcPresence(String key) {
+        int column = mdcColumn(key);
+        return column < 0 ? null : mdcPresent[column];
+    }
+
+    /**
+     * Copies the value of an MDC key of the row to a String, or returns null if the row does not have it.
+     */
+    public String getMdc(String key, int row) {
+        int column = mdcColumn(key);
+        if (column < 0 || (mdcPresent[column][row >>> 6] & 1L << row) == 0) {
+            return null;
+        }
+        int start = mdcOffsets[column][2 * row];
+        return new String(text, start, mdcOffsets[column][2 * row + 1] - start);
+    }
+
+    private int mdcColumn(String key) {
+        for (int i = 0; i < mdcKeys.length; i++) {
+            if (mdcKeys[i].equals(key)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int bitmapLength(int capacity) {
+        return (capacity + 63) >>> 6;
+    }
+}
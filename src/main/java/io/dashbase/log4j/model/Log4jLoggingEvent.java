@@ -1,17 +1,25 @@
 package io.dashbase.log4j.model;
 
 import java.time.Instant;
-import java.util.HashMap;
 import java.util.Map;
 
 public class Log4jLoggingEvent {
     public Instant timestamp;
 
+    // primitive form of the timestamp, always set together with it. Reused events only fill these,
+    // getTimestamp() creates the Instant on demand.
+    public boolean hasTimestamp;
+    public long epochSecond;
+    public int nanoOfSecond;
+
     // fully qualified class name of the logger
     public Entity fqcn;
 
     public Entity level;
 
+    // the level resolved from level, null when level is
+    public Level logLevel;
+
     public Entity location;
 
     public Entity locClass;
@@ -50,17 +58,141 @@ public class Log4jLoggingEvent {
 
     public Entity uuid;
 
+    // entities kept across reset() so that a reused event does not allocate per line
+    private final Entity[] reusableEntities = new Entity[ConversionPatternEl.Type.values().length];
+    private final LongEntity[] reusableLongEntities = new LongEntity[ConversionPatternEl.Type.values().length];
+    private IntEntity reusableIntEntity;
+    private EntityMap reusableMdc;
+    private EntityMap reusableMap;
+    private Utf8Text reusableUtf8Text;
+
     public void putMdc(String key, Entity value) {
-        if(mdc == null) {
-            mdc = new HashMap<>();
-        }
-        this.mdc.put(key, value);
+        mdcMap().put(key, value);
     }
 
     public void putMdc(Map<String, Entity> mdc) {
-        if(this.mdc == null) {
-          this.mdc = new HashMap<>();
+        mdcMap().putAll(mdc);
+    }
+
+    /**
+     * Returns the MDC of this event as an {@link EntityMap} to add entries to, creating it if there is none.
+     */
+    public EntityMap mdcMap() {
+        if (mdc instanceof EntityMap) {
+            return (EntityMap) mdc;
+        }
+        EntityMap result = reusableMdc == null ? new EntityMap() : reusableMdc;
+        reusableMdc = null;
+        result.clear();
+        if (mdc != null) {
+            result.putAll(mdc);
+        }
+        mdc = result;
+        return result;
+    }
+
+    /**
+     * Returns the cleared map this event reuses for the %K field. It is only assigned to the field by the caller.
+     */
+    public EntityMap reusableMap() {
+        if (reusableMap == null) {
+            reusableMap = new EntityMap();
+        }
+        reusableMap.clear();
+        return reusableMap;
+    }
+
+    public void setTimestamp(Instant timestamp) {
+        this.timestamp = timestamp;
+        this.hasTimestamp = true;
+        this.epochSecond = timestamp.getEpochSecond();
+        this.nanoOfSecond = timestamp.getNano();
+    }
+
+    public void setTimestamp(long epochSecond, int nanoOfSecond) {
+        this.timestamp = null;
+        this.hasTimestamp = true;
+        this.epochSecond = epochSecond;
+        this.nanoOfSecond = nanoOfSecond;
+    }
+
+    public Instant getTimestamp() {
+        if (timestamp == null && hasTimestamp) {
+            timestamp = Instant.ofEpochSecond(epochSecond, nanoOfSecond);
+        }
+        return timestamp;
+    }
+
+    /**
+     * Returns the entity this event reuses for the given field. It is only assigned to the field by the caller.
+     */
+    public Entity reusableEntity(ConversionPatternEl.Type type) {
+        Entity entity = reusableEntities[type.ordinal()];
+        if (entity == null) {
+            entity = new Entity(null, 0, 0);
+            reusableEntities[type.ordinal()] = entity;
+        }
+        return entity;
+    }
+
+    public LongEntity reusableLongEntity(ConversionPatternEl.Type type) {
+        LongEntity entity = reusableLongEntities[type.ordinal()];
+        if (entity == null) {
+            entity = new LongEntity(0, 0, 0);
+            reusableLongEntities[type.ordinal()] = entity;
+        }
+        return entity;
+    }
+
+    public IntEntity reusableIntEntity() {
+        if (reusableIntEntity == null) {
+            reusableIntEntity = new IntEntity(0, 0, 0);
+        }
+        return reusableIntEntity;
+    }
+
+    /**
+     * Returns the view this event reuses for the bytes of the line it is decoded from.
+     */
+    public Utf8Text reusableUtf8Text() {
+        if (reusableUtf8Text == null) {
+            reusableUtf8Text = new Utf8Text();
+        }
+        return reusableUtf8Text;
+    }
+
+    /**
+     * Clears all fields so the event can be refilled, keeping its entities and maps for reuse.
+     */
+    public void reset() {
+        timestamp = null;
+        hasTimestamp = false;
+        epochSecond = 0;
+        nanoOfSecond = 0;
+        fqcn = null;
+        level = null;
+        logLevel = null;
+        location = null;
+        locClass = null;
+        locFileName = null;
+        locLine = null;
+        locMethod = null;
+        loggerName = null;
+        map = null;
+        marker = null;
+        if (mdc instanceof EntityMap) {
+            reusableMdc = (EntityMap) mdc;
         }
-        this.mdc.putAll(mdc);
+        mdc = null;
+        message = null;
+        ndc = null;
+        processId = null;
+        relativeTimestamp = null;
+        sequenceNumber = null;
+        thread = null;
+        threadId = null;
+        threadPriority = null;
+        throwableTrace = null;
+        uuid = null;
     }
 }
@@ -1,9 +1,9 @@
 package io.dashbase.log4j.model;
 
 public class LongEntity {
-    public final long value;
-    public final int start;
-    public final int end;
+    public long value;
+    public int start;
+    public int end;
 
     public LongEntity(long value, int start, int end) {
         this.value = value;
@@ -14,4 +14,14 @@ public class LongEntity {
     public static LongEntity from(CharSequence text, int start, int end) {
         return new LongEntity(Long.parseLong(text, start, end, 10), start, end);
     }
+
+    /**
+     * Refills this entity in place from text[start, end).
+     */
+    public LongEntity parse(CharSequence text, int start, int end) {
+        this.value = Long.parseLong(text, start, end, 10);
+        this.start = start;
+        this.end = end;
+        return this;
+    }
 }
@@ -0,0 +1,85 @@
+package io.dashbase.log4j.model;
+
+/**
+ * An offset-only view over a range of a source {@link CharSequence}. No characters are copied until
+ * {@link #toString()} is called, and the resulting String is kept until the slice is moved.
+ *
+ * <p>A slice is only valid while its source is unchanged; reusable events reuse their slices for every line.
+ */
+public final class TextSlice implements CharSequence {
+    private CharSequence source;
+    private int start;
+    private int end;
+    private String string;
+
+    public TextSlice() {
+    }
+
+    public TextSlice(CharSequence source, int start, int end) {
+        set(source, start, end);
+    }
+
+    public TextSlice set(CharSequence source, int start, int end) {
+        this.source = source;
+        this.start = start;
+        this.end = end;
+        this.string = null;
+        return this;
+    }
+
+    public CharSequence source() {
+        return source;
+    }
+
+    public int start() {
+        return start;
+    }
+
+    public int end() {
+        return end;
+    }
+
+    /**
+     * Compares the viewed characters with the given text without materializing a String.
+     */
+    public boolean contentEquals(CharSequence text) {
+        if (text.length() != end - start) {
+            return false;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            if (source.charAt(start + i) != text.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int length() {
+        return end - start;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= end - start) {
+            throw new IndexOutOfBoundsException("index " + index + ", length " + (end - start));
+        }
+        return source.charAt(start + index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if (start < 0 || end > this.end - this.start || start > end) {
+            throw new IndexOutOfBoundsException("start " + start + ", end " + end + ", length " + (this.end - this.start));
+        }
+        return source.subSequence(this.start + start, this.start + end);
+    }
+
+    @Override
+    public String toString() {
+        if (string == null) {
+            string = source.subSequence(start, end).toString();
+        }
+        return string;
+    }
+}
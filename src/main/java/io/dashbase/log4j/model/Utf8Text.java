@@ -0,0 +1,98 @@
+package io.dashbase.log4j.model;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A {@link CharSequence} view over UTF-8 bytes, one char per byte, so that indexes are byte offsets. ASCII
+ * bytes are their own chars; every other byte becomes a char of the private use area U+F780..U+F7FF, which
+ * is neither a line terminator nor part of any ASCII character class. {@link #toString()} decodes the bytes.
+ *
+ * <p>A view is only valid while the bytes are unchanged.
+ */
+public final class Utf8Text implements CharSequence {
+    private static final char NON_ASCII = '\uF700';
+
+    // either array or buffer is set
+    private byte[] array;
+    private ByteBuffer buffer;
+    private int offset;
+    private int length;
+
+    public Utf8Text() {
+    }
+
+    public Utf8Text set(byte[] array, int offset, int length) {
+        if (offset < 0 || length < 0 || offset + length > array.length) {
+            throw new IndexOutOfBoundsException("offset " + offset + ", length " + length + ", array length " + array.length);
+        }
+        this.array = array;
+        this.buffer = null;
+        this.offset = offset;
+        this.length = length;
+        return this;
+    }
+
+    /**
+     * Views the remaining bytes of the buffer without changing its position.
+     */
+    public Utf8Text set(ByteBuffer buffer) {
+        if (buffer.hasArray()) {
+            return set(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        }
+        return set(buffer, buffer.position(), buffer.remaining());
+    }
+
+    /**
+     * Views length bytes of the buffer from the absolute index offset, ignoring its position and limit.
+     */
+    public Utf8Text set(ByteBuffer buffer, int offset, int length) {
+        if (offset < 0 || length < 0 || offset + length > buffer.capacity()) {
+            throw new IndexOutOfBoundsException("offset " + offset + ", length " + length + ", capacity " + buffer.capacity());
+        }
+        this.array = null;
+        this.buffer = buffer;
+        this.offset = offset;
+        this.length = length;
+        return this;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("index " + index + ", length " + length);
+        }
+        byte b = array != null ? array[offset + index] : buffer.get(offset + index);
+        return b >= 0 ? (char) b : (char) (NON_ASCII | (b & 0xFF));
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if (start < 0 || end > length || start > end) {
+            throw new IndexOutOfBoundsException("start " + start + ", end " + end + ", length " + length);
+        }
+        Utf8Text result = new Utf8Text();
+        result.array = array;
+        result.buffer = buffer;
+        result.offset = offset + start;
+        result.length = end - start;
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        if (array != null) {
+            return new String(array, offset, length, StandardCharsets.UTF_8);
+        }
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(offset + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,22 @@
+package io.dashbase.log4j.parser;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.ZoneId;
+
+/**
+ * The current date of a clock. Decoders recognize it and date every time-only timestamp from the clock instead
+ * of counting rollovers, see {@link ReferenceDate#clock(Clock)}.
+ */
+final class ClockReferenceDate implements ReferenceDate {
+    final Clock clock;
+
+    ClockReferenceDate(Clock clock) {
+        this.clock = clock;
+    }
+
+    @Override
+    public LocalDate date(ZoneId zone) {
+        return LocalDate.ofInstant(clock.instant(), zone);
+    }
+}
@@ -0,0 +1,112 @@
+package io.dashbase.log4j.parser;
+
+import io.dashbase.log4j.conversion.ConversionPatternParser;
+import io.dashbase.log4j.conversion.LinePrefilter;
+import io.dashbase.log4j.conversion.ScanPlan;
+import io.dashbase.log4j.model.ConversionPatternEl;
+
+import java.text.Format;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * The immutable result of compiling a conversion pattern for a time zone, shared by all decoders built from
+ * it. The rules are extracted once and the regex, the scan plan and the prefilter are derived from them.
+ */
+final class CompiledPattern {
+    // the conversion pattern without its trailing %n
+    final String conversionPattern;
+    final ZoneId defaultTimeZone;
+    final List<ConversionPatternEl> rules;
+    final Pattern pattern;
+    // regex-free engine for the same pattern, null if the pattern needs the regex
+    final ScanPlan scanPlan;
+    final LinePrefilter prefilter;
+    // whether UTF-8 lines can be matched on their bytes, see Utf8Text
+    final boolean utf8Matchable;
+    // exception-free formats of the strict and lenient formatter per %d rule, null where a rule has none
+    final Format[] strictFormats;
+    final Format[] lenientFormats;
+    // unused parsers and caches per rule that decoders copy, null where a rule has none
+    private final FixedWidthTimestampParser[] timestampParsers;
+    private final TimestampPrefixCache[] timestampCaches;
+
+    private CompiledPattern(String conversionPattern, ZoneId defaultTimeZone) {
+        ConversionPatternParser conversionPatternParser = new ConversionPatternParser(defaultTimeZone);
+        this.conversionPattern = conversionPatternParser.prepare(conversionPattern);
+        this.defaultTimeZone = defaultTimeZone;
+        List<ConversionPatternEl> rules = conversionPatternParser.extractConversionPattern(this.conversionPattern);
+        this.rules = Collections.unmodifiableList(rules);
+        pattern = conversionPatternParser.getRegexPattern(this.conversionPattern, rules);
+        scanPlan = conversionPatternParser.getScanPlan(this.conversionPattern, rules);
+        prefilter = conversionPatternParser.getPrefilter(this.conversionPattern, rules);
+        utf8Matchable = isUtf8Matchable(this.conversionPattern, rules);
+        timestampParsers = new FixedWidthTimestampParser[rules.size()];
+        timestampCaches = new TimestampPrefixCache[rules.size()];
+        strictFormats = new Format[rules.size()];
+        lenientFormats = new Format[rules.size()];
+        for (int i = 0; i < rules.size(); i++) {
+            ConversionPatternEl rule = rules.get(i);
+            if (rule.getType() == ConversionPatternEl.Type.DATE && rule.getModifier() != null) {
+                timestampParsers[i] = FixedWidthTimestampParser.forFormat(rule.getModifier(), defaultTimeZone);
+                timestampCaches[i] = TimestampPrefixCache.forFormat(rule.getModifier());
+                strictFormats[i] = rule.dateTimeFormatter.toFormat();
+                lenientFormats[i] = rule.lenientDateTimeFormatter.map(DateTimeFormatter::toFormat).orElse(null);
+            }
+        }
+    }
+
+    static CompiledPattern compile(String conversionPattern, ZoneId defaultTimeZone) {
+        return new CompiledPattern(conversionPattern, defaultTimeZone);
+    }
+
+    FixedWidthTimestampParser[] newTimestampParsers() {
+        FixedWidthTimestampParser[] result = new FixedWidthTimestampParser[timestampParsers.length];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = timestampParsers[i] == null ? null : timestampParsers[i].copy();
+        }
+        return result;
+    }
+
+    TimestampPrefixCache[] newTimestampCaches() {
+        TimestampPrefixCache[] result = new TimestampPrefixCache[timestampCaches.length];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = timestampCaches[i] == null ? null : timestampCaches[i].copy();
+        }
+        return result;
+    }
+
+    /**
+     * Non-ASCII chars take several bytes, so bytes can only be matched if the pattern has no non-ASCII literals
+     * and no width on fields that may contain non-ASCII chars.
+     */
+    private static boolean isUtf8Matchable(String conversionPattern, List<ConversionPatternEl> rules) {
+        for (int i = 0; i < conversionPattern.length(); i++) {
+            if (conversionPattern.charAt(i) >= 0x80) {
+                return false;
+            }
+        }
+        for (ConversionPatternEl rule : rules) {
+            if (rule.getMinWidth() <= 0 && rule.getMaxWidth() <= 0) {
+                continue;
+            }
+            switch (rule.getType()) {
+                case LEVEL:
+                case LINE:
+                case PID:
+                case RELATIVE_TS:
+                case SEQ:
+                case THREAD_ID:
+                case THREAD_PRIORITY:
+                case NANO_TS:
+                    break;
+                default:
+                    return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,227 @@
+package io.dashbase.log4j.parser;
+
+import io.dashbase.log4j.model.ConversionPatternEl;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of what a decoder does, enabled with {@link Log4jDecoder.Builder#metrics(DecoderMetrics)}: how many
+ * lines match, how timestamps are parsed, and how long each field takes to extract on a sample of the lines.
+ * A decoder without metrics only pays a null check per line.
+ *
+ * <p>Counters are striped, so one instance can be shared by the copies of a decoder on many threads, or by
+ * several decoders to sum them up.
+ */
+public final class DecoderMetrics {
+    public static final int DEFAULT_SAMPLE_INTERVAL = 1024;
+
+    private static final ConversionPatternEl.Type[] TYPES = ConversionPatternEl.Type.values();
+
+    private final int sampleInterval;
+    private final LongAdder linesMatched = new LongAdder();
+    private final LongAdder linesUnmatched = new LongAdder();
+    private final LongAdder charsProcessed = new LongAdder();
+    private final LongAdder timestampFastParses = new LongAdder();
+    private final LongAdder timestampCacheHits = new LongAdder();
+    private final LongAdder timestampFormatterParses = new LongAdder();
+    private final LongAdder timestampLenientParses = new LongAdder();
+    private final AtomicReferenceArray<LatencyHistogram> fieldLatencies = new AtomicReferenceArray<>(TYPES.length);
+
+    public DecoderMetrics() {
+        this(DEFAULT_SAMPLE_INTERVAL);
+    }
+
+    /**
+     * @param sampleInterval the number of lines per line whose field extraction is timed, 0 to time none
+     */
+    public DecoderMetrics(int sampleInterval) {
+        if (sampleInterval < 0) {
+            throw new IllegalArgumentException("sampleInterval must not be negative: " + sampleInterval);
+        }
+        this.sampleInterval = sampleInterval;
+    }
+
+    public int sampleInterval() {
+        return sampleInterval;
+    }
+
+    void recordLine(int length, boolean matched) {
+        (matched ? linesMatched : linesUnmatched).increment();
+        charsProcessed.add(length);
+    }
+
+    void recordTimestampFastParse() {
+        timestampFastParses.increment();
+    }
+
+    void recordTimestampCacheHit() {
+        timestampCacheHits.increment();
+    }
+
+    void recordTimestampFormatterParse(boolean lenient) {
+        timestampFormatterParses.increment();
+        if (lenient) {
+            timestampLenientParses.increment();
+        }
+    }
+
+    void recordFieldLatency(ConversionPatternEl.Type type, long nanos) {
+        LatencyHistogram histogram = fieldLatencies.get(type.ordinal());
+        if (histogram == null) {
+            fieldLatencies.compareAndSet(type.ordinal(), null, new LatencyHistogram());
+            histogram = fieldLatencies.get(type.ordinal());
+        }
+        histogram.record(nanos);
+    }
+
+    public long linesMatched() {
+        return linesMatched.sum();
+    }
+
+    /**
+     * Returns the number of lines that did not match the pattern, such as continuation lines or lines of
+     * another format.
+     */
+    public long linesUnmatched() {
+        return linesUnmatched.sum();
+    }
+
+    /**
+     * Returns the fraction of lines that matched, 1 if there were none.
+     */
+    public double matchRate() {
+        long matched = linesMatched();
+        long total = matched + linesUnmatched();
+        return total == 0 ? 1 : (double) matched / total;
+    }
+
+    /**
+     * Returns the total length of all lines: bytes for lines decoded from UTF-8 bytes, chars otherwise.
+     */
+    public long charsProcessed() {
+        return charsProcessed.sum();
+    }
+
+    /**
+     * Returns the number of timestamps read by the fixed-width parser.
+     */
+    public long timestampFastParses() {
+        return timestampFastParses.sum();
+    }
+
+    /**
+     * Returns the number of timestamps whose second was found in the prefix cache.
+     */
+    public long timestampCacheHits() {
+        return timestampCacheHits.sum();
+    }
+
+    /**
+     * Returns the number of timestamps parsed with a DateTimeFormatter, the slow path.
+     */
+    public long timestampFormatterParses() {
+        return timestampFormatterParses.sum();
+    }
+
+    /**
+     * Returns the number of timestamps with single-digit values that the lenient formatter parsed, which are
+     * included in {@link #timestampFormatterParses()}.
+     */
+    public long timestampLenientParses() {
+        return timestampLenientParses.sum();
+    }
+
+    /**
+     * Returns the fraction of timestamps that did not need a DateTimeFormatter, 1 if there were none.
+     */
+    public double timestampHitRate() {
+        long hits = timestampFastParses() + timestampCacheHits();
+        long total = hits + timestampFormatterParses();
+        return total == 0 ? 1 : (double) hits / total;
+    }
+
+    /**
+     * Returns the extraction times sampled for the given field, or null if none were.
+     */
+    public LatencyHistogram fieldLatency(ConversionPatternEl.Type type) {
+        return fieldLatencies.get(type.ordinal());
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("DecoderMetrics[matched=").append(linesMatched())
+            .append(", unmatched=").append(linesUnmatched())
+            .append(", chars=").append(charsProcessed())
+            .append(", timestampFast=").append(timestampFastParses())
+            .append(", timestampCached=").append(timestampCacheHits())
+            .append(", timestampFormatter=").append(timestampFormatterParses())
+            .append(", timestampLenient=").append(timestampLenientParses());
+        for (ConversionPatternEl.Type type : TYPES) {
+            LatencyHistogram histogram = fieldLatency(type);
+            if (histogram != null) {
+                sb.append(", ").append(type).append('=').append(histogram);
+            }
+        }
+        return sb.append(']').toString();
+    }
+
+    /**
+     * A histogram of durations in power-of-two nanosecond buckets: bucket i counts durations below 2^i ns and
+     * at least 2^(i-1) ns.
+     */
+    public static final class LatencyHistogram {
+        private final AtomicLongArray buckets = new AtomicLongArray(64);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+
+        void record(long nanos) {
+            nanos = Math.max(0, nanos);
+            buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(nanos));
+            count.increment();
+            totalNanos.add(nanos);
+        }
+
+        public long count() {
+            return count.sum();
+        }
+
+        public long totalNanos() {
+            return totalNanos.sum();
+        }
+
+        public long bucketCount(int bucket) {
+            return buckets.get(bucket);
+        }
+
+        /**
+         * Returns an upper bound of the given quantile in nanoseconds, the limit of the bucket it falls in.
+         */
+        public long quantileNanos(double quantile) {
+            long total = 0;
+            for (int i = 0; i < 64; i++) {
+                total += buckets.get(i);
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(quantile * total);
+            long seen = 0;
+            for (int i = 0; i < 63; i++) {
+                seen += buckets.get(i);
+                if (seen >= rank) {
+                    return 1L << i;
+                }
+            }
+            return Long.MAX_VALUE;
+        }
+
+        @Override
+        public String toString() {
+            long count = count();
+            return "{count=" + count + ", mean=" + (count == 0 ? 0 : totalNanos() / count) + "ns, p50<"
+                + quantileNanos(0.5) + "ns, p99<" + quantileNanos(0.99) + "ns}";
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package io.dashbase.log4j.parser;
+
+import io.dashbase.log4j.model.ConversionPatternEl;
+import io.dashbase.log4j.model.Entity;
+import io.dashbase.log4j.model.Log4jLoggingEvent;
+
+/**
+ * Fills an event from its first line and continuation lines. Continuation lines extend the message until
+ * the first line that looks like part of a stack trace; that line and all after it become the throwable trace.
+ * Either is left out if the decoder does not extract it.
+ */
+final class EventAssembler {
+    private EventAssembler() {
+    }
+
+    /**
+     * Fills the event from text[start, end), whose first line was matched into bounds. The lines are separated
+     * by "\n", "\r\n" or "\r"; the last one has no terminator.
+     */
+    static void assemble(Log4jDecoder decoder, Log4jLoggingEvent entry, CharSequence text, int start, int end,
+                         int[] bounds, boolean copy) {
+        int firstLineEnd = lineEnd(text, start, end);
+        int continuationStart = nextLine(text, firstLineEnd, end);
+        // end of the continuation lines of the message, start of the stack trace
+        int messageEnd = firstLineEnd;
+        int traceStart = -1;
+        int lineStart = continuationStart;
+        while (lineStart < end) {
+            int lineEnd = lineEnd(text, lineStart, end);
+            if (traceStart < 0 && isStackTraceLine(text, lineStart, lineEnd)) {
+                traceStart = lineStart;
+            }
+            if (traceStart < 0) {
+                messageEnd = lineEnd;
+            }
+            lineStart = nextLine(text, lineEnd, end);
+        }
+
+        decoder.extractFields(entry, text, bounds, copy);
+        if (continuationStart >= end) {
+            return;
+        }
+        // fields are trimmed, a field ending here ends the first line
+        int lineEnd = firstLineEnd;
+        while (lineEnd > start && text.charAt(lineEnd - 1) == ' ') lineEnd--;
+        if (messageEnd > firstLineEnd && decoder.extracts(ConversionPatternEl.Type.MESSAGE)) {
+            if (entry.message == null || entry.message.end == lineEnd) {
+                int messageStart = entry.message == null ? continuationStart : entry.message.start;
+                entry.message = Log4jDecoder.entity(entry, ConversionPatternEl.Type.MESSAGE, text, messageStart, messageEnd, copy);
+            } else {
+                // the message is followed by other fields, keep the lines with the trace instead
+                traceStart = continuationStart;
+            }
+        }
+        if (traceStart >= 0 && decoder.extracts(ConversionPatternEl.Type.EXCEPTION)) {
+            Entity trace = entry.throwableTrace;
+            // a trace that begins on the first line continues on the next ones
+            if (trace != null && trace.end == lineEnd && messageEnd == firstLineEnd) {
+                traceStart = trace.start;
+            }
+            entry.throwableTrace = Log4jDecoder.entity(entry, ConversionPatternEl.Type.EXCEPTION, text, traceStart, end, copy);
+        }
+    }
+
+    private static int lineEnd(CharSequence text, int start, int end) {
+        int i = start;
+        while (i < end && text.charAt(i) != '\n' && text.charAt(i) != '\r') i++;
+        return i;
+    }
+
+    private static int nextLine(CharSequence text, int lineEnd, int end) {
+        if (lineEnd < end && text.charAt(lineEnd) == '\r') {
+            lineEnd++;
+        }
+        return lineEnd < end && text.charAt(lineEnd) == '\n' ? lineEnd + 1 : lineEnd;
+    }
+
+    /**
+     * Returns true for the first line of a stack trace or a line within it: an exception class name, optionally
+     * followed by its message, or a frame, cause or suppressed header.
+     */
+    static boolean isStackTraceLine(CharSequence text, int start, int end) {
+        int i = start;
+        while (i < end && (text.charAt(i) == ' ' || text.charAt(i) == '\t')) i++;
+        if (startsWith(text, i, end, "at ") || startsWith(text, i, end, "... ")
+            || startsWith(text, i, end, "Caused by: ") || startsWith(text, i, end, "Suppressed: ")) {
+            return true;
+        }
+        if (i > start) {
+            return false;
+        }
+        boolean qualified = false;
+        while (i < end && text.charAt(i) != ':') {
+            char c = text.charAt(i);
+            if (c == '.') {
+                qualified = true;
+            } else if (!Character.isJavaIdentifierPart(c)) {
+                return false;
+            }
+            i++;
+        }
+        return qualified && (endsWith(text, start, i, "Exception") || endsWith(text, start, i, "Error")
+            || endsWith(text, start, i, "Throwable"));
+    }
+
+    private static boolean endsWith(CharSequence text, int start, int end, String suffix) {
+        return end - start >= suffix.length() && startsWith(text, end - suffix.length(), end, suffix);
+    }
+
+    private static boolean startsWith(CharSequence text, int start, int end, String prefix) {
+        if (end - start < prefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (text.charAt(start + i) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,129 @@
+package io.dashbase.log4j.parser;
+
+import io.dashbase.log4j.model.Log4jLoggingEvent;
+
+import java.nio.charset.Charset;
+import java.util.function.Consumer;
+
+/**
+ * Groups lines pushed one at a time into events with copied values, for sources that cannot be pulled from
+ * like {@link Log4jEventReader} does. An event starts with a line the decoder matches and is passed to the
+ * sink when the next one starts or when it is flushed. Lines before the first event are skipped, and
+ * continuation lines from the first one that does not fit in maxEventSize characters are dropped. A first
+ * line longer than that is cut to it.
+ *
+ * <p>Not thread-safe.
+ */
+final class EventLines {
+    private final Log4jDecoder decoder;
+    private final int maxEventSize;
+    private final Consumer<Log4jLoggingEvent> sink;
+
+    // text of the event being assembled, valid if hasEvent is set
+    private final StringBuilder event = new StringBuilder();
+    private int[] eventBounds;
+    private int[] lineBounds;
+    private boolean hasEvent;
+    private boolean eventFull;
+    private long skippedLines;
+    private long droppedLines;
+    private long truncatedLines;
+
+    EventLines(Log4jDecoder decoder, int maxEventSize, Consumer<Log4jLoggingEvent> sink) {
+        this.decoder = decoder;
+        this.maxEventSize = maxEventSize;
+        this.sink = sink;
+        this.eventBounds = new int[decoder.boundsLength()];
+        this.lineBounds = new int[decoder.boundsLength()];
+    }
+
+    /**
+     * Adds a line without its terminator.
+     *
+     * @return true if the line starts an event, after the previous one was passed to the sink
+     */
+    boolean add(CharSequence line) {
+        // cut before matching like Log4jEventReader, so that the bounds stay within the event
+        boolean cut = line.length() > maxEventSize;
+        if (cut) {
+            line = line.subSequence(0, maxEventSize);
+        }
+        if (decoder.match(line, lineBounds)) {
+            flush();
+            if (cut) {
+                truncatedLines++;
+            }
+            event.setLength(0);
+            event.append(line);
+            int[] bounds = eventBounds;
+            eventBounds = lineBounds;
+            lineBounds = bounds;
+            hasEvent = true;
+            eventFull = false;
+            return true;
+        }
+        if (!hasEvent) {
+            skippedLines++;
+        } else if (eventFull || event.length() + 1 + line.length() > maxEventSize) {
+            // once a line is dropped the event is complete, later lines are dropped too
+            eventFull = true;
+            droppedLines++;
+        } else {
+            event.append('\n').append(line);
+        }
+        return false;
+    }
+
+    /**
+     * Passes the event being assembled to the sink. Its continuation lines added later are skipped.
+     */
+    void flush() {
+        if (!hasEvent) {
+            return;
+        }
+        hasEvent = false;
+        Log4jLoggingEvent entry = new Log4jLoggingEvent();
+        EventAssembler.assemble(decoder, entry, event, 0, event.length(), eventBounds, true);
+        sink.accept(entry);
+    }
+
+    /**
+     * Forgets the event being assembled.
+     */
+    void clear() {
+        hasEvent = false;
+        event.setLength(0);
+    }
+
+    boolean hasEvent() {
+        return hasEvent;
+    }
+
+    long skippedLines() {
+        return skippedLines;
+    }
+
+    long droppedLines() {
+        return droppedLines;
+    }
+
+    long truncatedLines() {
+        return truncatedLines;
+    }
+
+    /**
+     * Returns how many bytes of a line in the charset to keep for maxEventSize chars. A byte cut in the middle
+     * of a char only spoils chars past maxEventSize, which {@link #add} cuts off after decoding.
+     */
+    static int maxLineBytes(Charset charset, int maxEventSize) {
+        float bytesPerChar;
+        try {
+            bytesPerChar = charset.newEncoder().maxBytesPerChar();
+        } catch (UnsupportedOperationException e) {
+            // a charset that only decodes
+            bytesPerChar = 4;
+        }
+        long bytes = ((long) maxEventSize + 1) * (long) Math.ceil(bytesPerChar);
+        return (int) Math.min(bytes, Integer.MAX_VALUE - 8);
+    }
+}
@@ -0,0 +1,410 @@
+package io.dashbase.log4j.parser;
+
+import io.dashbase.log4j.util.DateFormatPattern;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parses timestamps of a fixed-width numeric layout, such as the DEFAULT, ISO8601 or ABSOLUTE presets, by
+ * reading digits at known positions and computing the epoch second with integer math. Day, hour, minute and
+ * second values followed by a literal may also have a single digit, as the lenient formatter of a rule
+ * accepts, so unpadded timestamps are read in the same pass. It never creates a temporal object or an
+ * exception: anything it is not sure about makes {@link #parse} return false so the caller can use
+ * {@link java.time.format.DateTimeFormatter} instead.
+ *
+ * <p>A parser caches the epoch day and zone offset of the last date it saw and is not thread-safe.
+ */
+final class FixedWidthTimestampParser {
+    private static final byte LITERAL = 0;
+    private static final byte YEAR = 1;
+    private static final byte MONTH = 2;
+    private static final byte DAY = 3;
+    private static final byte HOUR = 4;
+    private static final byte MINUTE = 5;
+    private static final byte SECOND = 6;
+    private static final byte FRACTION = 7;
+    private static final byte NANO = 8;
+
+    private static final int SECONDS_PER_DAY = 86400;
+    private static final int MAX_OFFSET_SECONDS = 18 * 3600;
+    private static final int NO_OFFSET = Integer.MIN_VALUE;
+    private static final int[] POWERS_OF_TEN = {1, 10, 100, 1000, 10000, 100000, 1000000, 10000000, 100000000, 1000000000};
+
+    // per character of the fixed-width part: the field it belongs to, or the expected literal
+    private final byte[] fields;
+    private final char[] literals;
+    // per character: whether it is the second digit of a value that may have one
+    private final boolean[] optional;
+    // the width with every optional digit missing
+    private final int minWidth;
+    private final boolean hasDate;
+    // multiplier from the parsed fraction digits to nanoseconds
+    private final int fractionScale;
+    // number of 'X' letters of a trailing offset, 0 if the zone comes from the decoder
+    private final int offsetLetters;
+    private final ZoneRules rules;
+    private final int fixedOffset;
+
+    private int cachedDate = -1;
+    private long cachedEpochDay;
+    private long offsetDay = Long.MIN_VALUE;
+    private int dayOffset;
+
+    private long epochSecond;
+    private int nano;
+
+    private FixedWidthTimestampParser(byte[] fields, char[] literals, boolean[] optional, boolean hasDate,
+                                      int fractionScale, int offsetLetters, ZoneRules rules) {
+        this.fields = fields;
+        this.literals = literals;
+        this.optional = optional;
+        int minWidth = fields.length;
+        for (boolean digit : optional) {
+            if (digit) {
+                minWidth--;
+            }
+        }
+        this.minWidth = minWidth;
+        this.hasDate = hasDate;
+        this.fractionScale = fractionScale;
+        this.offsetLetters = offsetLetters;
+        this.rules = rules;
+        this.fixedOffset = rules.isFixedOffset() ? rules.getOffset(Instant.EPOCH).getTotalSeconds() : NO_OFFSET;
+    }
+
+    /**
+     * Returns a parser for the same format with state of its own, for use on another thread.
+     */
+    FixedWidthTimestampParser copy() {
+        return new FixedWidthTimestampParser(fields, literals, optional, hasDate, fractionScale, offsetLetters, rules);
+    }
+
+    /**
+     * Returns a parser for the given DateTimeFormatter pattern, or null if the pattern is not a fixed-width
+     * layout of yyyy, MM, d or dd, H or HH, m or mm, s or ss, S..., n... and literals, optionally followed by
+     * X, XX or XXX.
+     */
+    static FixedWidthTimestampParser forFormat(String format, ZoneId zoneId) {
+        StringBuilder fieldLayout = new StringBuilder();
+        StringBuilder literalLayout = new StringBuilder();
+        // the indexes of second digits that may be missing
+        List<Integer> optionalDigits = new ArrayList<>();
+        int seen = 0;
+        int fractionScale = 0;
+        int offsetLetters = 0;
+        DateFormatPattern pattern = DateFormatPattern.of(format);
+        if (!pattern.isClosed()) {
+            return null;
+        }
+        List<DateFormatPattern.Token> tokens = pattern.tokens();
+        for (int i = 0; i < tokens.size(); i++) {
+            DateFormatPattern.Token token = tokens.get(i);
+            if (offsetLetters > 0) {
+                // the offset has a variable width and must come last
+                return null;
+            }
+            if (token.isLiteral()) {
+                String literal = token.literal();
+                for (int j = 0; j < literal.length(); j++) {
+                    if (!token.isQuoted() && "[]{}#".indexOf(literal.charAt(j)) >= 0) {
+                        // optional sections and reserved characters
+                        return null;
+                    }
+                    fieldLayout.append((char) LITERAL);
+                    literalLayout.append(literal.charAt(j));
+                }
+                continue;
+            }
+            int count = token.count();
+            // d, H, m and s values have one or two digits, unless another value follows without a separator
+            boolean shortable = (count == 1 || count == 2) && (i + 1 == tokens.size() || tokens.get(i + 1).isLiteral()
+                || tokens.get(i + 1).letter() == 'X');
+            byte field;
+            switch (token.letter()) {
+                case 'y':
+                    field = count == 4 ? YEAR : -1;
+                    break;
+                case 'M':
+                    field = count == 2 ? MONTH : -1;
+                    break;
+                case 'd':
+                    field = count == 2 || shortable ? DAY : -1;
+                    break;
+                case 'H':
+                    field = count == 2 || shortable ? HOUR : -1;
+                    break;
+                case 'm':
+                    field = count == 2 || shortable ? MINUTE : -1;
+                    break;
+                case 's':
+                    field = count == 2 || shortable ? SECOND : -1;
+                    break;
+                case 'S':
+                    field = count <= 9 ? FRACTION : -1;
+                    fractionScale = count <= 9 ? POWERS_OF_TEN[9 - count] : 0;
+                    break;
+                case 'n':
+                    field = count <= 9 ? NANO : -1;
+                    break;
+                case 'X':
+                    if (count > 3) {
+                        return null;
+                    }
+                    offsetLetters = count;
+                    continue;
+                default:
+                    field = -1;
+            }
+            if (field < 0 || (seen & (1 << field)) != 0) {
+                return null;
+            }
+            seen |= 1 << field;
+            if (field >= DAY && field <= SECOND && shortable) {
+                optionalDigits.add(fieldLayout.length() + 1);
+                count = 2;
+            }
+            for (int j = 0; j < count; j++) {
+                fieldLayout.append((char) field);
+                literalLayout.append('\0');
+            }
+        }
+
+        int date = (1 << YEAR) | (1 << MONTH) | (1 << DAY);
+        boolean hasDate = (seen & date) == date;
+        if ((seen & date) != 0 && !hasDate) {
+            return null;
+        }
+        // every time field needs the ones before it
+        if ((seen & (1 << HOUR)) == 0
+            || ((seen & (1 << SECOND)) != 0 && (seen & (1 << MINUTE)) == 0)
+            || ((seen & ((1 << FRACTION) | (1 << NANO))) != 0 && (seen & (1 << SECOND)) == 0)
+            || ((seen & (1 << FRACTION)) != 0 && (seen & (1 << NANO)) != 0)) {
+            return null;
+        }
+
+        byte[] fields = new byte[fieldLayout.length()];
+        char[] literals = new char[literalLayout.length()];
+        boolean[] optional = new boolean[fields.length];
+        for (int j = 0; j < fields.length; j++) {
+            fields[j] = (byte) fieldLayout.charAt(j);
+            literals[j] = literalLayout.charAt(j);
+        }
+        for (int index : optionalDigits) {
+            optional[index] = true;
+        }
+        return new FixedWidthTimestampParser(fields, literals, optional, hasDate, fractionScale, offsetLetters,
+            zoneId.getRules());
+    }
+
+    boolean hasDate() {
+        return hasDate;
+    }
+
+    /**
+     * Parses text[start, end). For a time-only layout, epochDay is the local date the time belongs to.
+     *
+     * @return false if the text must be parsed by the DateTimeFormatter instead
+     */
+    boolean parse(CharSequence text, int start, int end, long epochDay) {
+        int width = fields.length;
+        int length = end - start;
+        if (offsetLetters == 0 ? length < minWidth || length > width : length <= minWidth) {
+            return false;
+        }
+        int year = 0;
+        int month = 0;
+        int day = 0;
+        int hour = 0;
+        int minute = 0;
+        int second = 0;
+        int fraction = 0;
+        int position = start;
+        for (int i = 0; i < width; i++) {
+            if (optional[i] && (position == end || text.charAt(position) < '0' || text.charAt(position) > '9')) {
+                // a single digit value
+                continue;
+            }
+            if (position == end) {
+                return false;
+            }
+            char c = text.charAt(position++);
+            byte field = fields[i];
+            if (field == LITERAL) {
+                if (c != literals[i]) {
+                    return false;
+                }
+                continue;
+            }
+            int digit = c - '0';
+            if (digit < 0 || digit > 9) {
+                return false;
+            }
+            switch (field) {
+                case YEAR:
+                    year = year * 10 + digit;
+                    break;
+                case MONTH:
+                    month = month * 10 + digit;
+                    break;
+                case DAY:
+                    day = day * 10 + digit;
+                    break;
+                case HOUR:
+                    hour = hour * 10 + digit;
+                    break;
+                case MINUTE:
+                    minute = minute * 10 + digit;
+                    break;
+                case SECOND:
+                    second = second * 10 + digit;
+                    break;
+                default:
+                    fraction = fraction * 10 + digit;
+            }
+        }
+        if (offsetLetters == 0 && position != end) {
+            return false;
+        }
+        // out of range values are rejected or adjusted by the formatter, leave them to it
+        if (hour > 23 || minute > 59 || second > 59) {
+            return false;
+        }
+        if (hasDate) {
+            int date = year * 10000 + month * 100 + day;
+            if (date != cachedDate) {
+                if (year < 1 || month < 1 || month > 12 || day < 1 || day > lengthOfMonth(year, month)) {
+                    return false;
+                }
+                cachedEpochDay = toEpochDay(year, month, day);
+                cachedDate = date;
+            }
+            epochDay = cachedEpochDay;
+        }
+
+        int offset;
+        if (offsetLetters > 0) {
+            offset = position < end ? parseOffset(text, position, end) : NO_OFFSET;
+        } else if (fixedOffset != NO_OFFSET) {
+            offset = fixedOffset;
+        } else {
+            if (epochDay != offsetDay) {
+                dayOffset = offsetOfDay(epochDay);
+                offsetDay = epochDay;
+            }
+            offset = dayOffset;
+        }
+        if (offset == NO_OFFSET) {
+            return false;
+        }
+
+        epochSecond = epochDay * SECONDS_PER_DAY + hour * 3600 + minute * 60 + second - offset;
+        nano = fractionScale > 0 ? fraction * fractionScale : fraction;
+        return true;
+    }
+
+    long epochSecond() {
+        return epochSecond;
+    }
+
+    int nano() {
+        return nano;
+    }
+
+    /**
+     * Returns the offset of the zone if it is the same for the whole local day, NO_OFFSET if it changes.
+     */
+    private int offsetOfDay(long epochDay) {
+        Instant from = Instant.ofEpochSecond(epochDay * SECONDS_PER_DAY - MAX_OFFSET_SECONDS);
+        ZoneOffsetTransition transition = rules.nextTransition(from);
+        if (transition != null && transition.toEpochSecond() <= (epochDay + 1) * SECONDS_PER_DAY + MAX_OFFSET_SECONDS) {
+            return NO_OFFSET;
+        }
+        return rules.getOffset(from).getTotalSeconds();
+    }
+
+    /**
+     * Parses 'Z', +HH, +HHMM or +HH:MM, as allowed by the number of pattern letters.
+     */
+    private int parseOffset(CharSequence text, int start, int end) {
+        int length = end - start;
+        char sign = text.charAt(start);
+        if (sign == 'Z') {
+            return length == 1 ? 0 : NO_OFFSET;
+        }
+        if (sign != '+' && sign != '-') {
+            return NO_OFFSET;
+        }
+        int hours;
+        int minutes = 0;
+        if (length == 3 && offsetLetters == 1) {
+            hours = twoDigits(text, start + 1);
+        } else if (length == 5 && offsetLetters <= 2) {
+            hours = twoDigits(text, start + 1);
+            minutes = twoDigits(text, start + 3);
+        } else if (length == 6 && offsetLetters == 3 && text.charAt(start + 3) == ':') {
+            hours = twoDigits(text, start + 1);
+            minutes = twoDigits(text, start + 4);
+        } else {
+            return NO_OFFSET;
+        }
+        int seconds = hours * 3600 + minutes * 60;
+        if (hours < 0 || minutes < 0 || minutes > 59 || seconds > MAX_OFFSET_SECONDS) {
+            return NO_OFFSET;
+        }
+        return sign == '-' ? -seconds : seconds;
+    }
+
+    private static int twoDigits(CharSequence text, int index) {
+        int tens = text.charAt(index) - '0';
+        int ones = text.charAt(index + 1) - '0';
+        if (tens < 0 || tens > 9 || ones < 0 || ones > 9) {
+            return -1;
+        }
+        return tens * 10 + ones;
+    }
+
+    private static boolean isLeapYear(int year) {
+        return (year & 3) == 0 && (year % 100 != 0 || year % 400 == 0);
+    }
+
+    private static int lengthOfMonth(int year, int month) {
+        switch (month) {
+            case 2:
+                return isLeapYear(year) ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    /**
+     * Same computation as {@link java.time.LocalDate#toEpochDay()}.
+     */
+    static long toEpochDay(int year, int month, int day) {
+        long y = year;
+        long total = 365 * y;
+        if (y >= 0) {
+            total += (y + 3) / 4 - (y + 99) / 100 + (y + 399) / 400;
+        } else {
+            total -= y / -4 - y / -100 + y / -400;
+        }
+        total += (367 * month - 362) / 12;
+        total += day - 1;
+        if (month > 2) {
+            total--;
+            if (!isLeapYear(year)) {
+                total--;
+            }
+        }
+        return total - 719528;
+    }
+}
@@ -0,0 +1,190 @@
+package io.dashbase.log4j.parser;
+
+import io.dashbase.log4j.model.ConversionPatternEl;
+import io.dashbase.log4j.model.Entity;
+import io.dashbase.log4j.model.IntEntity;
+import io.dashbase.log4j.model.Level;
+import io.dashbase.log4j.model.Log4jLoggingEvent;
+import io.dashbase.log4j.model.LongEntity;
+
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * An event that keeps the matched line and the offsets of its fields, and extracts each field the first time
+ * it is read: substrings are copied, and timestamps, numbers and maps are parsed, only for the fields that are
+ * used. Extracted fields are cached in a {@link Log4jLoggingEvent}, so later reads cost nothing.
+ *
+ * <p>Fields read before the line changes are copies and stay valid; fields read after it has changed are
+ * undefined. Fields are extracted with the decoder that matched the line, so they have to be read on the
+ * decoder's thread unless it is thread-safe.
+ */
+public final class LazyLog4jEvent {
+    private static final ConversionPatternEl.Type[] TYPES = ConversionPatternEl.Type.values();
+
+    private final Log4jLoggingEvent event = new Log4jLoggingEvent();
+    private Log4jDecoder decoder;
+    private CharSequence line;
+    private int[] bounds;
+    // bit per ConversionPatternEl.Type ordinal of the fields extracted so far
+    private long extracted;
+
+    public LazyLog4jEvent() {
+    }
+
+    int[] bounds(int length) {
+        if (bounds == null || bounds.length != length) {
+            bounds = new int[length];
+        }
+        return bounds;
+    }
+
+    void reset(Log4jDecoder decoder, CharSequence line) {
+        this.decoder = decoder;
+        this.line = line;
+        this.extracted = 0;
+        event.reset();
+    }
+
+    /**
+     * Returns the matched line, or null if the last line did not match.
+     */
+    public CharSequence line() {
+        return line;
+    }
+
+    public Instant getTimestamp() {
+        extract(ConversionPatternEl.Type.DATE);
+        extract(ConversionPatternEl.Type.NANO_TS);
+        return event.getTimestamp();
+    }
+
+    public Entity getLevel() {
+        extract(ConversionPatternEl.Type.LEVEL);
+        return event.level;
+    }
+
+    public Level getLogLevel() {
+        extract(ConversionPatternEl.Type.LEVEL);
+        return event.logLevel;
+    }
+
+    public Entity getLoggerName() {
+        extract(ConversionPatternEl.Type.LOGGER);
+        return event.loggerName;
+    }
+
+    public Entity getThread() {
+        extract(ConversionPatternEl.Type.THREAD);
+        return event.thread;
+    }
+
+    public Entity getMessage() {
+        extract(ConversionPatternEl.Type.MESSAGE);
+        return event.message;
+    }
+
+    public Entity getThrowableTrace() {
+        extract(ConversionPatternEl.Type.EXCEPTION);
+        return event.throwableTrace;
+    }
+
+    public Map<String, Entity> getMdc() {
+        extract(ConversionPatternEl.Type.MDC);
+        return event.mdc;
+    }
+
+    public Entity getNdc() {
+        extract(ConversionPatternEl.Type.NDC);
+        return event.ndc;
+    }
+
+    public Entity getMarker() {
+        extract(ConversionPatternEl.Type.MARKER);
+        return event.marker;
+    }
+
+    public Entity getFqcn() {
+        extract(ConversionPatternEl.Type.FQCN);
+        return event.fqcn;
+    }
+
+    public Entity getLocation() {
+        extract(ConversionPatternEl.Type.LOCATION);
+        return event.location;
+    }
+
+    public Entity getLocClass() {
+        extract(ConversionPatternEl.Type.CLASS);
+        return event.locClass;
+    }
+
+    public Entity getLocFileName() {
+        extract(ConversionPatternEl.Type.FILE);
+        return event.locFileName;
+    }
+
+    public LongEntity getLocLine() {
+        extract(ConversionPatternEl.Type.LINE);
+        return event.locLine;
+    }
+
+    public Entity getLocMethod() {
+        extract(ConversionPatternEl.Type.METHOD);
+        return event.locMethod;
+    }
+
+    public Map<String, Entity> getMap() {
+        extract(ConversionPatternEl.Type.MAP);
+        return event.map;
+    }
+
+    public LongEntity getProcessId() {
+        extract(ConversionPatternEl.Type.PID);
+        return event.processId;
+    }
+
+    public LongEntity getRelativeTimestamp() {
+        extract(ConversionPatternEl.Type.RELATIVE_TS);
+        return event.relativeTimestamp;
+    }
+
+    public LongEntity getSequenceNumber() {
+        extract(ConversionPatternEl.Type.SEQ);
+        return event.sequenceNumber;
+    }
+
+    public LongEntity getThreadId() {
+        extract(ConversionPatternEl.Type.THREAD_ID);
+        return event.threadId;
+    }
+
+    public IntEntity getThreadPriority() {
+        extract(ConversionPatternEl.Type.THREAD_PRIORITY);
+        return event.threadPriority;
+    }
+
+    public Entity getUuid() {
+        extract(ConversionPatternEl.Type.UUID);
+        return event.uuid;
+    }
+
+    /**
+     * Extracts all remaining fields and returns the event they are cached in, which is reused for the next line.
+     */
+    public Log4jLoggingEvent toEvent() {
+        for (ConversionPatternEl.Type type : TYPES) {
+            extract(type);
+        }
+        return event;
+    }
+
+    private void extract(ConversionPatternEl.Type type) {
+        long bit = 1L << type.ordinal();
+        if (line == null || (extracted & bit) != 0) {
+            return;
+        }
+        extracted |= bit;
+        decoder.extractFields(event, line, bounds, type, true);
+    }
+}
@@ -1,173 +1,731 @@
 package io.dashbase.log4j.parser;
 
-import com.github.benmanes.caffeine.cache.Cache;
-import com.github.benmanes.caffeine.cache.Caffeine;
-import io.dashbase.log4j.conversion.ConversionPatternParser;
+import io.dashbase.log4j.conversion.LinePrefilter;
+import io.dashbase.log4j.conversion.ScanPlan;
 import io.dashbase.log4j.model.*;
+import io.dashbase.log4j.util.StringDictionary;
 
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.text.Format;
+import java.text.ParsePosition;
 import java.time.*;
-import java.time.format.DateTimeFormatter;
-import java.time.format.DateTimeFormatterBuilder;
 import java.time.format.DateTimeParseException;
 import java.time.temporal.ChronoField;
-import java.util.HashMap;
+import java.time.temporal.TemporalAccessor;
+import java.time.temporal.TemporalQueries;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+/**
+ * Decodes log lines written with a log4j conversion pattern.
+ *
+ * <p>A decoder consists of the compiled pattern, which is immutable, and per-instance scratch state (matcher,
+ * scanner, timestamp parsers and caches, group offsets) so that decoding does not allocate it per line. A
+ * thread-safe decoder can be shared by all threads: it keeps a copy per thread and hands every call to the
+ * calling thread's copy. Decoders created with the public constructors are thread-safe, like they have always
+ * been. A decoder from {@link #builder(String)} is not unless built with {@link Builder#threadSafe(boolean)},
+ * and {@link #copy()} returns a single-threaded decoder that shares the compiled pattern, which saves the
+ * per-thread lookup of every call.
+ */
 public class Log4jDecoder {
-    private final Cache<LocalDate, DateTimeFormatter> dateTimeFormatterCache =
-        Caffeine.newBuilder().maximumSize(10).build();
-
-    private final Cache<CharSequence, Instant> timestampCache =
-        Caffeine.newBuilder().maximumSize(1000).build();
+    private static final int MAP_KEY_DICTIONARY_SIZE = 256;
+    // a time-only timestamp more than this before the previous one is on the next day
+    private static final long ROLLOVER_TOLERANCE_SECONDS = 5 * 60;
+    private static final long NO_DAY = Long.MIN_VALUE;
 
+    // compiled state, shared by copies
+    private final CompiledPattern plan;
+    // the conversion pattern without its trailing %n
+    private final String conversionPattern;
     private final List<ConversionPatternEl> extractedRules;
     private final Pattern pattern;
+    // regex-free engine for the same pattern, null if the pattern needs the regex
+    private final ScanPlan scanPlan;
+    // rejects most non-matching lines before the scan plan and the regex
+    private final LinePrefilter prefilter;
+    private final Format[] strictFormats;
+    private final Format[] lenientFormats;
     private final ZoneId defaultTimeZone;
+    // whether UTF-8 lines can be matched on their bytes, see Utf8Text
+    private final boolean utf8Matchable;
+    // the copy of the calling thread, set only on thread-safe decoders
+    private final ThreadLocal<Log4jDecoder> threadDecoders;
+    private final int nameDictionarySize;
+    // shared by copies, null if not enabled
+    private final DecoderMetrics metrics;
+    private final ReferenceDate referenceDate;
+    // the fields to extract, null for all, and whether each rule is one of them
+    private final Set<ConversionPatternEl.Type> fields;
+    private final boolean[] extracted;
+
+    // scratch state reused for every line
+    // integer-math parser per %d rule, null where the date format needs the DateTimeFormatter
+    private final FixedWidthTimestampParser[] timestampParsers;
+    // recently parsed seconds per %d rule, null where the fraction of a second is not at the end
+    private final TimestampPrefixCache[] timestampCaches;
+    // per %d rule: whether the last timestamp the formatters parsed needed the lenient one, which is tried first
+    private final boolean[] lenientFirst;
+    private final ParsePosition parsePosition = new ParsePosition(0);
+    private final int[] bounds;
+    private final ScanPlan.Scanner scanner;
+    private Matcher matcher;
+    // byte offset of each char of a decoded UTF-8 line, see toByteOffsets
+    private int[] byteOffsets = new int[0];
+    // finds the length of malformed UTF-8 bytes, created on the first ones
+    private CharsetDecoder malformedDecoder;
+    private ByteBuffer malformedBytes;
+    private CharBuffer malformedChars;
+    // canonical logger, thread and location names, null if not enabled
+    private final StringDictionary names;
+    // canonical MDC and %K keys
+    private final StringDictionary mapKeys;
+    // lines until the next line whose field extraction is timed
+    private int sampleCountdown;
+    // the date of time-only timestamps, NO_DAY until the first one, and the last of them
+    private long epochDay = NO_DAY;
+    private long lastTimeOnlySecond = Long.MIN_VALUE;
+    // the clock time-only timestamps are dated from, null if they count rollovers from the reference date
+    private Clock clock;
+    // the first second of the day after epochDay when it comes from the clock
+    private long clockDayEndSecond = Long.MIN_VALUE;
+    // result of parseTimestamp
+    private long parsedEpochSecond;
+    private int parsedNano;
 
 
+    /**
+     * Creates a thread-safe decoder, see {@link Builder#threadSafe(boolean)}.
+     */
     public Log4jDecoder(String conversionPattern) {
         this(conversionPattern, ZoneOffset.UTC);
     }
 
+    /**
+     * Creates a thread-safe decoder, see {@link Builder#threadSafe(boolean)}.
+     */
     public Log4jDecoder(String conversionPattern, ZoneId defaultTimeZone) {
-        ConversionPatternParser conversionPatternParser = new ConversionPatternParser(defaultTimeZone);
-        conversionPattern = conversionPatternParser.prepare(conversionPattern);
-        extractedRules = conversionPatternParser.extractConversionPattern(conversionPattern);
-        pattern = conversionPatternParser.getRegexPattern(conversionPattern);
-        this.defaultTimeZone = defaultTimeZone;
+        this(new Log4jDecoder(builder(conversionPattern).defaultTimeZone(defaultTimeZone)), true);
+    }
+
+    private Log4jDecoder(Builder builder) {
+        plan = builder.factory == null
+            ? CompiledPattern.compile(builder.conversionPattern, builder.defaultTimeZone)
+            : builder.factory.plan(builder.conversionPattern, builder.defaultTimeZone);
+        conversionPattern = plan.conversionPattern;
+        extractedRules = plan.rules;
+        pattern = plan.pattern;
+        scanPlan = plan.scanPlan;
+        prefilter = plan.prefilter;
+        strictFormats = plan.strictFormats;
+        lenientFormats = plan.lenientFormats;
+        defaultTimeZone = plan.defaultTimeZone;
+        utf8Matchable = plan.utf8Matchable;
+        threadDecoders = null;
+        metrics = builder.metrics;
+        referenceDate = builder.referenceDate;
+        clock = clock(referenceDate);
+        nameDictionarySize = builder.nameDictionarySize;
+        if (builder.fields == null) {
+            fields = null;
+        } else {
+            EnumSet<ConversionPatternEl.Type> copy = EnumSet.noneOf(ConversionPatternEl.Type.class);
+            copy.addAll(builder.fields);
+            fields = Collections.unmodifiableSet(copy);
+        }
+        extracted = new boolean[extractedRules.size()];
+        for (int i = 0; i < extractedRules.size(); i++) {
+            extracted[i] = fields == null || fields.contains(extractedRules.get(i).getType());
+        }
+        timestampParsers = plan.newTimestampParsers();
+        timestampCaches = plan.newTimestampCaches();
+        lenientFirst = new boolean[extractedRules.size()];
+        bounds = new int[2 * extractedRules.size()];
+        scanner = scanPlan == null ? null : scanPlan.newScanner();
+        names = nameDictionarySize > 0 ? new StringDictionary(nameDictionarySize) : null;
+        mapKeys = new StringDictionary(MAP_KEY_DICTIONARY_SIZE);
+    }
+
+    /**
+     * Shares the compiled state of the given decoder, with scratch state of its own.
+     */
+    private Log4jDecoder(Log4jDecoder compiled, boolean threadSafe) {
+        plan = compiled.plan;
+        extractedRules = compiled.extractedRules;
+        conversionPattern = compiled.conversionPattern;
+        pattern = compiled.pattern;
+        scanPlan = compiled.scanPlan;
+        prefilter = compiled.prefilter;
+        strictFormats = compiled.strictFormats;
+        lenientFormats = compiled.lenientFormats;
+        defaultTimeZone = compiled.defaultTimeZone;
+        utf8Matchable = compiled.utf8Matchable;
+        threadDecoders = threadSafe ? ThreadLocal.withInitial(() -> new Log4jDecoder(compiled, false)) : null;
+        metrics = compiled.metrics;
+        referenceDate = compiled.referenceDate;
+        clock = clock(referenceDate);
+        nameDictionarySize = compiled.nameDictionarySize;
+        fields = compiled.fields;
+        extracted = compiled.extracted;
+        timestampParsers = plan.newTimestampParsers();
+        timestampCaches = plan.newTimestampCaches();
+        lenientFirst = new boolean[extractedRules.size()];
+        bounds = new int[compiled.bounds.length];
+        scanner = scanPlan == null ? null : scanPlan.newScanner();
+        names = nameDictionarySize > 0 && !threadSafe ? new StringDictionary(nameDictionarySize) : null;
+        mapKeys = threadSafe ? null : new StringDictionary(MAP_KEY_DICTIONARY_SIZE);
+    }
+
+    public static Builder builder(String conversionPattern) {
+        return new Builder(conversionPattern);
+    }
+
+    /**
+     * Returns a single-threaded decoder for the same pattern, which is much cheaper than compiling the
+     * pattern again. Copies of a thread-safe decoder are not thread-safe.
+     */
+    public Log4jDecoder copy() {
+        return new Log4jDecoder(this, false);
+    }
+
+    public boolean isThreadSafe() {
+        return threadDecoders != null;
+    }
+
+    /**
+     * Returns whether the decoder extracts the given field, see {@link Builder#fields(Set)}.
+     */
+    public boolean extracts(ConversionPatternEl.Type type) {
+        return fields == null || fields.contains(type);
+    }
+
+    /**
+     * Returns the dictionary of logger, thread and location names of this decoder, or of the calling thread's
+     * copy of a thread-safe decoder; null unless enabled with {@link Builder#nameDictionarySize(int)}.
+     */
+    public StringDictionary nameDictionary() {
+        if (threadDecoders != null) {
+            return threadDecoders.get().nameDictionary();
+        }
+        return names;
+    }
+
+    /**
+     * Returns the metrics of the decoder, null unless enabled with {@link Builder#metrics(DecoderMetrics)}.
+     */
+    public DecoderMetrics metrics() {
+        return metrics;
+    }
+
+    /**
+     * Sets the date of the next time-only timestamp, see {@link ReferenceDate}. Later ones count rollovers from
+     * it, even if the decoder was built with a clock. On a thread-safe decoder, only the calling thread's copy
+     * changes.
+     */
+    public void setReferenceDate(LocalDate date) {
+        if (threadDecoders != null) {
+            threadDecoders.get().setReferenceDate(date);
+            return;
+        }
+        epochDay = date.toEpochDay();
+        lastTimeOnlySecond = Long.MIN_VALUE;
+        clock = null;
+    }
+
+    /**
+     * Dates the next time-only timestamp from the reference date the decoder was built with again, as if no
+     * line had been decoded.
+     */
+    void resetReferenceDate() {
+        if (threadDecoders != null) {
+            threadDecoders.get().resetReferenceDate();
+            return;
+        }
+        epochDay = NO_DAY;
+        lastTimeOnlySecond = Long.MIN_VALUE;
+        clock = clock(referenceDate);
+        clockDayEndSecond = Long.MIN_VALUE;
+    }
+
+    private static Clock clock(ReferenceDate referenceDate) {
+        return referenceDate instanceof ClockReferenceDate ? ((ClockReferenceDate) referenceDate).clock : null;
     }
 
     public Log4jLoggingEvent parseString(CharSequence line) {
-        Matcher m = pattern.matcher(line);
-        if (!m.matches()) {
+        if (threadDecoders != null) {
+            return threadDecoders.get().parseString(line);
+        }
+        if (!match(line, bounds)) {
             return null;
         }
         Log4jLoggingEvent currentEntry = new Log4jLoggingEvent();
-        for (int i = 0; i < m.groupCount(); i++) {
-            int start = m.start(i + 1);
-            int end = m.end(i + 1);
-            if (start < 0) continue;
-            while (start < line.length() && line.charAt(start) == ' ') start++;
-            while (end > 0 && line.charAt(end - 1) == ' ') end--;
-            if (start < end) {
-                extractField(currentEntry, line, start, end, extractedRules.get(i));
+        extractFields(currentEntry, line, bounds, true);
+        return currentEntry;
+    }
+
+    /**
+     * Resets the given event and fills it from the line without allocating new entities.
+     *
+     * <p>Fields are offset-only views over the line: their values are {@link io.dashbase.log4j.model.TextSlice}s
+     * that copy characters only when converted to a String. They stay valid until the line changes or the
+     * event is reused. The timestamp may only be stored in its primitive form, read it with
+     * {@link Log4jLoggingEvent#getTimestamp()}.
+     *
+     * @return false if the line does not match the conversion pattern
+     */
+    public boolean parseInto(CharSequence line, Log4jLoggingEvent reuse) {
+        if (threadDecoders != null) {
+            return threadDecoders.get().parseInto(line, reuse);
+        }
+        reuse.reset();
+        if (!match(line, bounds)) {
+            return false;
+        }
+        extractFields(reuse, line, bounds, false);
+        return true;
+    }
+
+    /**
+     * Decodes a line of UTF-8 bytes like {@link #parseString}, without decoding the line to a String first.
+     * Entity offsets are byte offsets from off, entity values are Strings. Malformed bytes are decoded to
+     * U+FFFD like {@link String#String(byte[], java.nio.charset.Charset)} does, and still counted by the offsets.
+     */
+    public Log4jLoggingEvent parse(byte[] buf, int off, int len) {
+        if (threadDecoders != null) {
+            return threadDecoders.get().parse(buf, off, len);
+        }
+        return parseUtf8(new Utf8Text().set(buf, off, len));
+    }
+
+    /**
+     * Decodes the remaining bytes of the buffer as a UTF-8 line, see {@link #parse(byte[], int, int)}. Entity
+     * offsets are byte offsets from the buffer's position, which is not changed.
+     */
+    public Log4jLoggingEvent parse(ByteBuffer buffer) {
+        if (threadDecoders != null) {
+            return threadDecoders.get().parse(buffer);
+        }
+        return parseUtf8(new Utf8Text().set(buffer));
+    }
+
+    /**
+     * Fills the event from a line of UTF-8 bytes like {@link #parseInto(CharSequence, Log4jLoggingEvent)}.
+     * Entity offsets are byte offsets from off, and values are {@link Utf8Text} views that decode the bytes
+     * when converted to a String.
+     *
+     * @return false if the line does not match the conversion pattern
+     */
+    public boolean parseInto(byte[] buf, int off, int len, Log4jLoggingEvent reuse) {
+        if (threadDecoders != null) {
+            return threadDecoders.get().parseInto(buf, off, len, reuse);
+        }
+        reuse.reset();
+        return parseUtf8Into(reuse.reusableUtf8Text().set(buf, off, len), reuse);
+    }
+
+    /**
+     * Fills the event from the remaining bytes of the buffer, see
+     * {@link #parseInto(byte[], int, int, Log4jLoggingEvent)}.
+     */
+    public boolean parseInto(ByteBuffer buffer, Log4jLoggingEvent reuse) {
+        if (threadDecoders != null) {
+            return threadDecoders.get().parseInto(buffer, reuse);
+        }
+        reuse.reset();
+        return parseUtf8Into(reuse.reusableUtf8Text().set(buffer), reuse);
+    }
+
+    /**
+     * Matches the line and returns an event that extracts each field on first access, or null if the line
+     * does not match. See {@link LazyLog4jEvent}.
+     */
+    public LazyLog4jEvent parseLazy(CharSequence line) {
+        LazyLog4jEvent event = new LazyLog4jEvent();
+        return parseLazyInto(line, event) ? event : null;
+    }
+
+    /**
+     * Matches the line into the given lazy event, which keeps the line and the offsets of its fields.
+     *
+     * @return false if the line does not match the conversion pattern
+     */
+    public boolean parseLazyInto(CharSequence line, LazyLog4jEvent reuse) {
+        if (!match(line, reuse.bounds(bounds.length))) {
+            reuse.reset(null, null);
+            return false;
+        }
+        reuse.reset(this, line);
+        return true;
+    }
+
+    /**
+     * Clears the batch and fills it with the lines that match the conversion pattern, until it is full or
+     * the lines run out. Non-matching lines are skipped. Each matching line is copied into the batch's
+     * buffer once; fields are stored as offsets into it.
+     *
+     * @return the number of rows in the batch
+     */
+    public int decodeBatch(Iterator<? extends CharSequence> lines, Log4jEventBatch batch) {
+        if (threadDecoders != null) {
+            return threadDecoders.get().decodeBatch(lines, batch);
+        }
+        batch.clear();
+        while (!batch.isFull() && lines.hasNext()) {
+            CharSequence line = lines.next();
+            if (match(line, bounds)) {
+                extractColumns(batch, batch.addRow(line), line, bounds);
             }
         }
+        return batch.size();
+    }
+
+    private Log4jLoggingEvent parseUtf8(Utf8Text line) {
+        CharSequence text = matchUtf8(line);
+        if (text == null) {
+            return null;
+        }
+        Log4jLoggingEvent currentEntry = new Log4jLoggingEvent();
+        extractFields(currentEntry, text, bounds, true);
         return currentEntry;
     }
 
-    private void extractField(Log4jLoggingEvent entry, CharSequence text, int start, int end, ConversionPatternEl rule) {
-        switch (rule.getType()) {
-            case DATE:
-                if (rule.useCache) {
-                    var timestamp = timestampCache.getIfPresent(text.subSequence(start, end));
-                    if (timestamp != null) {
-                        entry.timestamp = timestamp;
-                        return;
-                    }
-                }
+    private boolean parseUtf8Into(Utf8Text line, Log4jLoggingEvent reuse) {
+        CharSequence text = matchUtf8(line);
+        if (text == null) {
+            return false;
+        }
+        extractFields(reuse, text, bounds, false);
+        return true;
+    }
 
-                // if the timestamp is in the log message, use it as the event timestamp
-                DateTimeFormatter dtf = rule.dateTimeFormatter;
-                // If the date pattern only contains time, use the today's year/month/day when parsing the input string.
-                if (!rule.hasDate) {
-                    LocalDate today = LocalDate.now(defaultTimeZone);
-                    dtf = dateTimeFormatterCache.get(today, (tdy) ->
-                        new DateTimeFormatterBuilder().append(rule.dateTimeFormatter)
-                            .parseDefaulting(ChronoField.YEAR, today.getYear())
-                            .parseDefaulting(ChronoField.MONTH_OF_YEAR, today.getMonthValue())
-                            .parseDefaulting(ChronoField.DAY_OF_MONTH, today.getDayOfMonth())
-                            .toFormatter().withZone(defaultTimeZone));
-                }
+    /**
+     * Matches a UTF-8 line on its bytes, or on the decoded line if the pattern needs chars and then converts the
+     * bounds to byte offsets.
+     *
+     * @return the text the bounds refer to, null if the line does not match
+     */
+    private CharSequence matchUtf8(Utf8Text line) {
+        if (utf8Matchable) {
+            return match(line, bounds) ? line : null;
+        }
+        String decoded = line.toString();
+        if (!match(decoded, bounds)) {
+            return null;
+        }
+        // the offsets always add up, the decoded text is only a safeguard
+        return toByteOffsets(decoded, line, bounds) ? line : decoded;
+    }
+
+    /**
+     * Matches a UTF-8 line like {@link #match(CharSequence, int[])}, filling the bounds with byte offsets into
+     * it. Lines whose chars do not add up to their bytes are not matched.
+     */
+    boolean matchUtf8(Utf8Text line, int[] bounds) {
+        if (threadDecoders != null) {
+            return threadDecoders.get().matchUtf8(line, bounds);
+        }
+        if (utf8Matchable) {
+            return match(line, bounds);
+        }
+        String decoded = line.toString();
+        return match(decoded, bounds) && toByteOffsets(decoded, line, bounds);
+    }
+
+    /**
+     * Converts char offsets into the decoded text to offsets into its UTF-8 bytes. A U+FFFD replacement char
+     * stands for the malformed bytes it replaced.
+     *
+     * @return false if the chars do not add up to the bytes
+     */
+    private boolean toByteOffsets(String decoded, Utf8Text line, int[] bounds) {
+        if (byteOffsets.length <= decoded.length()) {
+            byteOffsets = new int[Math.max(decoded.length() + 1, 2 * byteOffsets.length)];
+        }
+        int[] byteOffsets = this.byteOffsets;
+        int bytes = 0;
+        for (int i = 0; i < decoded.length(); i++) {
+            byteOffsets[i] = bytes;
+            char c = decoded.charAt(i);
+            if (c < 0x80) {
+                bytes++;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < decoded.length() && Character.isLowSurrogate(decoded.charAt(i + 1))) {
+                // the low surrogate shares the offset of the pair's end
+                bytes += 4;
+                byteOffsets[++i] = bytes;
+            } else if (c == '\uFFFD' && bytes < line.length()) {
+                bytes += replacedLength(line, bytes);
+            } else {
+                bytes += 3;
+            }
+        }
+        byteOffsets[decoded.length()] = bytes;
+        if (bytes != line.length()) {
+            return false;
+        }
+        for (int i = 0; i < bounds.length; i++) {
+            if (bounds[i] >= 0) {
+                bounds[i] = byteOffsets[bounds[i]];
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of bytes at the offset that decoding replaced with one U+FFFD char, as the decoder
+     * reports them, or 3 if they encode U+FFFD itself.
+     */
+    private int replacedLength(Utf8Text line, int offset) {
+        if (malformedDecoder == null) {
+            malformedDecoder = StandardCharsets.UTF_8.newDecoder();
+            malformedBytes = ByteBuffer.allocate(4);
+            malformedChars = CharBuffer.allocate(2);
+        }
+        // a malformed sequence is never longer than a valid one
+        malformedBytes.clear();
+        for (int i = offset; i < Math.min(offset + 4, line.length()); i++) {
+            malformedBytes.put((byte) line.charAt(i));
+        }
+        malformedBytes.flip();
+        malformedChars.clear();
+        CoderResult result = malformedDecoder.reset().decode(malformedBytes, malformedChars, true);
+        return result.isError() && malformedBytes.position() == 0 ? result.length() : 3;
+    }
+
+    /**
+     * Returns the conversion pattern the rules' begin indexes refer to.
+     */
+    String conversionPattern() {
+        return conversionPattern;
+    }
+
+    List<ConversionPatternEl> rules() {
+        return extractedRules;
+    }
+
+    /**
+     * Returns the size of the bounds array taken by {@link #match(CharSequence, int[])}.
+     */
+    int boundsLength() {
+        return bounds.length;
+    }
+
+    /**
+     * Fills the event from the line using bounds computed by {@link #match(CharSequence, int[])}. The text
+     * may continue after the matched line, the bounds only refer to its beginning.
+     */
+    void extractFields(Log4jLoggingEvent entry, CharSequence line, int[] bounds, boolean copy) {
+        extractFields(entry, line, bounds, null, copy);
+    }
+
+    /**
+     * Extracts only the fields of the given type, or all of them if type is null.
+     */
+    void extractFields(Log4jLoggingEvent entry, CharSequence line, int[] bounds, ConversionPatternEl.Type type,
+                       boolean copy) {
+        if (threadDecoders != null) {
+            threadDecoders.get().extractFields(entry, line, bounds, type, copy);
+            return;
+        }
+        boolean sample = false;
+        if (metrics != null && metrics.sampleInterval() > 0 && --sampleCountdown <= 0) {
+            sampleCountdown = metrics.sampleInterval();
+            sample = true;
+        }
+        for (int i = 0; i < extractedRules.size(); i++) {
+            int start = bounds[2 * i];
+            int end = bounds[2 * i + 1];
+            if (start < 0 || !extracted[i] || type != null && extractedRules.get(i).getType() != type) continue;
+            while (start < line.length() && line.charAt(start) == ' ') start++;
+            while (end > 0 && line.charAt(end - 1) == ' ') end--;
+            if (start >= end) {
+                continue;
+            }
+            if (sample) {
+                long begin = System.nanoTime();
+                extractField(entry, line, start, end, i, copy);
+                metrics.recordFieldLatency(extractedRules.get(i).getType(), System.nanoTime() - begin);
+            } else {
+                extractField(entry, line, start, end, i, copy);
+            }
+        }
+    }
 
-                ZonedDateTime zdt;
-                try {
-                    zdt = ZonedDateTime.parse(text.subSequence(start, end), dtf);
-                } catch (DateTimeParseException e) {
-                    if (rule.lenientDateTimeFormatter.isPresent()) {
-                        zdt = ZonedDateTime.parse(text.subSequence(start, end), rule.lenientDateTimeFormatter.get());
+    private void extractColumns(Log4jEventBatch batch, int row, CharSequence line, int[] bounds) {
+        for (int i = 0; i < extractedRules.size(); i++) {
+            int start = bounds[2 * i];
+            int end = bounds[2 * i + 1];
+            if (start < 0 || !extracted[i]) continue;
+            while (start < line.length() && line.charAt(start) == ' ') start++;
+            while (end > 0 && line.charAt(end - 1) == ' ') end--;
+            if (start >= end) continue;
+            ConversionPatternEl.Type type = extractedRules.get(i).getType();
+            switch (type) {
+                case DATE:
+                    parseTimestamp(line, start, end, i);
+                    batch.setTimestamp(row, parsedEpochSecond, parsedNano);
+                    break;
+                case NANO_TS:
+                    long epochMilli = Long.parseLong(line, start, end, 10) / 1000;
+                    batch.setTimestamp(row, Math.floorDiv(epochMilli, 1000), Math.floorMod(epochMilli, 1000) * 1_000_000);
+                    break;
+                case LEVEL:
+                    batch.setLevel(row, Level.of(line, start, end));
+                    batch.set(type, row, start, end);
+                    break;
+                case NDC:
+                    int bracketOffset = line.charAt(start) == '[' && line.charAt(end - 1) == ']' ? 1 : 0;
+                    batch.set(type, row, start + bracketOffset, end - bracketOffset);
+                    break;
+                case MDC:
+                    String key = extractedRules.get(i).getModifier();
+                    if (key != null) {
+                        batch.setMdc(key, row, start, end);
                     } else {
-                        throw e;
+                        batch.set(type, row, start, end);
                     }
-                }
-                entry.timestamp = zdt.toInstant();
-                if (rule.useCache) {
-                    timestampCache.put(text.subSequence(start, end), entry.timestamp);
-                }
+                    break;
+                default:
+                    batch.set(type, row, start, end);
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Matches the whole line, using the scan plan when it can decide and the regex otherwise, and stores
+     * the start and end of each group in bounds.
+     */
+    boolean match(CharSequence line, int[] bounds) {
+        if (threadDecoders != null) {
+            return threadDecoders.get().match(line, bounds);
+        }
+        boolean matched = matches(line, bounds);
+        if (metrics != null) {
+            metrics.recordLine(line.length(), matched);
+        }
+        return matched;
+    }
+
+    private boolean matches(CharSequence line, int[] bounds) {
+        if (!prefilter.accepts(line)) {
+            return false;
+        }
+        if (scanner != null) {
+            int result = scanner.scan(line, bounds);
+            if (result != ScanPlan.UNDECIDED) {
+                return result == ScanPlan.MATCH;
+            }
+        }
+        Matcher m = matcher;
+        if (m == null) {
+            m = pattern.matcher(line);
+            matcher = m;
+        } else {
+            m.reset(line);
+        }
+        if (!m.matches()) {
+            return false;
+        }
+        for (int i = 0; i < m.groupCount(); i++) {
+            bounds[2 * i] = m.start(i + 1);
+            bounds[2 * i + 1] = m.end(i + 1);
+        }
+        return true;
+    }
+
+    private void extractField(Log4jLoggingEvent entry, CharSequence text, int start, int end, int index, boolean copy) {
+        ConversionPatternEl rule = extractedRules.get(index);
+        switch (rule.getType()) {
+            case DATE:
+                extractTimestamp(entry, text, start, end, index, copy);
                 break;
             case LEVEL:
-                entry.level = new Entity(text.subSequence(start, end), start, end);
+                extractLevel(entry, text, start, end, copy);
                 break;
             case LOGGER:
-                entry.loggerName = new Entity(text.subSequence(start, end), start, end);
+                entry.loggerName = name(entry, rule, text, start, end, copy);
                 break;
             case MAP:
-                entry.map = parseToEntityMap(text, start, end);
+                EntityMap map = copy ? new EntityMap() : entry.reusableMap();
+                parseEntries(text, start, end, map, copy);
+                entry.map = map;
                 break;
             case LOCATION:
-                entry.location = new Entity(text.subSequence(start, end), start, end);
+                entry.location = entity(entry, rule, text, start, end, copy);
                 break;
             case THREAD:
-                entry.thread = new Entity(text.subSequence(start, end), start, end);
+                entry.thread = name(entry, rule, text, start, end, copy);
                 break;
             case MESSAGE:
-                entry.message = new Entity(text.subSequence(start, end), start, end);
+                entry.message = entity(entry, rule, text, start, end, copy);
                 break;
             case EXCEPTION:
-                entry.throwableTrace = new Entity(text.subSequence(start, end), start, end);
+                entry.throwableTrace = entity(entry, rule, text, start, end, copy);
                 break;
             case FILE:
-                entry.locFileName = new Entity(text.subSequence(start, end), start, end);
+                entry.locFileName = name(entry, rule, text, start, end, copy);
                 break;
             case CLASS:
-                entry.locClass = new Entity(text.subSequence(start, end), start, end);
+                entry.locClass = name(entry, rule, text, start, end, copy);
                 break;
             case METHOD:
-                entry.locMethod = new Entity(text.subSequence(start, end), start, end);
+                entry.locMethod = name(entry, rule, text, start, end, copy);
                 break;
             case MARKER:
-                entry.marker = new Entity(text.subSequence(start, end), start, end);
+                entry.marker = entity(entry, rule, text, start, end, copy);
                 break;
             case NANO_TS:
-                entry.timestamp = Instant.ofEpochMilli(Long.parseLong(text, start, end, 10) / 1000);
+                long epochMilli = Long.parseLong(text, start, end, 10) / 1000;
+                if (copy) {
+                    entry.setTimestamp(Instant.ofEpochMilli(epochMilli));
+                } else {
+                    entry.setTimestamp(Math.floorDiv(epochMilli, 1000), Math.floorMod(epochMilli, 1000) * 1_000_000);
+                }
                 break;
             case PID:
-                entry.processId = LongEntity.from(text, start, end);
+                entry.processId = longEntity(entry, rule, text, start, end, copy);
                 break;
             case RELATIVE_TS:
-                entry.relativeTimestamp = LongEntity.from(text, start, end);
+                entry.relativeTimestamp = longEntity(entry, rule, text, start, end, copy);
                 break;
             case SEQ:
-                entry.sequenceNumber = LongEntity.from(text, start, end);
+                entry.sequenceNumber = longEntity(entry, rule, text, start, end, copy);
                 break;
             case THREAD_ID:
-                entry.threadId = LongEntity.from(text, start, end);
+                entry.threadId = longEntity(entry, rule, text, start, end, copy);
                 break;
             case THREAD_PRIORITY:
-                entry.threadPriority = IntEntity.from(text, start, end);
+                entry.threadPriority = copy ? IntEntity.from(text, start, end) : entry.reusableIntEntity().parse(text, start, end);
                 break;
             case UUID:
-                entry.uuid = new Entity(text.subSequence(start, end), start, end);
+                entry.uuid = entity(entry, rule, text, start, end, copy);
                 break;
             case FQCN:
-                entry.fqcn = new Entity(text.subSequence(start, end), start, end);
+                entry.fqcn = name(entry, rule, text, start, end, copy);
                 break;
             case LINE:
-                entry.locLine = LongEntity.from(text, start, end);
+                entry.locLine = longEntity(entry, rule, text, start, end, copy);
                 break;
             case NDC:
                 int bracketOffset = text.charAt(start) == '[' && text.charAt(end - 1) == ']' ? 1 : 0;
-                entry.ndc = new Entity(text.subSequence(start + bracketOffset, end - bracketOffset),
-                    start + bracketOffset, end - bracketOffset);
+                entry.ndc = entity(entry, rule, text, start + bracketOffset, end - bracketOffset, copy);
                 break;
             case MDC:
-                if (text.charAt(start) == '{' && text.charAt(end - 1) == '}') {
-                    entry.putMdc(parseToEntityMap(text, start + 1, end - 1));
+                if (end - start >= 2 && text.charAt(start) == '{' && text.charAt(end - 1) == '}') {
+                    parseEntries(text, start + 1, end - 1, entry.mdcMap(), copy);
                 } else {
-                    entry.putMdc(rule.getModifier(), new Entity(text.subSequence(start, end), start, end));
+                    entry.mdcMap().add(rule.getModifier(), text, start, end, copy);
                 }
                 break;
             default:
@@ -175,30 +733,309 @@ public class Log4jDecoder {
         }
     }
 
-    private Map<String, Entity> parseToEntityMap(CharSequence text, int startIndex, int endIndex) {
-        var result = new HashMap<String, Entity>();
+    /**
+     * Sets the level and its entity, whose value is the level's name when the text is exactly that name,
+     * so that neither a String nor a view is needed for the standard levels.
+     */
+    private static void extractLevel(Log4jLoggingEvent entry, CharSequence text, int start, int end, boolean copy) {
+        Level level = Level.of(text, start, end);
+        entry.logLevel = level;
+        if (!level.nameEquals(text, start, end)) {
+            entry.level = entity(entry, ConversionPatternEl.Type.LEVEL, text, start, end, copy);
+        } else if (copy) {
+            entry.level = new Entity(level.name(), start, end);
+        } else {
+            entry.level = entry.reusableEntity(ConversionPatternEl.Type.LEVEL).set(level.name(), start, end);
+        }
+    }
+
+    private void extractTimestamp(Log4jLoggingEvent entry, CharSequence text, int start, int end, int index, boolean copy) {
+        parseTimestamp(text, start, end, index);
+        setTimestamp(entry, parsedEpochSecond, parsedNano, copy);
+    }
+
+    /**
+     * Parses the timestamp of a %d rule into parsedEpochSecond and parsedNano. Time-only timestamps are on the
+     * clock's date, or on the reference date, which moves to the next day when the time goes back by more than
+     * ROLLOVER_TOLERANCE_SECONDS.
+     */
+    private void parseTimestamp(CharSequence text, int start, int end, int index) {
+        if (extractedRules.get(index).hasDate) {
+            parseTimestamp(text, start, end, index, 0);
+            return;
+        }
+        if (clock != null) {
+            parseClockTimestamp(text, start, end, index);
+            return;
+        }
+        if (epochDay == NO_DAY) {
+            epochDay = referenceDate.date(defaultTimeZone).toEpochDay();
+        }
+        parseTimestamp(text, start, end, index, epochDay);
+        if (lastTimeOnlySecond != Long.MIN_VALUE
+            && parsedEpochSecond < lastTimeOnlySecond - ROLLOVER_TOLERANCE_SECONDS) {
+            // past midnight
+            epochDay++;
+            parseTimestamp(text, start, end, index, epochDay);
+        }
+        lastTimeOnlySecond = parsedEpochSecond;
+    }
+
+    /**
+     * Parses a time-only timestamp on the clock's date, which is only computed again once the day is over.
+     */
+    private void parseClockTimestamp(CharSequence text, int start, int end, int index) {
+        long nowSecond = Math.floorDiv(clock.millis(), 1000);
+        if (nowSecond >= clockDayEndSecond || epochDay == NO_DAY) {
+            LocalDate today = LocalDate.ofInstant(Instant.ofEpochSecond(nowSecond), defaultTimeZone);
+            epochDay = today.toEpochDay();
+            clockDayEndSecond = today.plusDays(1).atStartOfDay(defaultTimeZone).toEpochSecond();
+        }
+        parseTimestamp(text, start, end, index, epochDay);
+    }
+
+    /**
+     * @param epochDay the local date of time-only formats
+     */
+    private void parseTimestamp(CharSequence text, int start, int end, int index, long epochDay) {
+        ConversionPatternEl rule = extractedRules.get(index);
+        FixedWidthTimestampParser fastParser = timestampParsers[index];
+        if (fastParser != null && fastParser.parse(text, start, end, epochDay)) {
+            if (metrics != null) {
+                metrics.recordTimestampFastParse();
+            }
+            parsedEpochSecond = fastParser.epochSecond();
+            parsedNano = fastParser.nano();
+            return;
+        }
+
+        TimestampPrefixCache cache = timestampCaches[index];
+        if (cache != null && cache.get(text, start, end, epochDay)) {
+            if (metrics != null) {
+                metrics.recordTimestampCacheHit();
+            }
+            parsedEpochSecond = cache.epochSecond();
+            parsedNano = cache.nano();
+            return;
+        }
+
+        // a String, which also decodes non-ASCII bytes of a Utf8Text
+        String timestampText = text.subSequence(start, end).toString();
+        // sources write padded or unpadded values consistently, start with the formatter that worked last
+        boolean lenient = lenientFirst[index] && lenientFormats[index] != null;
+        TemporalAccessor parsed = parse(timestampText, lenient ? lenientFormats[index] : strictFormats[index]);
+        if (parsed == null) {
+            Format other = lenient ? strictFormats[index] : lenientFormats[index];
+            parsed = other == null ? null : parse(timestampText, other);
+            if (parsed == null) {
+                throw new DateTimeParseException("Text '" + timestampText + "' could not be parsed",
+                    timestampText, parsePosition.getErrorIndex());
+            }
+            lenient = !lenient;
+            lenientFirst[index] = lenient;
+        }
+        if (metrics != null) {
+            metrics.recordTimestampFormatterParse(lenient);
+        }
+        ZonedDateTime zdt = toZonedDateTime(parsed, rule.hasDate, epochDay);
+        parsedEpochSecond = zdt.toEpochSecond();
+        parsedNano = zdt.getNano();
+        if (cache != null) {
+            cache.put(text, start, end, epochDay, parsedEpochSecond);
+        }
+    }
+
+    /**
+     * Parses the whole text without throwing when it does not fit the format.
+     *
+     * @return the resolved fields, null if the text does not fit
+     */
+    private TemporalAccessor parse(String text, Format format) {
+        parsePosition.setIndex(0);
+        parsePosition.setErrorIndex(-1);
+        Object parsed = format.parseObject(text, parsePosition);
+        if (parsed != null && parsePosition.getIndex() != text.length()) {
+            parsePosition.setErrorIndex(parsePosition.getIndex());
+            return null;
+        }
+        return (TemporalAccessor) parsed;
+    }
+
+    /**
+     * Returns the parsed timestamp, taking the date fields a time-only format lacks from epochDay.
+     */
+    private ZonedDateTime toZonedDateTime(TemporalAccessor parsed, boolean hasDate, long epochDay) {
+        if (hasDate) {
+            return ZonedDateTime.from(parsed);
+        }
+        LocalDate date = LocalDate.ofEpochDay(epochDay);
+        if (parsed.isSupported(ChronoField.YEAR) || parsed.isSupported(ChronoField.MONTH_OF_YEAR)
+            || parsed.isSupported(ChronoField.DAY_OF_MONTH)) {
+            date = LocalDate.of(
+                parsed.isSupported(ChronoField.YEAR) ? parsed.get(ChronoField.YEAR) : date.getYear(),
+                parsed.isSupported(ChronoField.MONTH_OF_YEAR) ? parsed.get(ChronoField.MONTH_OF_YEAR) : date.getMonthValue(),
+                parsed.isSupported(ChronoField.DAY_OF_MONTH) ? parsed.get(ChronoField.DAY_OF_MONTH) : date.getDayOfMonth());
+        }
+        LocalTime time = parsed.query(TemporalQueries.localTime());
+        if (time == null) {
+            throw new DateTimeException("Unable to obtain a time of day from " + parsed);
+        }
+        ZoneId zone = parsed.query(TemporalQueries.zone());
+        return ZonedDateTime.of(date, time, zone == null ? defaultTimeZone : zone);
+    }
+
+    private static void setTimestamp(Log4jLoggingEvent entry, long epochSecond, int nano, boolean copy) {
+        if (copy) {
+            entry.setTimestamp(Instant.ofEpochSecond(epochSecond, nano));
+        } else {
+            entry.setTimestamp(epochSecond, nano);
+        }
+    }
+
+    /**
+     * Returns the entity of a name field, with a canonical value from the dictionary if there is one.
+     */
+    private Entity name(Log4jLoggingEvent entry, ConversionPatternEl rule, CharSequence text, int start, int end,
+                        boolean copy) {
+        if (names == null) {
+            return entity(entry, rule, text, start, end, copy);
+        }
+        String name = names.intern(text, start, end);
+        return copy ? new Entity(name, start, end) : entry.reusableEntity(rule.getType()).set(name, start, end);
+    }
+
+    private static Entity entity(Log4jLoggingEvent entry, ConversionPatternEl rule, CharSequence text, int start, int end,
+                                 boolean copy) {
+        return entity(entry, rule.getType(), text, start, end, copy);
+    }
+
+    /**
+     * Returns a copied entity, or the event's reusable entity as a view over the text.
+     */
+    static Entity entity(Log4jLoggingEvent entry, ConversionPatternEl.Type type, CharSequence text, int start, int end,
+                         boolean copy) {
+        if (copy) {
+            return new Entity(text.subSequence(start, end).toString(), start, end);
+        }
+        return entry.reusableEntity(type).view(text, start, end);
+    }
 
-        int index = startIndex;
-        while (index < endIndex) {
+    private static LongEntity longEntity(Log4jLoggingEvent entry, ConversionPatternEl rule, CharSequence text, int start,
+                                         int end, boolean copy) {
+        if (copy) {
+            return LongEntity.from(text, start, end);
+        }
+        return entry.reusableLongEntity(rule.getType()).parse(text, start, end);
+    }
+
+    /**
+     * Adds the comma-separated key=value entries of text[start, end) to the map, skipping entries without a key.
+     */
+    private void parseEntries(CharSequence text, int start, int end, EntityMap result, boolean copy) {
+        int index = start;
+        while (index < end) {
             // skip leading space
-            while (text.charAt(index) == ' ') index++;
-            // get key
+            while (index < end && text.charAt(index) == ' ') index++;
             int keyStart = index;
-            while (text.charAt(index) != '=') index++;
-            String key = text.subSequence(keyStart, index).toString();
+            while (index < end && text.charAt(index) != '=' && text.charAt(index) != ',') index++;
+            if (index == end || index == keyStart || text.charAt(index) == ',') {
+                // no key, skip to the next entry
+                while (index < end && text.charAt(index) != ',') index++;
+                index++;
+                continue;
+            }
+            String key = mapKeys.intern(text, keyStart, index);
             index++;
             int valueStart = index;
-            while (index < endIndex && text.charAt(index) != ',') index++;
-            Entity value = new Entity(text.subSequence(valueStart, index), valueStart, index);
-            result.put(key, value);
+            while (index < end && text.charAt(index) != ',') index++;
+            result.add(key, text, valueStart, index, copy);
             index++;
         }
-
-        return result;
     }
 
     @Override
     public String toString() {
         return "Log4jDecoder: " + pattern.toString();
     }
+
+    public static final class Builder {
+        private final String conversionPattern;
+        private ZoneId defaultTimeZone = ZoneOffset.UTC;
+        private boolean threadSafe;
+        private int nameDictionarySize;
+        private Set<ConversionPatternEl.Type> fields;
+        // the factory whose compiled patterns the decoder shares, null to compile the pattern
+        private Log4jDecoderFactory factory;
+        private DecoderMetrics metrics;
+        private ReferenceDate referenceDate = ReferenceDate.today();
+
+        private Builder(String conversionPattern) {
+            this.conversionPattern = conversionPattern;
+        }
+
+        /**
+         * Sets the zone of timestamps without an offset, UTC by default.
+         */
+        public Builder defaultTimeZone(ZoneId defaultTimeZone) {
+            this.defaultTimeZone = defaultTimeZone;
+            return this;
+        }
+
+        /**
+         * Makes the decoder safe to share between threads, see {@link Log4jDecoder}. Disabled by default,
+         * unlike the decoders of the public constructors.
+         */
+        public Builder threadSafe(boolean threadSafe) {
+            this.threadSafe = threadSafe;
+            return this;
+        }
+
+        /**
+         * Enables a dictionary of at most the given number of logger, thread, class, file, method and fqcn
+         * names, so that these fields share canonical Strings and do not copy repeated names. Every copy of
+         * the decoder has a dictionary of its own. Disabled by default.
+         */
+        public Builder nameDictionarySize(int nameDictionarySize) {
+            this.nameDictionarySize = nameDictionarySize;
+            return this;
+        }
+
+        /**
+         * Restricts decoding to the given fields. Lines are still matched against the whole pattern, but other
+         * fields are left null: their text is not copied and their numbers, dates and maps are not parsed.
+         * All fields are extracted by default.
+         */
+        public Builder fields(Set<ConversionPatternEl.Type> fields) {
+            this.fields = fields;
+            return this;
+        }
+
+        /**
+         * Records what the decoder and its copies do into the given metrics, see {@link DecoderMetrics}.
+         * Disabled by default.
+         */
+        public Builder metrics(DecoderMetrics metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+
+        /**
+         * Sets the date of the first time-only timestamp, such as those of %d{ABSOLUTE}, see
+         * {@link ReferenceDate}. {@link ReferenceDate#today()} by default.
+         */
+        public Builder referenceDate(ReferenceDate referenceDate) {
+            this.referenceDate = referenceDate;
+            return this;
+        }
+
+        Builder factory(Log4jDecoderFactory factory) {
+            this.factory = factory;
+            return this;
+        }
+
+        public Log4jDecoder build() {
+            Log4jDecoder decoder = new Log4jDecoder(this);
+            return threadSafe ? new Log4jDecoder(decoder, true) : decoder;
+        }
+    }
 }
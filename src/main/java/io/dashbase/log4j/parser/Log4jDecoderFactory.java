@@ -0,0 +1,121 @@
+package io.dashbase.log4j.parser;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Builds decoders that share compiled patterns. A pattern is compiled once per time zone, the first time a
+ * decoder is built for it, and every later decoder for the same pattern and zone only allocates its scratch
+ * state, like {@link Log4jDecoder#copy()}. Compiled patterns are kept in a bounded cache, so an application
+ * with many log sources but few distinct patterns compiles each pattern once.
+ *
+ * <p>The factory is thread-safe; the decoders it builds are as thread-safe as their builder makes them.
+ */
+public final class Log4jDecoderFactory {
+    public static final int DEFAULT_MAX_PATTERNS = 1024;
+
+    private final Cache<Key, CompiledPattern> plans;
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder builds = new LongAdder();
+    private final LongAdder buildNanos = new LongAdder();
+
+    public Log4jDecoderFactory() {
+        this(DEFAULT_MAX_PATTERNS);
+    }
+
+    /**
+     * @param maxPatterns the number of compiled patterns kept, the least recently used are compiled again
+     */
+    public Log4jDecoderFactory(int maxPatterns) {
+        if (maxPatterns <= 0) {
+            throw new IllegalArgumentException("maxPatterns must be positive: " + maxPatterns);
+        }
+        plans = Caffeine.newBuilder().maximumSize(maxPatterns).build();
+    }
+
+    public Log4jDecoder decoder(String conversionPattern) {
+        return decoder(conversionPattern, ZoneOffset.UTC);
+    }
+
+    public Log4jDecoder decoder(String conversionPattern, ZoneId defaultTimeZone) {
+        return builder(conversionPattern).defaultTimeZone(defaultTimeZone).build();
+    }
+
+    /**
+     * Returns a builder of a decoder that shares the compiled pattern of the time zone it is built with.
+     */
+    public Log4jDecoder.Builder builder(String conversionPattern) {
+        return Log4jDecoder.builder(conversionPattern).factory(this);
+    }
+
+    CompiledPattern plan(String conversionPattern, ZoneId defaultTimeZone) {
+        requests.increment();
+        return plans.get(new Key(conversionPattern, defaultTimeZone), key -> {
+            long start = System.nanoTime();
+            CompiledPattern plan = CompiledPattern.compile(key.conversionPattern, key.defaultTimeZone);
+            buildNanos.add(System.nanoTime() - start);
+            builds.increment();
+            return plan;
+        });
+    }
+
+    /**
+     * Returns the number of decoders built with a pattern that was already compiled.
+     */
+    public long hitCount() {
+        return requests.sum() - builds.sum();
+    }
+
+    /**
+     * Returns the number of patterns compiled, including patterns compiled again after they were evicted.
+     */
+    public long buildCount() {
+        return builds.sum();
+    }
+
+    /**
+     * Returns the total time spent compiling patterns in nanoseconds.
+     */
+    public long buildNanos() {
+        return buildNanos.sum();
+    }
+
+    /**
+     * Returns the approximate number of compiled patterns in the cache.
+     */
+    public long size() {
+        return plans.estimatedSize();
+    }
+
+    private static final class Key {
+        final String conversionPattern;
+        final ZoneId defaultTimeZone;
+
+        Key(String conversionPattern, ZoneId defaultTimeZone) {
+            this.conversionPattern = Objects.requireNonNull(conversionPattern);
+            this.defaultTimeZone = Objects.requireNonNull(defaultTimeZone);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return conversionPattern.equals(key.conversionPattern) && defaultTimeZone.equals(key.defaultTimeZone);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * conversionPattern.hashCode() + defaultTimeZone.hashCode();
+        }
+    }
+}
@@ -0,0 +1,578 @@
+package io.dashbase.log4j.parser;
+
+import io.dashbase.log4j.model.Log4jLoggingEvent;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@link Flow.Processor} that decodes a stream of log lines, or of byte chunks it splits into lines, and
+ * publishes the events in batches. Events are assembled from their first line and continuation lines like
+ * {@link Log4jEventReader} does, with copied values. A batch is published when it holds batchSize events, or
+ * once the linger time has passed since the first event that is not published yet, so that a quiet source
+ * does not hold back its last events. The event still being assembled is only published with it once no item
+ * arrived for the linger time, since its continuation lines may still be coming.
+ *
+ * <p>Demand is counted in batches. Items are requested from the publisher in windows of prefetch items, and
+ * only while fewer than two batches wait for demand, so a slow subscriber slows down the publisher instead of
+ * filling a buffer. The completion or error of the publisher follows the batches decoded before it.
+ *
+ * <p>The processor owns the decoder and accepts a single subscriber.
+ */
+public final class Log4jDecodingProcessor<T> implements Flow.Processor<T, List<Log4jLoggingEvent>> {
+    public static final int DEFAULT_BATCH_SIZE = 256;
+    public static final Duration DEFAULT_LINGER = Duration.ofMillis(100);
+    public static final int DEFAULT_PREFETCH = 256;
+
+    // batches waiting for demand at which the publisher is paused
+    private static final int MAX_READY_BATCHES = 2;
+
+    private final Log4jDecoder decoder;
+    private final LineSplitter<T> splitter;
+    private final int batchSize;
+    private final long lingerNanos;
+    private final int prefetch;
+    private final ScheduledExecutorService scheduler;
+    // serializes the signals to the subscriber and the requests to the publisher
+    private final AtomicInteger wip = new AtomicInteger();
+
+    // the state below is guarded by this
+    private Flow.Subscription upstream;
+    private boolean upstreamCancelled;
+    // items requested from the publisher and not received yet
+    private long outstanding;
+    private boolean upstreamDone;
+    private Throwable error;
+    private Flow.Subscriber<? super List<Log4jLoggingEvent>> downstream;
+    // onSubscribe of the subscriber has returned
+    private boolean subscribed;
+    private long requested;
+    private Throwable badRequest;
+    private boolean cancelled;
+    private boolean terminated;
+
+    private final ArrayDeque<List<Log4jLoggingEvent>> ready = new ArrayDeque<>();
+    private List<Log4jLoggingEvent> current;
+    private ScheduledFuture<?> lingerTask;
+    private long lastItemNanos;
+    private final EventLines events;
+
+    private Log4jDecodingProcessor(Builder builder, LineSplitter<T> splitter) {
+        this.decoder = builder.decoder;
+        this.splitter = splitter;
+        this.batchSize = builder.batchSize;
+        this.lingerNanos = builder.linger.toNanos();
+        this.prefetch = builder.prefetch;
+        this.scheduler = builder.scheduler != null ? builder.scheduler : LingerScheduler.INSTANCE;
+        this.events = new EventLines(decoder, builder.maxEventSize, this::addEvent);
+    }
+
+    public static Builder builder(Log4jDecoder decoder) {
+        return new Builder(decoder);
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super List<Log4jLoggingEvent>> subscriber) {
+        Objects.requireNonNull(subscriber, "subscriber");
+        boolean accepted;
+        synchronized (this) {
+            accepted = downstream == null;
+            if (accepted) {
+                downstream = subscriber;
+            }
+        }
+        if (!accepted) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                }
+
+                @Override
+                public void cancel() {
+                }
+            });
+            subscriber.onError(new IllegalStateException("Log4jDecodingProcessor accepts a single subscriber"));
+            return;
+        }
+        subscriber.onSubscribe(new Subscription());
+        synchronized (this) {
+            subscribed = true;
+        }
+        drain();
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        Objects.requireNonNull(subscription, "subscription");
+        boolean accepted;
+        synchronized (this) {
+            accepted = upstream == null && !cancelled;
+            if (accepted) {
+                upstream = subscription;
+            }
+        }
+        if (!accepted) {
+            subscription.cancel();
+            return;
+        }
+        drain();
+    }
+
+    @Override
+    public void onNext(T item) {
+        Objects.requireNonNull(item, "item");
+        Flow.Subscription cancel = null;
+        synchronized (this) {
+            if (upstreamDone || cancelled) {
+                return;
+            }
+            outstanding--;
+            lastItemNanos = System.nanoTime();
+            try {
+                splitter.split(item, this);
+                if (lingerNanos == 0) {
+                    flush();
+                } else if (lingerTask == null && (events.hasEvent() || current != null)) {
+                    lingerTask = scheduler.schedule(this::linger, lingerNanos, TimeUnit.NANOSECONDS);
+                }
+            } catch (RuntimeException e) {
+                // a line the decoder cannot decode, such as an invalid date
+                finish(e);
+                cancel = detachUpstream();
+            }
+        }
+        if (cancel != null) {
+            cancel.cancel();
+        }
+        drain();
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        Objects.requireNonNull(throwable, "throwable");
+        synchronized (this) {
+            if (upstreamDone) {
+                return;
+            }
+            finish(throwable);
+        }
+        drain();
+    }
+
+    @Override
+    public void onComplete() {
+        synchronized (this) {
+            if (upstreamDone) {
+                return;
+            }
+            Throwable failure = null;
+            try {
+                splitter.finish(this);
+            } catch (RuntimeException e) {
+                failure = e;
+            }
+            finish(failure);
+        }
+        drain();
+    }
+
+    /**
+     * Returns the number of lines skipped because they came before the first event, or after an event that
+     * was published when no item arrived for the linger time.
+     */
+    public synchronized long skippedLines() {
+        return events.skippedLines();
+    }
+
+    /**
+     * Returns the number of continuation lines dropped because their event reached the maximum size.
+     */
+    public synchronized long droppedLines() {
+        return events.droppedLines();
+    }
+
+    /**
+     * Returns the number of lines that started an event and were cut to the maximum event size.
+     */
+    public synchronized long truncatedLines() {
+        return events.truncatedLines();
+    }
+
+    /**
+     * Adds a line without its terminator, called by the splitter while holding the lock.
+     */
+    void line(CharSequence line) {
+        events.add(line);
+    }
+
+    private void addEvent(Log4jLoggingEvent entry) {
+        if (current == null) {
+            current = new ArrayList<>(batchSize);
+        }
+        current.add(entry);
+        if (current.size() == batchSize) {
+            ready.add(current);
+            current = null;
+        }
+    }
+
+    /**
+     * Moves the event being assembled and the partial batch to the ready batches.
+     */
+    private void flush() {
+        events.flush();
+        publishCurrent();
+    }
+
+    private void publishCurrent() {
+        if (current != null) {
+            ready.add(current);
+            current = null;
+        }
+    }
+
+    /**
+     * Publishes the completed events, and the event being assembled if no item arrived for the linger time.
+     * Otherwise waits for that time again.
+     */
+    private void linger() {
+        synchronized (this) {
+            lingerTask = null;
+            if (upstreamDone || cancelled) {
+                return;
+            }
+            publishCurrent();
+            if (events.hasEvent()) {
+                long idle = System.nanoTime() - lastItemNanos;
+                if (idle >= lingerNanos) {
+                    flush();
+                } else {
+                    lingerTask = scheduler.schedule(this::linger, lingerNanos - idle, TimeUnit.NANOSECONDS);
+                }
+            }
+        }
+        drain();
+    }
+
+    /**
+     * Ends the input, after the events decoded so far. Called while holding the lock.
+     */
+    private void finish(Throwable failure) {
+        upstreamDone = true;
+        error = failure;
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            if (error == null) {
+                error = e;
+            }
+        }
+        if (lingerTask != null) {
+            lingerTask.cancel(false);
+            lingerTask = null;
+        }
+    }
+
+    /**
+     * Returns the publisher's subscription to cancel outside the lock, or null if it is already cancelled.
+     */
+    private Flow.Subscription detachUpstream() {
+        if (upstream == null || upstreamCancelled) {
+            return null;
+        }
+        upstreamCancelled = true;
+        return upstream;
+    }
+
+    /**
+     * Delivers the ready batches the subscriber requested, then the terminal signal, and requests more items
+     * from the publisher when few batches are left. Only one thread drains at a time; calls made meanwhile
+     * make it loop again.
+     */
+    private void drain() {
+        if (wip.getAndIncrement() != 0) {
+            return;
+        }
+        int missed = 1;
+        while (true) {
+            Flow.Subscriber<? super List<Log4jLoggingEvent>> subscriber;
+            List<Log4jLoggingEvent> batch = null;
+            Flow.Subscription cancel = null;
+            Flow.Subscription request = null;
+            long count = 0;
+            Throwable failure = null;
+            boolean complete = false;
+            synchronized (this) {
+                subscriber = subscribed ? downstream : null;
+                if (cancelled || terminated) {
+                    cancel = detachUpstream();
+                    ready.clear();
+                    current = null;
+                    events.clear();
+                    if (lingerTask != null) {
+                        lingerTask.cancel(false);
+                        lingerTask = null;
+                    }
+                } else if (subscriber != null) {
+                    if (badRequest != null) {
+                        terminated = true;
+                        failure = badRequest;
+                        cancel = detachUpstream();
+                    } else if (requested > 0 && !ready.isEmpty()) {
+                        batch = ready.poll();
+                        if (requested != Long.MAX_VALUE) {
+                            requested--;
+                        }
+                    } else if (upstreamDone && ready.isEmpty()) {
+                        terminated = true;
+                        failure = error;
+                        complete = error == null;
+                    } else if (!upstreamDone && upstream != null && !upstreamCancelled
+                        && ready.size() < MAX_READY_BATCHES && outstanding <= prefetch / 2) {
+                        request = upstream;
+                        count = prefetch - outstanding;
+                        outstanding = prefetch;
+                    }
+                }
+            }
+            if (cancel != null) {
+                cancel.cancel();
+            }
+            if (batch != null) {
+                subscriber.onNext(batch);
+                continue;
+            }
+            if (failure != null) {
+                subscriber.onError(failure);
+            } else if (complete) {
+                subscriber.onComplete();
+            }
+            if (request != null) {
+                request.request(count);
+            }
+            missed = wip.addAndGet(-missed);
+            if (missed == 0) {
+                return;
+            }
+        }
+    }
+
+    private final class Subscription implements Flow.Subscription {
+        @Override
+        public void request(long n) {
+            synchronized (Log4jDecodingProcessor.this) {
+                if (n <= 0) {
+                    if (badRequest == null) {
+                        badRequest = new IllegalArgumentException("request must be positive: " + n);
+                    }
+                } else {
+                    requested = requested + n < 0 ? Long.MAX_VALUE : requested + n;
+                }
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            synchronized (Log4jDecodingProcessor.this) {
+                cancelled = true;
+            }
+            drain();
+        }
+    }
+
+    /**
+     * Turns the items of the publisher into lines.
+     */
+    private interface LineSplitter<T> {
+        void split(T item, Log4jDecodingProcessor<T> target);
+
+        /**
+         * Adds the last line if it has no terminator.
+         */
+        void finish(Log4jDecodingProcessor<T> target);
+    }
+
+    private static final class LineItems implements LineSplitter<CharSequence> {
+        @Override
+        public void split(CharSequence item, Log4jDecodingProcessor<CharSequence> target) {
+            target.line(item);
+        }
+
+        @Override
+        public void finish(Log4jDecodingProcessor<CharSequence> target) {
+        }
+    }
+
+    /**
+     * Splits chunks of bytes on "\n", "\r\n" and "\r", keeping the bytes of a line that continues in the next
+     * chunk, so that a multi-byte character may be split between chunks.
+     */
+    private static final class ChunkSplitter implements LineSplitter<ByteBuffer> {
+        private final Charset charset;
+        // bytes kept of a line, enough for maxEventSize chars
+        private final int maxLineSize;
+        private byte[] line = new byte[256];
+        private int length;
+        // bytes were read since the last terminator
+        private boolean pending;
+        // the last chunk ended with '\r', skip a following '\n'
+        private boolean skipLineFeed;
+
+        ChunkSplitter(Charset charset, int maxLineSize) {
+            this.charset = charset;
+            this.maxLineSize = maxLineSize;
+        }
+
+        @Override
+        public void split(ByteBuffer chunk, Log4jDecodingProcessor<ByteBuffer> target) {
+            for (int i = chunk.position(); i < chunk.limit(); i++) {
+                byte b = chunk.get(i);
+                if (skipLineFeed) {
+                    skipLineFeed = false;
+                    if (b == '\n') {
+                        continue;
+                    }
+                }
+                if (b == '\n' || b == '\r') {
+                    target.line(new String(line, 0, length, charset));
+                    length = 0;
+                    pending = false;
+                    skipLineFeed = b == '\r';
+                    continue;
+                }
+                pending = true;
+                if (length == maxLineSize) {
+                    continue;
+                }
+                if (length == line.length) {
+                    byte[] grown = new byte[Math.min(maxLineSize, line.length * 2)];
+                    System.arraycopy(line, 0, grown, 0, length);
+                    line = grown;
+                }
+                line[length++] = b;
+            }
+        }
+
+        @Override
+        public void finish(Log4jDecodingProcessor<ByteBuffer> target) {
+            if (pending) {
+                target.line(new String(line, 0, length, charset));
+                length = 0;
+                pending = false;
+            }
+        }
+    }
+
+    /**
+     * Runs the linger timers of processors built without a scheduler.
+     */
+    private static final class LingerScheduler {
+        static final ScheduledExecutorService INSTANCE = create();
+
+        private static ScheduledExecutorService create() {
+            ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+                Thread thread = new Thread(runnable, "log4j-decoding-processor-linger");
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor.setRemoveOnCancelPolicy(true);
+            return executor;
+        }
+    }
+
+    public static final class Builder {
+        private final Log4jDecoder decoder;
+        private int batchSize = DEFAULT_BATCH_SIZE;
+        private Duration linger = DEFAULT_LINGER;
+        private int prefetch = DEFAULT_PREFETCH;
+        private int maxEventSize = Log4jEventReader.DEFAULT_MAX_EVENT_SIZE;
+        private ScheduledExecutorService scheduler;
+
+        private Builder(Log4jDecoder decoder) {
+            this.decoder = Objects.requireNonNull(decoder, "decoder");
+        }
+
+        /**
+         * Sets the maximum number of events per published batch, 1 to publish every event on its own.
+         */
+        public Builder batchSize(int batchSize) {
+            if (batchSize <= 0) {
+                throw new IllegalArgumentException("batchSize must be positive: " + batchSize);
+            }
+            this.batchSize = batchSize;
+            return this;
+        }
+
+        /**
+         * Sets how long an event may wait for its batch to fill, and how long the input must be idle before the
+         * event being assembled is published without waiting for the next one. Zero publishes the
+         * events of every item as soon as it is decoded, so continuation lines have to arrive in the same item
+         * as their event.
+         */
+        public Builder linger(Duration linger) {
+            if (linger.isNegative()) {
+                throw new IllegalArgumentException("linger must not be negative: " + linger);
+            }
+            this.linger = linger;
+            return this;
+        }
+
+        /**
+         * Sets the number of items requested from the publisher at a time.
+         */
+        public Builder prefetch(int prefetch) {
+            if (prefetch <= 0) {
+                throw new IllegalArgumentException("prefetch must be positive: " + prefetch);
+            }
+            this.prefetch = prefetch;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of characters of an event, see {@link Log4jEventReader}.
+         */
+        public Builder maxEventSize(int maxEventSize) {
+            if (maxEventSize <= 0) {
+                throw new IllegalArgumentException("maxEventSize must be positive: " + maxEventSize);
+            }
+            this.maxEventSize = maxEventSize;
+            return this;
+        }
+
+        /**
+         * Sets the executor of the linger timers, a shared daemon thread by default.
+         */
+        public Builder scheduler(ScheduledExecutorService scheduler) {
+            this.scheduler = scheduler;
+            return this;
+        }
+
+        /**
+         * Returns a processor whose items are lines without their terminator.
+         */
+        public Log4jDecodingProcessor<CharSequence> forLines() {
+            return new Log4jDecodingProcessor<>(this, new LineItems());
+        }
+
+        /**
+         * Returns a processor whose items are chunks of a byte stream in the given charset, which must encode
+         * '\n' and '\r' as single bytes like UTF-8 and ISO-8859-1 do. The remaining bytes of each buffer are
+         * read without changing its position.
+         */
+        public Log4jDecodingProcessor<ByteBuffer> forChunks(Charset charset) {
+            return new Log4jDecodingProcessor<>(this, new ChunkSplitter(charset, EventLines.maxLineBytes(charset, maxEventSize)));
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package io.dashbase.log4j.parser;
+
+import io.dashbase.log4j.model.Log4jLoggingEvent;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Reads log events from a stream of lines, where an event starts with a line matching the decoder's
+ * conversion pattern and continues until the next one. Continuation lines extend the message until the
+ * first line that looks like part of a stack trace; that line and all after it become the throwable trace.
+ * Lines before the first event are skipped.
+ *
+ * <p>The reader owns the decoder while it is used, and both are not thread-safe.
+ */
+public class Log4jEventReader implements Closeable {
+    public static final int DEFAULT_MAX_EVENT_SIZE = 1 << 20;
+
+    private final Log4jDecoder decoder;
+    private final Reader reader;
+    private final int maxEventSize;
+
+    private final char[] buffer = new char[8192];
+    private int position;
+    private int limit;
+    // the last line ended with '\r', skip a following '\n'
+    private boolean skipLineFeed;
+
+    // text of the current event, and the line read ahead which starts the next one if hasNext is set
+    private StringBuilder event = new StringBuilder();
+    private StringBuilder next = new StringBuilder();
+    private int[] eventBounds;
+    private int[] nextBounds;
+    private boolean hasNext;
+
+    private long skippedLines;
+    private long droppedLines;
+
+    public Log4jEventReader(Log4jDecoder decoder, Reader reader) {
+        this(decoder, reader, DEFAULT_MAX_EVENT_SIZE);
+    }
+
+    /**
+     * @param maxEventSize the maximum number of characters of an event, the continuation lines from the
+     *                     first one that does not fit are dropped
+     */
+    public Log4jEventReader(Log4jDecoder decoder, Reader reader, int maxEventSize) {
+        if (maxEventSize <= 0) {
+            throw new IllegalArgumentException("maxEventSize must be positive: " + maxEventSize);
+        }
+        this.decoder = decoder;
+        this.reader = reader;
+        this.maxEventSize = maxEventSize;
+        this.eventBounds = new int[decoder.boundsLength()];
+        this.nextBounds = new int[decoder.boundsLength()];
+    }
+
+    public Log4jEventReader(Log4jDecoder decoder, InputStream in, Charset charset) {
+        this(decoder, new InputStreamReader(in, charset));
+    }
+
+    public Log4jEventReader(Log4jDecoder decoder, ReadableByteChannel channel, Charset charset) {
+        this(decoder, Channels.newReader(channel, charset.newDecoder(), -1));
+    }
+
+    /**
+     * Reads the next event into the given one, see {@link Log4jDecoder#parseInto}. Its fields are views
+     * over a buffer of the reader and stay valid until the next call.
+     *
+     * @return false at the end of the input
+     */
+    public boolean readInto(Log4jLoggingEvent reuse) throws IOException {
+        reuse.reset();
+        return read(reuse, false);
+    }
+
+    /**
+     * Returns the next event with copied values, or null at the end of the input.
+     */
+    public Log4jLoggingEvent read() throws IOException {
+        Log4jLoggingEvent entry = new Log4jLoggingEvent();
+        return read(entry, true) ? entry : null;
+    }
+
+    /**
+     * Returns the remaining events with copied values. I/O errors are rethrown as {@link UncheckedIOException}.
+     */
+    public Iterator<Log4jLoggingEvent> iterator() {
+        return new Iterator<>() {
+            private Log4jLoggingEvent nextEvent;
+
+            @Override
+            public boolean hasNext() {
+                if (nextEvent == null) {
+                    try {
+                        nextEvent = read();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+                return nextEvent != null;
+            }
+
+            @Override
+            public Log4jLoggingEvent next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Log4jLoggingEvent result = nextEvent;
+                nextEvent = null;
+                return result;
+            }
+        };
+    }
+
+    /**
+     * Returns the remaining events with copied values. Closing the stream closes the reader.
+     */
+    public Stream<Log4jLoggingEvent> stream() {
+        return StreamSupport.stream(
+            Spliterators.spliteratorUnknownSize(iterator(), Spliterator.ORDERED | Spliterator.NONNULL), false)
+            .onClose(() -> {
+                try {
+                    close();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+    }
+
+    /**
+     * Returns the number of lines skipped because they came before the first event.
+     */
+    public long skippedLines() {
+        return skippedLines;
+    }
+
+    /**
+     * Returns the number of continuation lines dropped because their event reached the maximum size.
+     */
+    public long droppedLines() {
+        return droppedLines;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    private boolean read(Log4jLoggingEvent entry, boolean copy) throws IOException {
+        if (!hasNext) {
+            while (true) {
+                if (!readLine(next)) {
+                    return false;
+                }
+                if (decoder.match(next, nextBounds)) {
+                    break;
+                }
+                skippedLines++;
+            }
+        }
+        StringBuilder text = next;
+        next = event;
+        event = text;
+        int[] bounds = nextBounds;
+        nextBounds = eventBounds;
+        eventBounds = bounds;
+        hasNext = false;
+
+        // once a line is dropped the event is complete, later lines are dropped too
+        boolean full = false;
+        while (readLine(next)) {
+            if (decoder.match(next, nextBounds)) {
+                hasNext = true;
+                break;
+            }
+            if (full || text.length() + 1 + next.length() > maxEventSize) {
+                full = true;
+                droppedLines++;
+                continue;
+            }
+            text.append('\n').append(next);
+        }
+        EventAssembler.assemble(decoder, entry, text, 0, text.length(), eventBounds, copy);
+        return true;
+    }
+
+    /**
+     * Reads the next line without its terminator, keeping at most maxEventSize characters of it.
+     *
+     * @return false at the end of the input
+     */
+    private boolean readLine(StringBuilder line) throws IOException {
+        line.setLength(0);
+        boolean read = false;
+        while (true) {
+            if (position == limit) {
+                limit = reader.read(buffer);
+                position = 0;
+                if (limit <= 0) {
+                    limit = 0;
+                    return read;
+                }
+            }
+            if (skipLineFeed) {
+                skipLineFeed = false;
+                if (buffer[position] == '\n') {
+                    position++;
+                    continue;
+                }
+            }
+            read = true;
+            int start = position;
+            while (position < limit) {
+                char c = buffer[position];
+                if (c == '\n' || c == '\r') {
+                    append(line, start, position);
+                    position++;
+                    skipLineFeed = c == '\r';
+                    return true;
+                }
+                position++;
+            }
+            append(line, start, position);
+        }
+    }
+
+    private void append(StringBuilder line, int start, int end) {
+        int length = Math.min(end - start, maxEventSize - line.length());
+        if (length > 0) {
+            line.append(buffer, start, length);
+        }
+    }
+}
@@ -0,0 +1,556 @@
+package io.dashbase.log4j.parser;
+
+import io.dashbase.log4j.model.Log4jLoggingEvent;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.function.Consumer;
+
+/**
+ * Follows a log file while it is written, like tail -F: decodes the events appended to it, detects when it is
+ * rotated, and keeps a checkpoint so that a restarted follower resumes where the last one stopped.
+ *
+ * <p>An event is passed on when the next one starts, since continuation lines may still be coming, or when no
+ * line was appended for the idle flush time. A trailing line without a terminator waits for it. A file renamed
+ * away is recognized by its file key, the inode on Unix: the rest of it is read through the open channel
+ * before the new file is read from its start. A file truncated in place is recognized by a size below the read
+ * position, so a truncation followed by writes past that position before the next poll goes unnoticed.
+ *
+ * <p>The checkpoint holds the file key, the byte offset of the first line whose event was not passed on yet,
+ * and the timestamp of the last event. It is written after each poll that moved it, once the consumer has
+ * returned, so events are delivered at least once. If the checkpointed file was rotated while no follower ran,
+ * it is looked up by its key in the same directory and read to its end first.
+ *
+ * <p>A follower is not thread-safe, except for {@link #close()}, which stops {@link #follow}.
+ */
+public class Log4jFileFollower implements Closeable {
+    public static final Duration DEFAULT_IDLE_FLUSH = Duration.ofSeconds(1);
+
+    private final Path path;
+    private final Charset charset;
+    // null if no checkpoint is kept
+    private final Path checkpointFile;
+    private final long idleFlushNanos;
+    private final boolean startAtEnd;
+    // bytes kept of a line, enough for maxEventSize chars
+    private final int maxLineSize;
+    private final EventLines events;
+    private final ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+
+    // the file being read, null until it exists
+    private volatile FileChannel channel;
+    private volatile boolean closed;
+    private String fileKey;
+    // the checkpoint to resume from, read on first use
+    private Checkpoint resume;
+    private boolean resumeRead;
+    // the checkpoint last written
+    private Checkpoint saved;
+
+    // offset of the next byte to read
+    private long position;
+    // the bytes of the line being read, which starts at lineStart
+    private byte[] line = new byte[256];
+    private int lineLength;
+    private long lineStart;
+    // bytes were read since the last terminator
+    private boolean partial;
+    // the last byte read was '\r', skip a following '\n'
+    private boolean skipLineFeed;
+    // offset of the first line of the event being assembled
+    private long eventStart;
+    private long lastLineNanos;
+    private Instant lastTimestamp;
+
+    // the consumer of the running poll
+    private Consumer<? super Log4jLoggingEvent> consumer;
+    private int passed;
+    private long rotations;
+
+    private Log4jFileFollower(Builder builder) {
+        this.path = builder.path;
+        this.charset = builder.charset;
+        this.checkpointFile = builder.checkpointFile;
+        this.idleFlushNanos = builder.idleFlush.toNanos();
+        this.startAtEnd = builder.startAtEnd;
+        this.maxLineSize = EventLines.maxLineBytes(builder.charset, builder.maxEventSize);
+        this.events = new EventLines(builder.decoder, builder.maxEventSize, this::pass);
+    }
+
+    public static Builder builder(Log4jDecoder decoder, Path path) {
+        return new Builder(decoder, path);
+    }
+
+    /**
+     * Reads what was appended to the file since the last poll, checks whether it was rotated, and passes the
+     * complete events to the consumer. Then writes the checkpoint if it moved.
+     *
+     * @return the number of events passed to the consumer
+     */
+    public int poll(Consumer<? super Log4jLoggingEvent> consumer) throws IOException {
+        if (closed) {
+            throw new ClosedChannelException();
+        }
+        this.consumer = consumer;
+        passed = 0;
+        try {
+            if (channel == null) {
+                start();
+            }
+            if (channel != null) {
+                read();
+                BasicFileAttributes attributes = attributes(path);
+                if (attributes != null && !key(attributes).equals(fileKey)) {
+                    // renamed away and replaced: read the rest of the old file, then the new one
+                    read();
+                    finishFile();
+                    open(path, attributes, 0);
+                    rotations++;
+                    read();
+                } else if (attributes != null && attributes.size() < position) {
+                    finishFile();
+                    open(path, attributes, 0);
+                    rotations++;
+                    read();
+                }
+                if (events.hasEvent() && System.nanoTime() - lastLineNanos >= idleFlushNanos) {
+                    events.flush();
+                }
+            }
+        } finally {
+            this.consumer = null;
+        }
+        saveCheckpoint();
+        return passed;
+    }
+
+    /**
+     * Polls the file every interval and passes its events to the consumer until the follower is closed.
+     */
+    public void follow(Consumer<? super Log4jLoggingEvent> consumer, Duration interval)
+        throws IOException, InterruptedException {
+        while (!closed) {
+            try {
+                poll(consumer);
+            } catch (ClosedChannelException e) {
+                if (closed) {
+                    return;
+                }
+                throw e;
+            }
+            Thread.sleep(interval.toMillis());
+        }
+    }
+
+    /**
+     * Returns the position up to which all events were passed on, or null until the file exists.
+     */
+    public Checkpoint checkpoint() {
+        if (fileKey == null) {
+            return null;
+        }
+        return new Checkpoint(fileKey, events.hasEvent() ? eventStart : lineStart, lastTimestamp);
+    }
+
+    /**
+     * Returns the number of times the file was found renamed or truncated.
+     */
+    public long rotations() {
+        return rotations;
+    }
+
+    /**
+     * Returns the number of lines skipped because they came before the first event, or after an event that
+     * was passed on when the idle flush time passed.
+     */
+    public long skippedLines() {
+        return events.skippedLines();
+    }
+
+    /**
+     * Returns the number of continuation lines dropped because their event reached the maximum size.
+     */
+    public long droppedLines() {
+        return events.droppedLines();
+    }
+
+    /**
+     * Returns the number of lines that started an event and were cut to the maximum event size.
+     */
+    public long truncatedLines() {
+        return events.truncatedLines();
+    }
+
+    /**
+     * Stops following the file. The event being assembled is not passed on; the checkpoint points before it
+     * so that the next follower reads it again.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        FileChannel file = channel;
+        if (file != null) {
+            file.close();
+        }
+    }
+
+    /**
+     * Opens the checkpointed file, or the followed one if it exists.
+     */
+    private void start() throws IOException {
+        if (!resumeRead) {
+            resumeRead = true;
+            resume = checkpointFile == null ? null : Checkpoint.read(checkpointFile);
+            if (resume != null) {
+                lastTimestamp = resume.timestamp();
+            }
+        }
+        BasicFileAttributes attributes = attributes(path);
+        Checkpoint checkpoint = resume;
+        if (checkpoint != null) {
+            if (attributes != null && checkpoint.fileKey().equals(key(attributes))) {
+                resume = null;
+                open(path, attributes, checkpoint.offset() <= attributes.size() ? checkpoint.offset() : 0);
+                return;
+            }
+            Path rotated = find(checkpoint.fileKey());
+            if (rotated != null) {
+                BasicFileAttributes rotatedAttributes = attributes(rotated);
+                if (rotatedAttributes != null) {
+                    resume = null;
+                    open(rotated, rotatedAttributes, Math.min(checkpoint.offset(), rotatedAttributes.size()));
+                    return;
+                }
+            }
+        }
+        if (attributes != null) {
+            resume = null;
+            open(path, attributes, startAtEnd && checkpoint == null ? attributes.size() : 0);
+        }
+    }
+
+    private void open(Path file, BasicFileAttributes attributes, long offset) throws IOException {
+        FileChannel opened = FileChannel.open(file, StandardOpenOption.READ);
+        opened.position(offset);
+        channel = opened;
+        if (closed) {
+            // closed while opening
+            opened.close();
+            throw new ClosedChannelException();
+        }
+        fileKey = key(attributes);
+        position = offset;
+        lineStart = offset;
+        eventStart = offset;
+        lineLength = 0;
+        partial = false;
+        skipLineFeed = false;
+        lastLineNanos = System.nanoTime();
+    }
+
+    /**
+     * Passes on the last line and event of the current file and closes it.
+     */
+    private void finishFile() throws IOException {
+        if (partial) {
+            line();
+        }
+        events.flush();
+        channel.close();
+        channel = null;
+    }
+
+    /**
+     * Reads the file to its current end.
+     */
+    private void read() throws IOException {
+        while (true) {
+            buffer.clear();
+            int read = channel.read(buffer);
+            if (read <= 0) {
+                return;
+            }
+            byte[] bytes = buffer.array();
+            for (int i = 0; i < read; i++) {
+                byte b = bytes[i];
+                long offset = position + i;
+                if (skipLineFeed) {
+                    skipLineFeed = false;
+                    if (b == '\n') {
+                        lineStart = offset + 1;
+                        continue;
+                    }
+                }
+                if (b == '\n' || b == '\r') {
+                    line();
+                    lineStart = offset + 1;
+                    skipLineFeed = b == '\r';
+                    continue;
+                }
+                partial = true;
+                if (lineLength == maxLineSize) {
+                    continue;
+                }
+                if (lineLength == line.length) {
+                    byte[] grown = new byte[Math.min(maxLineSize, line.length * 2)];
+                    System.arraycopy(line, 0, grown, 0, lineLength);
+                    line = grown;
+                }
+                line[lineLength++] = b;
+            }
+            position += read;
+        }
+    }
+
+    /**
+     * Adds the line that starts at lineStart to the events.
+     */
+    private void line() {
+        String text = new String(line, 0, lineLength, charset);
+        long start = lineStart;
+        lineLength = 0;
+        partial = false;
+        lastLineNanos = System.nanoTime();
+        if (events.add(text)) {
+            eventStart = start;
+        }
+    }
+
+    private void pass(Log4jLoggingEvent event) {
+        consumer.accept(event);
+        passed++;
+        if (event.getTimestamp() != null) {
+            lastTimestamp = event.getTimestamp();
+        }
+    }
+
+    private void saveCheckpoint() throws IOException {
+        Checkpoint checkpoint = checkpoint();
+        if (checkpointFile == null || checkpoint == null || checkpoint.equals(saved)) {
+            return;
+        }
+        checkpoint.write(checkpointFile);
+        saved = checkpoint;
+    }
+
+    /**
+     * Returns a regular file next to the followed one with the given key, or null.
+     */
+    private Path find(String key) throws IOException {
+        Path directory = path.toAbsolutePath().getParent();
+        if (directory == null || !Files.isDirectory(directory)) {
+            return null;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                BasicFileAttributes attributes = attributes(file);
+                if (attributes != null && attributes.isRegularFile() && key(attributes).equals(key)) {
+                    return file;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static BasicFileAttributes attributes(Path file) throws IOException {
+        try {
+            return Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the file key, or the creation time on file systems without keys.
+     */
+    private static String key(BasicFileAttributes attributes) {
+        Object key = attributes.fileKey();
+        return key != null ? key.toString() : "created=" + attributes.creationTime().toMillis();
+    }
+
+    /**
+     * A position in a followed file: its key, the offset of the first line whose event was not passed on, and
+     * the timestamp of the last event passed on, null if none had one.
+     */
+    public static final class Checkpoint {
+        private final String fileKey;
+        private final long offset;
+        private final Instant timestamp;
+
+        public Checkpoint(String fileKey, long offset, Instant timestamp) {
+            this.fileKey = Objects.requireNonNull(fileKey, "fileKey");
+            this.offset = offset;
+            this.timestamp = timestamp;
+        }
+
+        public String fileKey() {
+            return fileKey;
+        }
+
+        public long offset() {
+            return offset;
+        }
+
+        public Instant timestamp() {
+            return timestamp;
+        }
+
+        /**
+         * Reads a checkpoint written by {@link #write(Path)}, or returns null if the file does not exist.
+         */
+        public static Checkpoint read(Path file) throws IOException {
+            Properties properties = new Properties();
+            try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                properties.load(reader);
+            } catch (NoSuchFileException e) {
+                return null;
+            }
+            String fileKey = properties.getProperty("fileKey");
+            String offset = properties.getProperty("offset");
+            String timestamp = properties.getProperty("timestamp");
+            try {
+                return new Checkpoint(Objects.requireNonNull(fileKey), Long.parseLong(offset),
+                    timestamp == null ? null : Instant.parse(timestamp));
+            } catch (RuntimeException e) {
+                throw new IOException("Invalid checkpoint " + file, e);
+            }
+        }
+
+        /**
+         * Writes the checkpoint to a temporary file, syncs it, and moves it over the given file, so that the
+         * file holds either the old or the new checkpoint after a crash.
+         */
+        public void write(Path file) throws IOException {
+            Properties properties = new Properties();
+            properties.setProperty("fileKey", fileKey);
+            properties.setProperty("offset", Long.toString(offset));
+            if (timestamp != null) {
+                properties.setProperty("timestamp", timestamp.toString());
+            }
+            Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+            try (FileChannel out = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+                 Writer writer = Channels.newWriter(out, StandardCharsets.UTF_8)) {
+                properties.store(writer, "log4j-decoder checkpoint");
+                writer.flush();
+                out.force(true);
+            }
+            try {
+                Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Checkpoint)) {
+                return false;
+            }
+            Checkpoint other = (Checkpoint) o;
+            return offset == other.offset && fileKey.equals(other.fileKey) && Objects.equals(timestamp, other.timestamp);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(fileKey, offset, timestamp);
+        }
+
+        @Override
+        public String toString() {
+            return "Checkpoint[fileKey=" + fileKey + ", offset=" + offset + ", timestamp=" + timestamp + "]";
+        }
+    }
+
+    public static final class Builder {
+        private final Log4jDecoder decoder;
+        private final Path path;
+        private Charset charset = StandardCharsets.UTF_8;
+        private Path checkpointFile;
+        private Duration idleFlush = DEFAULT_IDLE_FLUSH;
+        private boolean startAtEnd;
+        private int maxEventSize = Log4jEventReader.DEFAULT_MAX_EVENT_SIZE;
+
+        private Builder(Log4jDecoder decoder, Path path) {
+            this.decoder = Objects.requireNonNull(decoder, "decoder");
+            this.path = Objects.requireNonNull(path, "path");
+        }
+
+        /**
+         * Sets the charset of the file, which must encode '\n' and '\r' as single bytes. UTF-8 by default.
+         */
+        public Builder charset(Charset charset) {
+            this.charset = charset;
+            return this;
+        }
+
+        /**
+         * Keeps the checkpoint in the given file, see {@link Log4jFileFollower}. None is kept by default.
+         */
+        public Builder checkpointFile(Path checkpointFile) {
+            this.checkpointFile = checkpointFile;
+            return this;
+        }
+
+        /**
+         * Sets how long the last event waits for continuation lines before it is passed on.
+         */
+        public Builder idleFlush(Duration idleFlush) {
+            if (idleFlush.isNegative()) {
+                throw new IllegalArgumentException("idleFlush must not be negative: " + idleFlush);
+            }
+            this.idleFlush = idleFlush;
+            return this;
+        }
+
+        /**
+         * Skips what the file holds when the follower starts without a checkpoint, like tail -f. The file is
+         * read from its start by default.
+         */
+        public Builder startAtEnd(boolean startAtEnd) {
+            this.startAtEnd = startAtEnd;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of characters of an event, see {@link Log4jEventReader}.
+         */
+        public Builder maxEventSize(int maxEventSize) {
+            if (maxEventSize <= 0) {
+                throw new IllegalArgumentException("maxEventSize must be positive: " + maxEventSize);
+            }
+            this.maxEventSize = maxEventSize;
+            return this;
+        }
+
+        /**
+         * Returns a follower that owns the decoder. The file does not have to exist yet.
+         */
+        public Log4jFileFollower build() {
+            return new Log4jFileFollower(this);
+        }
+    }
+}
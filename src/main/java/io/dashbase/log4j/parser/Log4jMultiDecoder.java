@@ -0,0 +1,216 @@
+package io.dashbase.log4j.parser;
+
+import io.dashbase.log4j.model.ConversionPatternEl;
+import io.dashbase.log4j.model.Log4jLoggingEvent;
+
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decodes lines written with any of several conversion patterns, such as the logs of different applications
+ * or of two versions of one application in the same stream. {@link #matchedPattern()} tells which pattern a
+ * line matched. When several patterns match a line, the one the previous line matched wins, and otherwise the
+ * first in the given order.
+ *
+ * <p>Every pattern has a route derived from its rules: the literal text before its first field, and the kind
+ * of character the first field starts with. A line is only matched against the patterns whose route accepts
+ * its first characters, indexed by its first char, and the pattern that matched last is tried first. The
+ * decoder is not thread-safe.
+ */
+public class Log4jMultiDecoder {
+    private static final int ANY = 0;
+    private static final int DIGIT = 1;
+    private static final int LETTER = 2;
+    private static final int UPPER_OR_SPACE = 3;
+
+    private final String[] conversionPatterns;
+    private final Log4jDecoder[] decoders;
+    private final int[][] bounds;
+    private final String[] leadingLiterals;
+    private final int[] firstFieldShapes;
+    // per ASCII char, the patterns whose lines can start with it in the order given; the last entry is
+    // for non-ASCII chars and empty lines
+    private final int[][] candidates = new int[129][];
+    private int lastMatch = -1;
+
+    public Log4jMultiDecoder(List<String> conversionPatterns) {
+        this(conversionPatterns, ZoneOffset.UTC);
+    }
+
+    public Log4jMultiDecoder(List<String> conversionPatterns, ZoneId defaultTimeZone) {
+        if (conversionPatterns.isEmpty()) {
+            throw new IllegalArgumentException("No conversion patterns");
+        }
+        int count = conversionPatterns.size();
+        this.conversionPatterns = conversionPatterns.toArray(new String[0]);
+        this.decoders = new Log4jDecoder[count];
+        this.bounds = new int[count][];
+        this.leadingLiterals = new String[count];
+        this.firstFieldShapes = new int[count];
+        for (int i = 0; i < count; i++) {
+            Log4jDecoder decoder = Log4jDecoder.builder(this.conversionPatterns[i])
+                .defaultTimeZone(defaultTimeZone)
+                .build();
+            decoders[i] = decoder;
+            bounds[i] = new int[decoder.boundsLength()];
+            List<ConversionPatternEl> rules = decoder.rules();
+            String pattern = decoder.conversionPattern();
+            leadingLiterals[i] = rules.isEmpty() ? pattern : pattern.substring(0, rules.get(0).getBeginIndex());
+            firstFieldShapes[i] = rules.isEmpty() ? ANY : shape(rules.get(0));
+        }
+        List<Integer> matching = new ArrayList<>();
+        for (int c = 0; c < candidates.length; c++) {
+            matching.clear();
+            for (int i = 0; i < count; i++) {
+                if (c == 128 || accepts(i, (char) c)) {
+                    matching.add(i);
+                }
+            }
+            candidates[c] = matching.stream().mapToInt(Integer::intValue).toArray();
+        }
+    }
+
+    /**
+     * Returns the kind of character the field's text starts with.
+     */
+    private static int shape(ConversionPatternEl rule) {
+        if (rule.getType() == null || rule.getMinWidth() > 0 && rule.getType() != ConversionPatternEl.Type.LEVEL) {
+            // right-justified fields start with padding
+            return ANY;
+        }
+        switch (rule.getType()) {
+            case DATE:
+                String format = rule.getModifier();
+                if (format == null || format.isEmpty()) {
+                    return ANY;
+                }
+                char first = format.charAt(0);
+                if ("yuMdDHhKkmsSnN".indexOf(first) >= 0 && !format.startsWith("MMM")) {
+                    return DIGIT;
+                }
+                return "EaG".indexOf(first) >= 0 || format.startsWith("MMM") ? LETTER : ANY;
+            case LEVEL:
+                return UPPER_OR_SPACE;
+            case LINE:
+            case NANO_TS:
+            case PID:
+            case RELATIVE_TS:
+            case SEQ:
+            case THREAD_ID:
+            case THREAD_PRIORITY:
+                return DIGIT;
+            default:
+                return ANY;
+        }
+    }
+
+    private boolean accepts(int pattern, char c) {
+        String literal = leadingLiterals[pattern];
+        if (!literal.isEmpty()) {
+            return literal.charAt(0) == c;
+        }
+        return acceptsShape(firstFieldShapes[pattern], c);
+    }
+
+    private static boolean acceptsShape(int shape, char c) {
+        switch (shape) {
+            case DIGIT:
+                return c >= '0' && c <= '9';
+            case LETTER:
+                return Character.isLetter(c);
+            case UPPER_OR_SPACE:
+                return c >= 'A' && c <= 'Z' || c == ' ';
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * Checks the rest of the leading literal and the first char of the first field.
+     */
+    private boolean routes(int pattern, CharSequence line) {
+        String literal = leadingLiterals[pattern];
+        int length = literal.length();
+        if (line.length() < length) {
+            return false;
+        }
+        for (int i = 1; i < length; i++) {
+            if (line.charAt(i) != literal.charAt(i)) {
+                return false;
+            }
+        }
+        return line.length() == length || acceptsShape(firstFieldShapes[pattern], line.charAt(length));
+    }
+
+    /**
+     * Decodes the line with the first pattern it matches, see {@link Log4jDecoder#parseString}.
+     *
+     * @return null if the line matches none of the patterns
+     */
+    public Log4jLoggingEvent parseString(CharSequence line) {
+        int pattern = route(line);
+        if (pattern < 0) {
+            return null;
+        }
+        Log4jLoggingEvent currentEntry = new Log4jLoggingEvent();
+        decoders[pattern].extractFields(currentEntry, line, bounds[pattern], true);
+        return currentEntry;
+    }
+
+    /**
+     * Decodes the line into the given event with the first pattern it matches, see
+     * {@link Log4jDecoder#parseInto(CharSequence, Log4jLoggingEvent)}.
+     *
+     * @return false if the line matches none of the patterns
+     */
+    public boolean parseInto(CharSequence line, Log4jLoggingEvent reuse) {
+        reuse.reset();
+        int pattern = route(line);
+        if (pattern < 0) {
+            return false;
+        }
+        decoders[pattern].extractFields(reuse, line, bounds[pattern], false);
+        return true;
+    }
+
+    /**
+     * Returns the index of the pattern the last line matched, or -1 if it matched none.
+     */
+    public int matchedPattern() {
+        return lastMatch;
+    }
+
+    public List<String> conversionPatterns() {
+        return List.of(conversionPatterns);
+    }
+
+    /**
+     * Returns the decoder of the pattern at the given index.
+     */
+    public Log4jDecoder decoder(int pattern) {
+        return decoders[pattern];
+    }
+
+    /**
+     * Returns the index of the first pattern the line matches, with its bounds filled, trying the last
+     * matched pattern first.
+     */
+    private int route(CharSequence line) {
+        int first = line.length() == 0 || line.charAt(0) >= 128 ? 128 : line.charAt(0);
+        int last = lastMatch;
+        if (last >= 0 && (first == 128 || accepts(last, (char) first)) && routes(last, line)
+            && decoders[last].match(line, bounds[last])) {
+            return last;
+        }
+        for (int pattern : candidates[first]) {
+            if (pattern != last && routes(pattern, line) && decoders[pattern].match(line, bounds[pattern])) {
+                lastMatch = pattern;
+                return pattern;
+            }
+        }
+        lastMatch = -1;
+        return -1;
+    }
+}
@@ -0,0 +1,354 @@
+package io.dashbase.log4j.parser;
+
+import io.dashbase.log4j.model.Latin1Text;
+import io.dashbase.log4j.model.Log4jLoggingEvent;
+import io.dashbase.log4j.model.Utf8Text;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Decodes the events of a log file through a memory mapping, grouping continuation lines like
+ * {@link Log4jEventReader}. Events are decoded from a {@link Latin1Text} view over the mapped bytes, so no
+ * String is built per line and entity offsets are byte offsets from {@link #eventOffset()}.
+ *
+ * <p>With UTF-8, events that contain non-ASCII bytes are read through a {@link Utf8Text} view instead, so their
+ * offsets are byte offsets too. With US-ASCII, such events are decoded into a reused char buffer first, where
+ * every malformed byte is one char. The file is read up to the size it had when opened, in windows of at most
+ * 1GB. The decoder owns the {@link Log4jDecoder} while it is used and is not thread-safe.
+ */
+public class MappedLogFileDecoder implements Closeable {
+    static final long DEFAULT_WINDOW_SIZE = 1L << 30;
+
+    private final Log4jDecoder decoder;
+    private final FileChannel channel;
+    private final long fileSize;
+    private final long windowSize;
+    // events are read if their first line starts before rangeEnd
+    private final long rangeStart;
+    private final long rangeEnd;
+    private final int maxEventSize;
+    private final boolean utf8;
+    // only set for US-ASCII, ISO-8859-1 bytes are chars of their own and UTF-8 is read through Utf8Text
+    private final CharsetDecoder charsetDecoder;
+
+    private MappedByteBuffer window;
+    private long windowStart;
+    private int windowLength;
+    // index in the window of the next unread byte
+    private int position;
+    // the last line ended with '\r' at the end of the window, skip a following '\n'
+    private boolean skipLineFeed;
+
+    // the line returned by readLine
+    private long lineStart;
+    private int lineLength;
+    private boolean lineHighBytes;
+
+    // view of the current event, and of the line read ahead which starts the next one if hasNext is set
+    private Latin1Text eventView = new Latin1Text();
+    private Latin1Text nextView = new Latin1Text();
+    private int[] eventBounds;
+    private int[] nextBounds;
+    private final int[] decodedBounds;
+    private boolean hasNext;
+    private long nextStart;
+    private boolean nextHighBytes;
+    private long eventStart;
+    // UTF-8 views of the line matched last and of the current event
+    private final Utf8Text lineUtf8 = new Utf8Text();
+    private final Utf8Text eventUtf8 = new Utf8Text();
+
+    private CharBuffer decoded;
+    private long skippedLines;
+    private long droppedLines;
+
+    public MappedLogFileDecoder(Log4jDecoder decoder, Path file) throws IOException {
+        this(decoder, file, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param charset ISO-8859-1, US-ASCII or UTF-8
+     */
+    public MappedLogFileDecoder(Log4jDecoder decoder, Path file, Charset charset) throws IOException {
+        this(decoder, file, charset, Log4jEventReader.DEFAULT_MAX_EVENT_SIZE);
+    }
+
+    public MappedLogFileDecoder(Log4jDecoder decoder, Path file, Charset charset, int maxEventSize) throws IOException {
+        this(decoder, file, charset, maxEventSize, DEFAULT_WINDOW_SIZE);
+    }
+
+    MappedLogFileDecoder(Log4jDecoder decoder, Path file, Charset charset, int maxEventSize, long windowSize)
+        throws IOException {
+        this(decoder, file, charset, maxEventSize, windowSize, 0, Long.MAX_VALUE);
+    }
+
+    /**
+     * Reads the events whose first line starts in [rangeStart, rangeEnd). Their continuation lines may run past
+     * rangeEnd, and the lines before the first event of a range that does not start the file belong to the
+     * previous range, so they are not counted as skipped.
+     */
+    MappedLogFileDecoder(Log4jDecoder decoder, Path file, Charset charset, int maxEventSize, long windowSize,
+                         long rangeStart, long rangeEnd) throws IOException {
+        if (!charset.equals(StandardCharsets.ISO_8859_1) && !charset.equals(StandardCharsets.US_ASCII)
+            && !charset.equals(StandardCharsets.UTF_8)) {
+            throw new IllegalArgumentException("Charset is not ASCII compatible: " + charset);
+        }
+        if (maxEventSize <= 0 || windowSize < 2L * maxEventSize) {
+            throw new IllegalArgumentException("maxEventSize must be positive and at most half the window: " + maxEventSize);
+        }
+        this.decoder = decoder;
+        this.maxEventSize = maxEventSize;
+        this.windowSize = windowSize;
+        this.utf8 = charset.equals(StandardCharsets.UTF_8);
+        this.charsetDecoder = !charset.equals(StandardCharsets.US_ASCII) ? null : charset.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.eventBounds = new int[decoder.boundsLength()];
+        this.nextBounds = new int[decoder.boundsLength()];
+        this.decodedBounds = new int[decoder.boundsLength()];
+        this.rangeStart = rangeStart;
+        this.rangeEnd = rangeEnd;
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            this.fileSize = channel.size();
+            if (rangeStart == 0) {
+                map(0);
+            } else if (rangeStart <= fileSize) {
+                // start on the line after the one rangeStart falls into, unless it starts there
+                map(rangeStart - 1);
+                byte previous = window.get(0);
+                position = 1;
+                if (previous != '\n' && previous != '\r') {
+                    readLine(-1);
+                }
+            } else {
+                throw new IllegalArgumentException("Range starts after the end of the file: " + rangeStart);
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads the next event into the given one, see {@link Log4jDecoder#parseInto}. Its fields are views over
+     * the mapping and stay valid until the next call.
+     *
+     * @return false at the end of the file
+     */
+    public boolean readInto(Log4jLoggingEvent reuse) throws IOException {
+        reuse.reset();
+        return read(reuse, false);
+    }
+
+    /**
+     * Returns the next event with copied values, or null at the end of the file.
+     */
+    public Log4jLoggingEvent read() throws IOException {
+        Log4jLoggingEvent entry = new Log4jLoggingEvent();
+        return read(entry, true) ? entry : null;
+    }
+
+    private boolean read(Log4jLoggingEvent entry, boolean copy) throws IOException {
+        if (!hasNext) {
+            while (true) {
+                if (!readLine(-1) || lineStart >= rangeEnd) {
+                    return false;
+                }
+                if (matchLine()) {
+                    break;
+                }
+                if (rangeStart == 0) {
+                    skippedLines++;
+                }
+            }
+        } else if (nextStart >= rangeEnd) {
+            return false;
+        }
+        Latin1Text view = nextView;
+        nextView = eventView;
+        eventView = view;
+        int[] bounds = nextBounds;
+        nextBounds = eventBounds;
+        eventBounds = bounds;
+        hasNext = false;
+        eventStart = nextStart;
+        boolean highBytes = nextHighBytes;
+
+        // once a line is dropped the event is complete, and the window no longer needs to keep its start
+        boolean full = false;
+        while (readLine(full ? -1 : eventStart)) {
+            if (matchLine()) {
+                hasNext = true;
+                break;
+            }
+            long lineEnd = lineStart + lineLength;
+            if (full || lineEnd - eventStart > maxEventSize) {
+                full = true;
+                droppedLines++;
+                continue;
+            }
+            highBytes |= lineHighBytes;
+            view.set(window, (int) (eventStart - windowStart), (int) (lineEnd - eventStart));
+        }
+
+        if (highBytes && utf8) {
+            eventUtf8.set(view.buffer(), view.offset(), view.length());
+            EventAssembler.assemble(decoder, entry, eventUtf8, 0, eventUtf8.length(), eventBounds, copy);
+            return true;
+        }
+        if (highBytes && charsetDecoder != null) {
+            CharBuffer text = decode(view);
+            int firstLineEnd = 0;
+            while (firstLineEnd < text.length() && text.charAt(firstLineEnd) != '\n' && text.charAt(firstLineEnd) != '\r') {
+                firstLineEnd++;
+            }
+            int length = text.limit();
+            text.limit(firstLineEnd);
+            boolean matched = decoder.match(text, decodedBounds);
+            text.limit(length);
+            if (matched) {
+                EventAssembler.assemble(decoder, entry, text, 0, length, decodedBounds, copy);
+                return true;
+            }
+        }
+        EventAssembler.assemble(decoder, entry, view, 0, view.length(), eventBounds, copy);
+        return true;
+    }
+
+    /**
+     * Returns the file offset of the event read last, which its entity offsets are relative to.
+     */
+    public long eventOffset() {
+        return eventStart;
+    }
+
+    /**
+     * Returns the number of lines skipped because they came before the first event.
+     */
+    public long skippedLines() {
+        return skippedLines;
+    }
+
+    /**
+     * Returns the number of continuation lines dropped because their event reached the maximum size.
+     */
+    public long droppedLines() {
+        return droppedLines;
+    }
+
+    /**
+     * Closes the file. The mapping is released once it is no longer referenced.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Matches the line returned by readLine and keeps it as the read-ahead line.
+     */
+    private boolean matchLine() {
+        nextView.set(window, (int) (lineStart - windowStart), lineLength);
+        nextStart = lineStart;
+        nextHighBytes = lineHighBytes;
+        if (lineHighBytes && utf8) {
+            return decoder.matchUtf8(lineUtf8.set(window, (int) (lineStart - windowStart), lineLength), nextBounds);
+        }
+        if (decoder.match(nextView, nextBounds)) {
+            return true;
+        }
+        if (!lineHighBytes || charsetDecoder == null) {
+            return false;
+        }
+        // the pattern may have non-ASCII literals
+        return decoder.match(decode(nextView), decodedBounds);
+    }
+
+    private CharBuffer decode(Latin1Text text) {
+        ByteBuffer bytes = text.buffer().duplicate();
+        bytes.limit(text.offset() + text.length()).position(text.offset());
+        if (decoded == null || decoded.capacity() < text.length()) {
+            decoded = CharBuffer.allocate(Math.max(text.length(), 1024));
+        }
+        decoded.clear();
+        charsetDecoder.reset();
+        charsetDecoder.decode(bytes, decoded, true);
+        charsetDecoder.flush(decoded);
+        decoded.flip();
+        return decoded;
+    }
+
+    /**
+     * Reads the next line, moving the window when the line crosses its end.
+     *
+     * @param anchor the file offset that has to stay in the window with the line, or -1
+     * @return false at the end of the file
+     */
+    private boolean readLine(long anchor) throws IOException {
+        while (true) {
+            if (skipLineFeed && position < windowLength) {
+                skipLineFeed = false;
+                if (window.get(position) == '\n') {
+                    position++;
+                }
+            }
+            int end = position;
+            boolean highBytes = false;
+            while (end < windowLength) {
+                byte b = window.get(end);
+                if (b == '\n' || b == '\r') {
+                    break;
+                }
+                highBytes |= b < 0;
+                end++;
+            }
+            if (end == windowLength) {
+                long start = windowStart + position;
+                if (windowStart + windowLength < fileSize) {
+                    long mapAt = anchor > windowStart ? anchor : start;
+                    if (mapAt > windowStart) {
+                        map(mapAt);
+                        position = (int) (start - mapAt);
+                        continue;
+                    }
+                    // the line alone fills the window, cut it there
+                } else if (end == position) {
+                    return false;
+                }
+            }
+            lineStart = windowStart + position;
+            lineLength = end - position;
+            lineHighBytes = highBytes;
+            position = end;
+            if (position < windowLength && window.get(position++) == '\r') {
+                if (position < windowLength) {
+                    if (window.get(position) == '\n') {
+                        position++;
+                    }
+                } else {
+                    skipLineFeed = true;
+                }
+            }
+            return true;
+        }
+    }
+
+    private void map(long start) throws IOException {
+        long length = Math.min(windowSize, fileSize - start);
+        window = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+        windowStart = start;
+        windowLength = (int) length;
+    }
+}
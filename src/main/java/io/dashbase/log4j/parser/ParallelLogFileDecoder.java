@@ -0,0 +1,185 @@
+package io.dashbase.log4j.parser;
+
+import io.dashbase.log4j.model.Log4jLoggingEvent;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Decodes a log file in parallel. The file is split into chunks of about {@link #chunkSize(long)} bytes; a
+ * chunk starts at the first line after its split point that matches the conversion pattern, which is where
+ * {@link MappedLogFileDecoder} would start an event, and its last event runs into the next chunk until the
+ * next event start. Every chunk is decoded by a {@link MappedLogFileDecoder} on a pool thread, each thread
+ * with a decoder of its own. Time-only timestamps are dated from the decoder's {@link ReferenceDate} again in
+ * every chunk, so the dates do not depend on which chunks a thread decoded before, but a chunk does not know
+ * about the midnights of the chunks before it.
+ *
+ * <p>Events are copied and passed to the consumer on the calling thread, in file order unless
+ * {@link #unordered()} is set, in which case the chunks are passed in the order they finish.
+ */
+public class ParallelLogFileDecoder {
+    public static final long DEFAULT_CHUNK_SIZE = 16L << 20;
+
+    private final ThreadLocal<Log4jDecoder> decoders;
+    private ForkJoinPool pool = ForkJoinPool.commonPool();
+    private Charset charset = StandardCharsets.UTF_8;
+    private int maxEventSize = Log4jEventReader.DEFAULT_MAX_EVENT_SIZE;
+    private long chunkSize = DEFAULT_CHUNK_SIZE;
+    private int maxChunksInFlight;
+    private boolean ordered = true;
+
+    /**
+     * Decodes with copies of the given decoder, see {@link Log4jDecoder#copy()}.
+     */
+    public ParallelLogFileDecoder(Log4jDecoder decoder) {
+        this(decoder::copy);
+    }
+
+    /**
+     * @param decoders creates the decoder of a pool thread, at most once per thread
+     */
+    public ParallelLogFileDecoder(Supplier<Log4jDecoder> decoders) {
+        this.decoders = ThreadLocal.withInitial(decoders);
+    }
+
+    public ParallelLogFileDecoder pool(ForkJoinPool pool) {
+        this.pool = pool;
+        return this;
+    }
+
+    /**
+     * @param charset ISO-8859-1, US-ASCII or UTF-8
+     */
+    public ParallelLogFileDecoder charset(Charset charset) {
+        this.charset = charset;
+        return this;
+    }
+
+    public ParallelLogFileDecoder maxEventSize(int maxEventSize) {
+        this.maxEventSize = maxEventSize;
+        return this;
+    }
+
+    public ParallelLogFileDecoder chunkSize(long chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunkSize must be positive: " + chunkSize);
+        }
+        this.chunkSize = chunkSize;
+        return this;
+    }
+
+    /**
+     * Sets how many decoded or decoding chunks are held at most, twice the pool's parallelism by default.
+     */
+    public ParallelLogFileDecoder maxChunksInFlight(int maxChunksInFlight) {
+        if (maxChunksInFlight <= 0) {
+            throw new IllegalArgumentException("maxChunksInFlight must be positive: " + maxChunksInFlight);
+        }
+        this.maxChunksInFlight = maxChunksInFlight;
+        return this;
+    }
+
+    public ParallelLogFileDecoder unordered() {
+        this.ordered = false;
+        return this;
+    }
+
+    /**
+     * Decodes the file up to the size it has now and passes every event to the consumer.
+     *
+     * @return the number of events
+     */
+    public long decode(Path file, Consumer<? super Log4jLoggingEvent> consumer) throws IOException {
+        long fileSize = Files.size(file);
+        long chunks = Math.max(1, (fileSize + chunkSize - 1) / chunkSize);
+        int inFlight = maxChunksInFlight > 0 ? maxChunksInFlight : 2 * pool.getParallelism();
+        CompletionService<List<Log4jLoggingEvent>> completion = new ExecutorCompletionService<>(pool);
+        ArrayDeque<Future<List<Log4jLoggingEvent>>> pending = new ArrayDeque<>();
+        long submitted = 0;
+        long count = 0;
+        try {
+            while (submitted < chunks || !pending.isEmpty()) {
+                while (submitted < chunks && pending.size() < inFlight) {
+                    long start = submitted * chunkSize;
+                    long end = submitted == chunks - 1 ? Long.MAX_VALUE : start + chunkSize;
+                    Callable<List<Log4jLoggingEvent>> task = () -> decodeChunk(file, start, end);
+                    pending.add(ordered ? pool.submit(task) : completion.submit(task));
+                    submitted++;
+                }
+                Future<List<Log4jLoggingEvent>> done;
+                if (ordered) {
+                    done = pending.poll();
+                } else {
+                    done = completion.take();
+                    pending.remove(done);
+                }
+                for (Log4jLoggingEvent event : result(done)) {
+                    consumer.accept(event);
+                    count++;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while decoding " + file, e);
+        } finally {
+            for (Future<List<Log4jLoggingEvent>> future : pending) {
+                future.cancel(false);
+            }
+        }
+        return count;
+    }
+
+    private List<Log4jLoggingEvent> decodeChunk(Path file, long start, long end) throws IOException {
+        List<Log4jLoggingEvent> events = new ArrayList<>();
+        Log4jDecoder threadDecoder = decoders.get();
+        threadDecoder.resetReferenceDate();
+        try (MappedLogFileDecoder decoder = new MappedLogFileDecoder(threadDecoder, file, charset, maxEventSize,
+            MappedLogFileDecoder.DEFAULT_WINDOW_SIZE, start, end)) {
+            Log4jLoggingEvent event;
+            while ((event = decoder.read()) != null) {
+                events.add(event);
+            }
+        }
+        return events;
+    }
+
+    private static List<Log4jLoggingEvent> result(Future<List<Log4jLoggingEvent>> future)
+        throws IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) cause).getCause();
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        } catch (CancellationException e) {
+            throw new IOException("Chunk was cancelled", e);
+        }
+    }
+}
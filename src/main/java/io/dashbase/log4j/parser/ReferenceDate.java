@@ -0,0 +1,57 @@
+package io.dashbase.log4j.parser;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.ZoneId;
+
+/**
+ * The date of the first line of a log whose %d format has a time but no date, such as %d{ABSOLUTE}.
+ *
+ * <p>A decoder asks for it once, when it reads the first time-only timestamp, and from then on moves to the
+ * next day whenever the time of day goes back by more than a few minutes, so a log that skips a whole day
+ * without writing a line is dated a day early. A {@link #clock(Clock)} date is the exception: it is read for
+ * every line, so logs read while they are written are always dated right. Set it with
+ * {@link Log4jDecoder.Builder#referenceDate(ReferenceDate)}, or change it on a running decoder with
+ * {@link Log4jDecoder#setReferenceDate(LocalDate)}, for example to the date of the last dated line seen.
+ */
+@FunctionalInterface
+public interface ReferenceDate {
+
+    LocalDate date(ZoneId zone);
+
+    /**
+     * Returns the current date, the default, for logs that are read while they are written.
+     */
+    static ReferenceDate today() {
+        return clock(Clock.systemUTC());
+    }
+
+    /**
+     * Returns the date of the clock when each line is decoded.
+     */
+    static ReferenceDate clock(Clock clock) {
+        return new ClockReferenceDate(clock);
+    }
+
+    static ReferenceDate of(LocalDate date) {
+        return zone -> date;
+    }
+
+    /**
+     * Returns the date the file was last modified, for replaying a log that covers at most one day such as a
+     * daily rolled file.
+     */
+    static ReferenceDate lastModified(Path file) {
+        return zone -> {
+            try {
+                return Files.getLastModifiedTime(file).toInstant().atZone(zone).toLocalDate();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        };
+    }
+}
@@ -0,0 +1,188 @@
+package io.dashbase.log4j.parser;
+
+import io.dashbase.log4j.util.DateFormatPattern;
+
+import java.util.List;
+
+/**
+ * Caches the epoch second of the last few timestamps, keyed by their text up to the seconds. The fraction
+ * of a second is not part of the key: it is parsed from the trailing digits and added to the cached second,
+ * so lines logged within the same second share one entry even with millisecond or nanosecond formats.
+ *
+ * <p>Lookups hash the characters in place and do not allocate. A cache is not thread-safe.
+ */
+final class TimestampPrefixCache {
+    // log lines are nearly ordered by time, a handful of entries covers slightly interleaved writers
+    private static final int SIZE = 8;
+    private static final int[] POWERS_OF_TEN = {1, 10, 100, 1000, 10000, 100000, 1000000, 10000000, 100000000, 1000000000};
+
+    // number of fraction letters: the exact number of digits for 'S', the minimum for 'n'
+    private final int fractionDigits;
+    // true for 'n', a nano-of-second value of variable width; false for 'S', a fraction of fixed width
+    private final boolean nanoValue;
+
+    private final int[] hashes = new int[SIZE];
+    private final char[][] keys = new char[SIZE][];
+    private final int[] lengths = new int[SIZE];
+    private final long[] epochDays = new long[SIZE];
+    private final long[] epochSeconds = new long[SIZE];
+    private int size;
+    // the entry hit or added last, checked first
+    private int last;
+    private int next;
+
+    private long epochSecond;
+    private int nano;
+
+    private TimestampPrefixCache(int fractionDigits, boolean nanoValue) {
+        this.fractionDigits = fractionDigits;
+        this.nanoValue = nanoValue;
+    }
+
+    /**
+     * Returns a cache for the given DateTimeFormatter pattern, or null if the pattern has a fraction of a
+     * second that is not at its end.
+     */
+    static TimestampPrefixCache forFormat(String format) {
+        List<DateFormatPattern.Token> tokens = DateFormatPattern.of(format).tokens();
+        int end = tokens.size();
+        DateFormatPattern.Token last = end == 0 ? null : tokens.get(end - 1);
+        if (last == null || last.letter() != 'S' && last.letter() != 'n') {
+            return hasFraction(tokens, end) ? null : new TimestampPrefixCache(0, false);
+        }
+        int count = last.count();
+        if (count > 9 || hasFraction(tokens, end - 1)) {
+            return null;
+        }
+        if (last.letter() == 'n' && (end == 1 || !tokens.get(end - 2).isLiteral())) {
+            // the variable width value has to be separated from the seconds by a literal
+            return null;
+        }
+        return new TimestampPrefixCache(count, last.letter() == 'n');
+    }
+
+    /**
+     * Returns an empty cache for the same format, for use on another thread.
+     */
+    TimestampPrefixCache copy() {
+        return new TimestampPrefixCache(fractionDigits, nanoValue);
+    }
+
+    private static boolean hasFraction(List<DateFormatPattern.Token> tokens, int end) {
+        for (int i = 0; i < end; i++) {
+            char c = tokens.get(i).letter();
+            if (c == 'S' || c == 'n' || c == 'N' || c == 'A') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Looks up the second of text[start, end). For a time-only format, epochDay is the local date the time
+     * belongs to, and 0 otherwise.
+     *
+     * @return true on a hit, {@link #epochSecond()} and {@link #nano()} then hold the timestamp
+     */
+    boolean get(CharSequence text, int start, int end, long epochDay) {
+        int prefixEnd = prefixEnd(text, start, end);
+        if (prefixEnd < 0) {
+            return false;
+        }
+        int hash = hash(text, start, prefixEnd);
+        for (int n = 0, i = last; n < size; n++, i = i == 0 ? size - 1 : i - 1) {
+            if (hashes[i] == hash && epochDays[i] == epochDay && keyEquals(i, text, start, prefixEnd)) {
+                last = i;
+                epochSecond = epochSeconds[i];
+                nano = fraction(text, prefixEnd, end);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Adds the second of text[start, end), parsed to the given epoch second, replacing the oldest entry.
+     */
+    void put(CharSequence text, int start, int end, long epochDay, long epochSecond) {
+        int prefixEnd = prefixEnd(text, start, end);
+        if (prefixEnd < 0) {
+            return;
+        }
+        int length = prefixEnd - start;
+        int i = next;
+        char[] key = keys[i];
+        if (key == null || key.length < length) {
+            key = new char[Math.max(length, 32)];
+            keys[i] = key;
+        }
+        for (int j = 0; j < length; j++) {
+            key[j] = text.charAt(start + j);
+        }
+        lengths[i] = length;
+        hashes[i] = hash(text, start, prefixEnd);
+        epochDays[i] = epochDay;
+        epochSeconds[i] = epochSecond;
+        last = i;
+        next = (i + 1) % SIZE;
+        size = Math.max(size, i + 1);
+    }
+
+    long epochSecond() {
+        return epochSecond;
+    }
+
+    int nano() {
+        return nano;
+    }
+
+    /**
+     * Returns where the trailing fraction digits start, or -1 if they are not well-formed.
+     */
+    private int prefixEnd(CharSequence text, int start, int end) {
+        if (fractionDigits == 0) {
+            return end;
+        }
+        int digits = 0;
+        while (digits < end - start && isDigit(text.charAt(end - 1 - digits))) {
+            digits++;
+        }
+        if (nanoValue) {
+            return digits < fractionDigits || digits > 9 ? -1 : end - digits;
+        }
+        return digits < fractionDigits ? -1 : end - fractionDigits;
+    }
+
+    private int fraction(CharSequence text, int start, int end) {
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            value = value * 10 + text.charAt(i) - '0';
+        }
+        return nanoValue ? value : value * POWERS_OF_TEN[9 - fractionDigits];
+    }
+
+    private boolean keyEquals(int i, CharSequence text, int start, int end) {
+        if (lengths[i] != end - start) {
+            return false;
+        }
+        char[] key = keys[i];
+        for (int j = 0; j < end - start; j++) {
+            if (key[j] != text.charAt(start + j)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int hash(CharSequence text, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + text.charAt(i);
+        }
+        return hash;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+}
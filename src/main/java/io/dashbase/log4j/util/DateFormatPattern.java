@@ -0,0 +1,274 @@
+package io.dashbase.log4j.util;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A DateTimeFormatter pattern split into tokens in one pass: runs of one pattern letter, such as {@code yyyy},
+ * and literal text, with quotes removed. Tokens are what every engine needs from a date format: the regex of
+ * the format is derived from them, and so are the fixed-width timestamp parsers.
+ *
+ * <p>Patterns are immutable and memoized per format string, see {@link #of(String)}.
+ */
+public final class DateFormatPattern {
+    private static final Cache<String, DateFormatPattern> PATTERNS = Caffeine.newBuilder().maximumSize(1024).build();
+
+    private final String format;
+    private final List<Token> tokens;
+    private final boolean closed;
+    private final String regex;
+
+    public static final class Token {
+        // the pattern letter, 0 for literal text
+        private final char letter;
+        private final int count;
+        private final String literal;
+        private final boolean quoted;
+
+        private Token(char letter, int count, String literal, boolean quoted) {
+            this.letter = letter;
+            this.count = count;
+            this.literal = literal;
+            this.quoted = quoted;
+        }
+
+        public boolean isLiteral() {
+            return letter == 0;
+        }
+
+        /**
+         * Returns the pattern letter of a field, or 0 for literal text.
+         */
+        public char letter() {
+            return letter;
+        }
+
+        /**
+         * Returns the number of times the letter is repeated, or the length of literal text.
+         */
+        public int count() {
+            return count;
+        }
+
+        /**
+         * Returns the literal text without quotes, or null for a field.
+         */
+        public String literal() {
+            return literal;
+        }
+
+        /**
+         * Returns whether the literal text was quoted. Unquoted text may contain characters the formatter reserves.
+         */
+        public boolean isQuoted() {
+            return quoted;
+        }
+
+        @Override
+        public String toString() {
+            return isLiteral() ? "'" + literal + "'" : String.valueOf(letter).repeat(count);
+        }
+    }
+
+    private DateFormatPattern(String format) {
+        this.format = format;
+        List<Token> tokens = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        boolean closed = true;
+        int i = 0;
+        while (i < format.length()) {
+            char c = format.charAt(i);
+            if (c == '\'') {
+                addLiteral(tokens, literal, false);
+                if (i + 1 < format.length() && format.charAt(i + 1) == '\'') {
+                    tokens.add(new Token((char) 0, 1, "'", true));
+                    i += 2;
+                    continue;
+                }
+                i++;
+                closed = false;
+                while (i < format.length()) {
+                    c = format.charAt(i++);
+                    if (c != '\'') {
+                        literal.append(c);
+                    } else if (i < format.length() && format.charAt(i) == '\'') {
+                        literal.append('\'');
+                        i++;
+                    } else {
+                        closed = true;
+                        break;
+                    }
+                }
+                addLiteral(tokens, literal, true);
+                if (!closed) {
+                    break;
+                }
+                continue;
+            }
+            if (!isPatternLetter(c)) {
+                literal.append(c);
+                i++;
+                continue;
+            }
+            addLiteral(tokens, literal, false);
+            int count = 1;
+            while (i + count < format.length() && format.charAt(i + count) == c) {
+                count++;
+            }
+            tokens.add(new Token(c, count, null, false));
+            i += count;
+        }
+        addLiteral(tokens, literal, false);
+        this.tokens = Collections.unmodifiableList(tokens);
+        this.closed = closed;
+        this.regex = toRegex(tokens);
+    }
+
+    /**
+     * Returns the tokens of the given format, tokenized only the first time the format is seen.
+     */
+    public static DateFormatPattern of(String format) {
+        return PATTERNS.get(format, DateFormatPattern::new);
+    }
+
+    private static boolean isPatternLetter(char c) {
+        return c >= 'A' && c <= 'Z' || c >= 'a' && c <= 'z';
+    }
+
+    private static void addLiteral(List<Token> tokens, StringBuilder literal, boolean quoted) {
+        if (literal.length() > 0) {
+            tokens.add(new Token((char) 0, literal.length(), literal.toString(), quoted));
+            literal.setLength(0);
+        }
+    }
+
+    public String format() {
+        return format;
+    }
+
+    public List<Token> tokens() {
+        return tokens;
+    }
+
+    /**
+     * Returns false if the format has a quote that is not closed, in which case its last token is the text
+     * after that quote.
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Returns a regex matching the timestamps of the format. It is lenient where the widths of values vary.
+     */
+    public String regex() {
+        return regex;
+    }
+
+    private static String toRegex(List<Token> tokens) {
+        StringBuilder sb = new StringBuilder();
+        for (Token token : tokens) {
+            if (token.isLiteral()) {
+                appendQuoted(sb, token.literal);
+                continue;
+            }
+            int count = token.count;
+            switch (token.letter) {
+                // p - pad modifier, a width of 3 or more, or of 1 or 2
+                case 'p':
+                    sb.append(count >= 3 ? "\\s+" : "\\s?");
+                    break;
+                // G - Era designator
+                case 'G':
+                    sb.append("[ADBC]{2}");
+                    break;
+                // y - Year
+                case 'y':
+                    sb.append(count == 2 ? "\\d{2}" : "\\d{4}");
+                    break;
+                // M - Month in year
+                case 'M':
+                    sb.append(count >= 3 ? "[a-zA-Z]*" : count == 2 ? "\\d{2}" : "\\d{1,2}");
+                    break;
+                // w - Week in year, d - Day in month
+                case 'w':
+                case 'd':
+                    sb.append("\\d{1,2}");
+                    break;
+                // D - Day in year
+                case 'D':
+                    sb.append("\\d{1,3}");
+                    break;
+                // W - Week in month, F - Day of week in month
+                case 'W':
+                case 'F':
+                    sb.append("\\d");
+                    break;
+                // E - Day in week
+                case 'E':
+                    sb.append("[a-zA-Z]*");
+                    break;
+                // a - Am/pm marker
+                case 'a':
+                    sb.append("[AMPM]{2}");
+                    break;
+                // H, k, K, h - Hours, m - Minute in hour, s - Second in minute
+                case 'H':
+                case 'k':
+                case 'K':
+                case 'h':
+                case 'm':
+                case 's':
+                    sb.append("\\d{1,2}");
+                    break;
+                // S - fraction of second
+                case 'S':
+                    sb.append("\\d{1,6}");
+                    break;
+                // n - nano second
+                case 'n':
+                    sb.append("\\d{1,9}");
+                    break;
+                // V - Time zone ID
+                case 'V':
+                    sb.append("[a-zA-Z+-0-9_/]+");
+                    break;
+                // z - Time zone
+                case 'z':
+                    sb.append("[a-zA-Z-+:0-9]*");
+                    break;
+                // Z - Time zone
+                case 'Z':
+                    sb.append("[-+]\\d{4}");
+                    break;
+                // X - Zone offset, 'Z' for zero
+                case 'X':
+                    sb.append("(?:Z|[-+]\\d{2}(?::?\\d{2})?)");
+                    break;
+                default:
+                    // letters without a regex of their own stand for themselves
+                    sb.append(String.valueOf(token.letter).repeat(count));
+            }
+        }
+        return sb.toString();
+    }
+
+    private static void appendQuoted(StringBuilder sb, String literal) {
+        for (int i = 0; i < literal.length(); i++) {
+            char c = literal.charAt(i);
+            if ("\\^$.|?*+()[]{}".indexOf(c) >= 0) {
+                sb.append('\\');
+            }
+            sb.append(c);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return format;
+    }
+}
@@ -0,0 +1,143 @@
+package io.dashbase.log4j.util;
+
+import io.dashbase.log4j.model.Utf8Text;
+
+/**
+ * A bounded dictionary of canonical Strings for repeated character ranges, such as logger and thread names.
+ * A range is hashed and compared in place, so a String is only created the first time a name is seen.
+ *
+ * <p>The dictionary is set-associative: a name can only live in the 4 slots of its hash bucket, and a new
+ * name replaces the slots of a full bucket in turn. It never holds more than its size, whatever the number
+ * of distinct names. Every name gets an id when it is added; ids are not reused, so an evicted name gets a
+ * new one when it comes back. The dictionary is not thread-safe.
+ *
+ * <p>A range of a {@link Utf8Text} is compared with the UTF-8 encoding of the names, so a non-ASCII name gets
+ * the same String and id from bytes as from chars. Bytes that are not valid UTF-8 never match and are added
+ * again each time.
+ */
+public final class StringDictionary {
+    private static final int WAYS = 4;
+
+    private final int mask;
+    private final String[] values;
+    private final int[] hashes;
+    private final int[] ids;
+    // per bucket, the way replaced next
+    private final byte[] next;
+    private int nextId;
+    private int lastId;
+
+    /**
+     * @param maxSize the maximum number of names, rounded up to a power of two of at least 4
+     */
+    public StringDictionary(int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize must be positive: " + maxSize);
+        }
+        int size = Integer.highestOneBit((Math.max(WAYS, maxSize) - 1) << 1);
+        this.mask = size / WAYS - 1;
+        this.values = new String[size];
+        this.hashes = new int[size];
+        this.ids = new int[size];
+        this.next = new byte[size / WAYS];
+    }
+
+    public int maxSize() {
+        return values.length;
+    }
+
+    /**
+     * Returns the canonical String of text[start, end), adding it if it is not in the dictionary.
+     */
+    public String intern(CharSequence text, int start, int end) {
+        // only ASCII chars are hashed, they are the same in both forms
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                hash = 31 * hash + c;
+            }
+        }
+        int bucket = (hash ^ hash >>> 16) & mask;
+        int first = bucket * WAYS;
+        for (int slot = first; slot < first + WAYS; slot++) {
+            String value = values[slot];
+            if (value != null && hashes[slot] == hash && equals(value, text, start, end)) {
+                lastId = ids[slot];
+                return value;
+            }
+        }
+        int slot = first + next[bucket];
+        next[bucket] = (byte) ((next[bucket] + 1) % WAYS);
+        String value = text.subSequence(start, end).toString();
+        values[slot] = value;
+        hashes[slot] = hash;
+        ids[slot] = nextId;
+        lastId = nextId++;
+        return value;
+    }
+
+    /**
+     * Returns the id of the name, adding it if it is not in the dictionary.
+     */
+    public int id(CharSequence text, int start, int end) {
+        intern(text, start, end);
+        return lastId;
+    }
+
+    /**
+     * Returns the id of the name returned by the last {@link #intern} call.
+     */
+    public int lastId() {
+        return lastId;
+    }
+
+    private static boolean equals(String value, CharSequence text, int start, int end) {
+        if (text instanceof Utf8Text) {
+            return equalsUtf8(value, text, start, end);
+        }
+        if (value.length() != end - start) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) != text.charAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Compares the UTF-8 encoding of the value with the bytes of text[start, end), the low byte of each char.
+     */
+    private static boolean equalsUtf8(String value, CharSequence text, int start, int end) {
+        int index = start;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                if (index == end || text.charAt(index++) != c) {
+                    return false;
+                }
+                continue;
+            }
+            int codePoint = value.codePointAt(i);
+            int length = codePoint < 0x800 ? 2 : codePoint < 0x10000 ? 3 : 4;
+            if (Character.isSupplementaryCodePoint(codePoint)) {
+                i++;
+            }
+            if (end - index < length) {
+                return false;
+            }
+            int lead = length == 2 ? 0xC0 : length == 3 ? 0xE0 : 0xF0;
+            if ((text.charAt(index++) & 0xFF) != (lead | codePoint >>> 6 * (length - 1))) {
+                return false;
+            }
+            for (int shift = 6 * (length - 2); shift >= 0; shift -= 6) {
+                if ((text.charAt(index++) & 0xFF) != (0x80 | codePoint >>> shift & 0x3F)) {
+                    return false;
+                }
+            }
+        }
+        return index == end;
+    }
+}
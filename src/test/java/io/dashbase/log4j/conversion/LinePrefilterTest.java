@@ -0,0 +1,67 @@
+package io.dashbase.log4j.conversion;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.time.ZoneOffset;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+public class LinePrefilterTest {
+    private final ConversionPatternParser parser = new ConversionPatternParser(ZoneOffset.UTC);
+
+    @Test
+    public void rejectsContinuationLines() {
+        LinePrefilter filter = prefilter("%d{DEFAULT} [%t] %-5p %c - %m");
+        Assert.assertTrue(filter.accepts("2018-02-28 12:00:00,001 [main] INFO  com.example.App - started"));
+        Assert.assertFalse(filter.accepts("\tat com.example.App.main(App.java:5)"));
+        Assert.assertFalse(filter.accepts("Caused by: java.lang.IllegalStateException: closed"));
+        Assert.assertFalse(filter.accepts("2018/02/28 12:00:00,001 [main] INFO  com.example.App - started"));
+        // the literals after the date have to follow in order
+        Assert.assertFalse(filter.accepts("2018-02-28 12:00:00,001 main INFO com.example.App started"));
+        Assert.assertFalse(filter.accepts(""));
+
+        filter = prefilter("%-5p %d{ABSOLUTE} %m]");
+        Assert.assertTrue(filter.accepts("ERROR 12:00:00,003 failed]"));
+        Assert.assertFalse(filter.accepts("error 12:00:00,003 failed]"));
+        Assert.assertFalse(filter.accepts("ERROR 12:00:00,003 failed"));
+    }
+
+    @Test
+    public void acceptsEveryMatchingLine() {
+        String[] patterns = {
+            "%d{yyyy-MM-dd HH:mm:ss} %-5p %c{1}:%L - %m",
+            "[%d{ISO8601}] %p %c{1}:%L - %m",
+            "%d{dd MMM yyyy HH:mm:ss,SSS} %m",
+            "%5.5p|%m",
+            "%-5p %c - %m",
+            "%p:%m]",
+            "%d{HH:mm:ss} %p:%m",
+            "%X{a}=%X{b}",
+            "%m",
+        };
+        char[] alphabet = {'a', 'Z', 'I', 'N', 'F', 'O', ' ', '-', ':', '[', ']', '=', '|', '1', '2', ','};
+        String[] prefixes = {"", "2017-09-26 23:08:06", "[2017-09-26T23:08:06,123] ", "26 Sep 2017 23:08:06,123 ",
+            "12:01:02 ", "ERROR ", "  INFO|"};
+        Random random = new Random(42);
+        for (String pattern : patterns) {
+            LinePrefilter filter = prefilter(pattern);
+            Pattern regex = parser.getRegexPattern(pattern);
+            for (int i = 0; i < 3000; i++) {
+                StringBuilder sb = new StringBuilder(prefixes[random.nextInt(prefixes.length)]);
+                int length = random.nextInt(16);
+                for (int j = 0; j < length; j++) {
+                    sb.append(alphabet[random.nextInt(alphabet.length)]);
+                }
+                String line = sb.toString();
+                if (regex.matcher(line).matches()) {
+                    Assert.assertTrue(pattern + " / " + line, filter.accepts(line));
+                }
+            }
+        }
+    }
+
+    private LinePrefilter prefilter(String pattern) {
+        return parser.getPrefilter(pattern, parser.extractConversionPattern(pattern));
+    }
+}
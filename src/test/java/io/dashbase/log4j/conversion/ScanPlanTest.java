@@ -0,0 +1,128 @@
+package io.dashbase.log4j.conversion;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.time.ZoneOffset;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class ScanPlanTest {
+    private final ConversionPatternParser parser = new ConversionPatternParser(ZoneOffset.UTC);
+
+    @Test
+    public void scansCommonPatterns() {
+        assertScanned("%d{yyyy-MM-dd HH:mm:ss/zzz} %-5p %c{1}:%L - %m",
+            "2017-09-26 23:08:06/UTC ERROR TestLog:49 - oops, error found");
+        assertScanned("[%d] [%t] %-5p %c{2}: %m",
+            "[2018-02-27 14:13:18,852] [thread1] INFO  stack.Message: mymsg");
+        assertScanned("%d [%-6p] %C{1}.%M(%F:%L) - %m",
+            "2016-06-20 19:25:42,249 [DEBUG ] Log4j2HelloWorldExample.methodOne(Log4j2HelloWorldExample.java:14) - Debug Message Logged !!");
+        assertScanned("%m - %ex", "test message - java.lang.IllegalArgumentException: test\n\tat Test.main(Test.java:8)");
+        assertScanned("%T %tp", "12345 5");
+    }
+
+    @Test
+    public void rejectsWithoutRegex() {
+        ScanPlan plan = parser.getScanPlan("%d [%t] %-5p %c - %m");
+        int[] bounds = new int[2 * plan.fieldCount()];
+        Assert.assertEquals(ScanPlan.NO_MATCH, plan.newScanner().scan("\tat Test.main(Test.java:8)", bounds));
+        Assert.assertEquals(ScanPlan.NO_MATCH, plan.newScanner().scan("", bounds));
+    }
+
+    @Test
+    public void unsupportedPatterns() {
+        // free text followed directly by another field
+        Assert.assertNull(parser.getScanPlan("%c%m"));
+        // width modifiers on free text
+        Assert.assertNull(parser.getScanPlan("%-20c %m"));
+        Assert.assertNotNull(parser.getScanPlan("%-5p%m"));
+    }
+
+    @Test
+    public void agreesWithRegex() {
+        String[] patterns = {
+            "%d{yyyy-MM-dd HH:mm:ss} %-5p %c{1}:%L - %m",
+            "%c:%L - %m",
+            "%m]",
+            "[%t] %p %m",
+            "%-5p %c - %m",
+            "%5.5p|%m",
+            "%L%m",
+            "%x",
+            "%X{a}=%X{b}",
+            "%d{HH:mm:ss.SSS} %m - %ex",
+        };
+        String[] lines = {
+            "2017-09-26 23:08:06 ERROR TestLog:49 - oops",
+            "2017-09-26 23:08:06 INFO  TestLog:49 - oops",
+            "2017-09-26 23:08:06 INFO TestLog:x:49 - oops",
+            "a:b:12 - msg",
+            "a:12 - - msg",
+            "x]y]",
+            "[main] INFO hello",
+            "[main] ] INFO hello",
+            "[ma\nin] INFO hello",
+            "INFO  a - b - c",
+            "WARN a\n - b",
+            " INFO|x",
+            "12345abc",
+            "a=b=c",
+            "12:01:02.123 msg - ex",
+            "12:01:02x123 msg\n - ex",
+            "",
+        };
+        for (String pattern : patterns) {
+            for (String line : lines) {
+                assertSameAsRegex(pattern, line);
+            }
+        }
+    }
+
+    @Test
+    public void agreesWithRegexOnRandomLines() {
+        String[] patterns = {"%-5p %c - %m", "[%t] %c:%L %m]", "%d{HH:mm:ss} %p:%m"};
+        char[] alphabet = {'a', 'Z', 'I', 'N', 'F', 'O', ' ', '-', ':', '[', ']', '1', '2', '\n'};
+        Random random = new Random(42);
+        for (String pattern : patterns) {
+            for (int i = 0; i < 2000; i++) {
+                StringBuilder sb = new StringBuilder();
+                int length = random.nextInt(20);
+                for (int j = 0; j < length; j++) {
+                    sb.append(alphabet[random.nextInt(alphabet.length)]);
+                }
+                assertSameAsRegex(pattern, sb.toString());
+            }
+        }
+    }
+
+    private void assertScanned(String pattern, String line) {
+        ScanPlan plan = parser.getScanPlan(pattern);
+        Assert.assertNotNull(pattern, plan);
+        int[] bounds = new int[2 * plan.fieldCount()];
+        Assert.assertEquals(line, ScanPlan.MATCH, plan.newScanner().scan(line, bounds));
+        assertSameAsRegex(pattern, line);
+    }
+
+    private void assertSameAsRegex(String pattern, String line) {
+        ScanPlan plan = parser.getScanPlan(pattern);
+        if (plan == null) {
+            return;
+        }
+        int[] bounds = new int[2 * plan.fieldCount()];
+        int result = plan.newScanner().scan(line, bounds);
+        if (result == ScanPlan.UNDECIDED) {
+            return;
+        }
+        Pattern regex = parser.getRegexPattern(pattern);
+        Matcher m = regex.matcher(line);
+        Assert.assertEquals(pattern + " / " + line, m.matches(), result == ScanPlan.MATCH);
+        if (result == ScanPlan.MATCH) {
+            for (int i = 0; i < m.groupCount(); i++) {
+                Assert.assertEquals(pattern + " / " + line + " group " + i, m.start(i + 1), bounds[2 * i]);
+                Assert.assertEquals(pattern + " / " + line + " group " + i, m.end(i + 1), bounds[2 * i + 1]);
+            }
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package io.dashbase.log4j.parser;
+
+import io.dashbase.log4j.model.ConversionPatternEl;
+import io.dashbase.log4j.model.Log4jLoggingEvent;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class DecoderMetricsTest {
+
+    @Test
+    public void countsLinesAndTimestamps() {
+        DecoderMetrics metrics = new DecoderMetrics(0);
+        Log4jDecoder decoder = Log4jDecoder.builder("%d{dd MMM yyyy HH:mm:ss,SSS} %-5p %m%n").metrics(metrics).build();
+        assertSame(metrics, decoder.metrics());
+
+        String first = "28 Feb 2018 12:00:00,001 INFO  started";
+        String second = "28 Feb 2018 12:00:00,002 INFO  again";
+        String trace = "\tat com.example.App.main(App.java:5)";
+        assertNotNull(decoder.parseString(first));
+        Log4jLoggingEvent reuse = new Log4jLoggingEvent();
+        assertTrue(decoder.parseInto(second, reuse));
+        // copies share the metrics
+        assertNull(decoder.copy().parseString(trace));
+
+        assertEquals(2, metrics.linesMatched());
+        assertEquals(1, metrics.linesUnmatched());
+        assertEquals(2.0 / 3, metrics.matchRate(), 1e-9);
+        assertEquals(first.length() + second.length() + trace.length(), metrics.charsProcessed());
+        // the month name needs the formatter, the second line only its cached second
+        assertEquals(0, metrics.timestampFastParses());
+        assertEquals(1, metrics.timestampFormatterParses());
+        assertEquals(1, metrics.timestampCacheHits());
+        assertEquals(0.5, metrics.timestampHitRate(), 1e-9);
+        assertNull(metrics.fieldLatency(ConversionPatternEl.Type.MESSAGE));
+    }
+
+    @Test
+    public void samplesFieldLatency() {
+        DecoderMetrics metrics = new DecoderMetrics(2);
+        Log4jDecoder decoder = Log4jDecoder.builder("%d{DEFAULT} %-5p %m%n").metrics(metrics).threadSafe(true).build();
+        for (int i = 0; i < 4; i++) {
+            decoder.parseString("2018-02-28 12:00:00,00" + i + " INFO  line " + i);
+        }
+        assertEquals(4, metrics.timestampFastParses());
+        DecoderMetrics.LatencyHistogram latency = metrics.fieldLatency(ConversionPatternEl.Type.MESSAGE);
+        assertEquals(2, latency.count());
+        assertTrue(latency.quantileNanos(0.5) <= latency.quantileNanos(1));
+
+        assertNull(new Log4jDecoder("%m%n").metrics());
+    }
+}
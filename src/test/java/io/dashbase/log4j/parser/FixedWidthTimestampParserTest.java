@@ -0,0 +1,161 @@
+package io.dashbase.log4j.parser;
+
+import io.dashbase.log4j.model.Log4jLoggingEvent;
+import io.dashbase.log4j.util.DateTimeFormatUtils;
+import org.junit.Test;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class FixedWidthTimestampParserTest {
+    private static final String[] FORMATS = {
+        "yyyy-MM-dd HH:mm:ss,SSS",
+        "yyyy-MM-dd HH:mm:ss.SSS",
+        "yyyy-MM-dd HH:mm:ss,nnnnnn",
+        "yyyy-MM-dd HH:mm:ss,nnnnnnnnn",
+        "yyyy-MM-dd'T'HH:mm:ss,SSS",
+        "yyyyMMdd'T'HHmmss,SSS",
+        "yyyyMMddHHmmssSSS",
+        "yyyy-MM-dd HH:mm:ss",
+    };
+
+    private static final ZoneId[] ZONES = {
+        ZoneOffset.UTC, ZoneId.of("America/Los_Angeles"), ZoneId.of("Asia/Kolkata"), ZoneId.of("Australia/Sydney")
+    };
+
+    @Test
+    public void supportedFormats() {
+        for (String format : FORMATS) {
+            assertNotNull(format, FixedWidthTimestampParser.forFormat(format, ZoneOffset.UTC));
+        }
+        assertNotNull(FixedWidthTimestampParser.forFormat("HH:mm:ss,SSS", ZoneOffset.UTC));
+        assertNotNull(FixedWidthTimestampParser.forFormat("yyyy-MM-dd'T'HH:mm:ss,SSSXXX", ZoneOffset.UTC));
+        assertNull(FixedWidthTimestampParser.forFormat("dd MMM yyyy HH:mm:ss,SSS", ZoneOffset.UTC));
+        assertNull(FixedWidthTimestampParser.forFormat("yyyy-MM-dd HH:mm:ss z", ZoneOffset.UTC));
+        assertNull(FixedWidthTimestampParser.forFormat("MM-dd HH:mm:ss", ZoneOffset.UTC));
+        assertNull(FixedWidthTimestampParser.forFormat("yyyy-MM-dd HH:mm[:ss]", ZoneOffset.UTC));
+    }
+
+    @Test
+    public void sameAsDateTimeFormatter() {
+        Random random = new Random(7);
+        long from = Instant.parse("1999-01-01T00:00:00Z").getEpochSecond();
+        long to = Instant.parse("2030-01-01T00:00:00Z").getEpochSecond();
+        for (ZoneId zone : ZONES) {
+            for (String format : FORMATS) {
+                DateTimeFormatter dtf = DateTimeFormatter.ofPattern(format).withZone(zone);
+                FixedWidthTimestampParser parser = FixedWidthTimestampParser.forFormat(format, zone);
+                // 'n' is a minimum width, keep the nano value within it
+                int nanos = format.endsWith(",nnnnnn") ? 1_000_000 : 1_000_000_000;
+                for (int i = 0; i < 2000; i++) {
+                    Instant instant = Instant.ofEpochSecond(from + (long) (random.nextDouble() * (to - from)),
+                        random.nextInt(nanos));
+                    String text = dtf.format(instant);
+                    Instant expected = ZonedDateTime.parse(text, dtf).toInstant();
+                    if (parser.parse(text, 0, text.length(), 0)) {
+                        assertEquals(format + " " + zone + " " + text, expected,
+                            Instant.ofEpochSecond(parser.epochSecond(), parser.nano()));
+                    } else {
+                        // only days with an offset transition are left to the formatter
+                        assertFalse(format + " " + zone + " " + text, zone.getRules().isFixedOffset());
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void transitionDaysAreLeftToTheFormatter() {
+        ZoneId zone = ZoneId.of("America/Los_Angeles");
+        FixedWidthTimestampParser parser = FixedWidthTimestampParser.forFormat("yyyy-MM-dd HH:mm:ss,SSS", zone);
+        assertFalse(parser.parse("2018-03-11 02:30:00,000", 0, 23, 0));
+        assertTrue(parser.parse("2018-07-08 12:00:00,000", 0, 23, 0));
+        assertEquals(Instant.parse("2018-07-08T19:00:00Z").getEpochSecond(), parser.epochSecond());
+    }
+
+    @Test
+    public void rejectsValuesTheFormatterAdjusts() {
+        FixedWidthTimestampParser parser = FixedWidthTimestampParser.forFormat("yyyy-MM-dd HH:mm:ss,SSS", ZoneOffset.UTC);
+        assertFalse(parser.parse("2020-02-30 08:00:00,030", 0, 23, 0));
+        assertFalse(parser.parse("2020-01-01 24:00:00,000", 0, 23, 0));
+        assertFalse(parser.parse("0000-01-01 00:00:00,000", 0, 23, 0));
+        assertFalse(parser.parse("2020-01-01 10:00:60,000", 0, 23, 0));
+        assertFalse(parser.parse("2020-01-01T10:00:00,000", 0, 23, 0));
+        assertFalse(parser.parse("2020-01-01 10:00:00,0000", 0, 24, 0));
+        assertTrue(parser.parse("2020-02-29 08:00:00,030", 0, 23, 0));
+        assertEquals(30_000_000, parser.nano());
+    }
+
+    @Test
+    public void offsets() {
+        FixedWidthTimestampParser parser = FixedWidthTimestampParser.forFormat("yyyy-MM-dd'T'HH:mm:ss,SSSX", ZoneOffset.UTC);
+        assertTrue(parser.parse("2020-01-01T10:00:00,000+0830", 0, 28, 0));
+        assertEquals(Instant.parse("2020-01-01T01:30:00Z").getEpochSecond(), parser.epochSecond());
+        assertTrue(parser.parse("2020-01-01T10:00:00,000-08", 0, 26, 0));
+        assertEquals(Instant.parse("2020-01-01T18:00:00Z").getEpochSecond(), parser.epochSecond());
+        assertTrue(parser.parse("2020-01-01T10:00:00,000Z", 0, 24, 0));
+        assertEquals(Instant.parse("2020-01-01T10:00:00Z").getEpochSecond(), parser.epochSecond());
+        assertFalse(parser.parse("2020-01-01T10:00:00,000+08:30", 0, 29, 0));
+
+        parser = FixedWidthTimestampParser.forFormat("yyyy-MM-dd'T'HH:mm:ss,SSSXXX", ZoneOffset.UTC);
+        assertTrue(parser.parse("2020-01-01T10:00:00,000+08:30", 0, 29, 0));
+        assertEquals(Instant.parse("2020-01-01T01:30:00Z").getEpochSecond(), parser.epochSecond());
+    }
+
+    @Test
+    public void timeOnly() {
+        FixedWidthTimestampParser parser = FixedWidthTimestampParser.forFormat("HH:mm:ss,SSS", ZoneOffset.ofHours(2));
+        long epochDay = LocalDate.of(2020, 6, 1).toEpochDay();
+        assertTrue(parser.parse("23:08:06,459", 0, 12, epochDay));
+        assertEquals(Instant.parse("2020-06-01T21:08:06.459Z"), Instant.ofEpochSecond(parser.epochSecond(), parser.nano()));
+    }
+
+    @Test
+    public void unpaddedValues() {
+        String[] formats = {"yyyy-MM-dd HH:mm:ss,SSS", "yyyy-MM-dd H:m:s", "yyyy-MM-dd'T'HH:mm:ssXXX"};
+        String[][] texts = {
+            {"2018-03-05 09:05:07,001", "2018-03-5 9:5:7,001", "2018-03-05 9:05:07,001"},
+            {"2018-03-05 09:05:07", "2018-03-5 9:5:7", "2018-03-05 21:5:07"},
+            {"2018-03-05T09:05:07+01:00", "2018-03-5T9:5:7Z", "2018-03-05T9:05:07-02:00"},
+        };
+        for (int i = 0; i < formats.length; i++) {
+            FixedWidthTimestampParser parser = FixedWidthTimestampParser.forFormat(formats[i], ZoneOffset.UTC);
+            DateTimeFormatter lenient = DateTimeFormatter.ofPattern(DateTimeFormatUtils.toLenientPattern(formats[i]))
+                .withZone(ZoneOffset.UTC);
+            for (String text : texts[i]) {
+                assertTrue(text, parser.parse(text, 0, text.length(), 0));
+                assertEquals(text, ZonedDateTime.parse(text, lenient).toInstant(),
+                    Instant.ofEpochSecond(parser.epochSecond(), parser.nano()));
+            }
+        }
+        FixedWidthTimestampParser parser = FixedWidthTimestampParser.forFormat("yyyy-MM-dd HH:mm:ss", ZoneOffset.UTC);
+        assertFalse(parser.parse("2018-03-05 9::07", 0, 16, 0));
+        assertFalse(parser.parse("2018-03-05 9:5:7 ", 0, 17, 0));
+        assertFalse(parser.parse("2018-3-05 09:05:07", 0, 18, 0));
+        // the hour is not followed by a literal
+        assertNull(FixedWidthTimestampParser.forFormat("yyyy-MM-dd Hmm", ZoneOffset.UTC));
+    }
+
+    @Test
+    public void decodesOffsetPresets() {
+        Log4jDecoder decoder = new Log4jDecoder("%d{ISO8601_OFFSET_DATE_TIME_HHCMM} %m");
+        Log4jLoggingEvent event = decoder.parseString("2018-02-28T12:00:00,000-07:00 message");
+        assertEquals(Instant.parse("2018-02-28T19:00:00Z"), event.timestamp);
+        assertEquals("message", event.message.value);
+
+        decoder = new Log4jDecoder("%d{ISO8601_OFFSET_DATE_TIME_HH} %m");
+        event = decoder.parseString("2018-02-28T12:00:00,000Z message");
+        assertEquals(Instant.parse("2018-02-28T12:00:00Z"), event.timestamp);
+    }
+}
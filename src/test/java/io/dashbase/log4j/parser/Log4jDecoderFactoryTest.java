@@ -0,0 +1,56 @@
+package io.dashbase.log4j.parser;
+
+import io.dashbase.log4j.model.ConversionPatternEl;
+import io.dashbase.log4j.model.Log4jLoggingEvent;
+import org.junit.Test;
+
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.EnumSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class Log4jDecoderFactoryTest {
+    private static final String PATTERN = "%d{DEFAULT} [%t] %-5p %c - %m%n";
+    private static final String LINE = "2018-02-28 12:00:00,001 [main] INFO  com.example.App - started";
+
+    @Test
+    public void sharesCompiledPatterns() {
+        Log4jDecoderFactory factory = new Log4jDecoderFactory();
+        Log4jDecoder first = factory.decoder(PATTERN);
+        Log4jDecoder second = factory.decoder(PATTERN, ZoneOffset.UTC);
+        assertNotSame(first, second);
+        assertEquals(1, factory.buildCount());
+        assertEquals(1, factory.hitCount());
+        assertTrue(factory.buildNanos() > 0);
+
+        Log4jDecoder tokyo = factory.decoder(PATTERN, ZoneId.of("Asia/Tokyo"));
+        assertEquals(2, factory.buildCount());
+        assertEquals(2, factory.size());
+
+        assertEquals(1519819200001L, first.parseString(LINE).timestamp.toEpochMilli());
+        assertEquals(1519819200001L - 9 * 3600_000, tokyo.parseString(LINE).timestamp.toEpochMilli());
+        Log4jLoggingEvent reuse = new Log4jLoggingEvent();
+        assertTrue(second.parseInto(LINE, reuse));
+        assertEquals("started", reuse.message.value.toString());
+    }
+
+    @Test
+    public void buildersKeepTheirOptions() {
+        Log4jDecoderFactory factory = new Log4jDecoderFactory();
+        Log4jDecoder projected = factory.builder(PATTERN)
+            .fields(EnumSet.of(ConversionPatternEl.Type.MESSAGE))
+            .threadSafe(true)
+            .build();
+        Log4jLoggingEvent event = projected.parseString(LINE);
+        assertEquals("started", event.message.value);
+        assertNull(event.thread);
+        assertTrue(projected.isThreadSafe());
+
+        assertEquals("main", factory.decoder(PATTERN).parseString(LINE).thread.value);
+        assertEquals(1, factory.buildCount());
+    }
+}
@@ -1,13 +1,34 @@
 package io.dashbase.log4j.parser;
 
+import io.dashbase.log4j.model.ConversionPatternEl;
+import io.dashbase.log4j.model.Entity;
+import io.dashbase.log4j.model.Level;
+import io.dashbase.log4j.model.Log4jEventBatch;
 import io.dashbase.log4j.model.Log4jLoggingEvent;
+import io.dashbase.log4j.model.TextSlice;
+import io.dashbase.log4j.model.Utf8Text;
 import org.junit.Test;
 
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.time.*;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 
 public class Log4jDecoderTest {
@@ -136,6 +157,19 @@ public class Log4jDecoderTest {
         String msg = "Jun 13, 2019 7:26:5 AM GMT";
         var event = decoder.parseString(msg);
         assertEquals("2019-06-13T07:26:05Z", event.timestamp.toString());
+
+        // padded and unpadded lines, through the formatters for the month name
+        DecoderMetrics metrics = new DecoderMetrics(0);
+        decoder = Log4jDecoder.builder("%d{dd MMM yyyy HH:mm:ss} %m%n").metrics(metrics).build();
+        assertEquals("2018-03-05T09:05:07Z", decoder.parseString("5 Mar 2018 9:05:07 a").timestamp.toString());
+        assertEquals("2018-03-05T09:05:08Z", decoder.parseString("5 Mar 2018 9:05:08 b").timestamp.toString());
+        assertEquals("2018-03-15T10:00:00Z", decoder.parseString("15 Mar 2018 10:00:00 c").timestamp.toString());
+        assertEquals(3, metrics.timestampFormatterParses());
+        assertEquals(3, metrics.timestampLenientParses());
+        // a zone-less date with the lenient formatter
+        decoder = new Log4jDecoder("%d{dd MMM yyyy HH:mm:ss,SSS} %m%n", ZoneId.of("America/Los_Angeles"));
+        event = decoder.parseString("5 Mar 2018 9:05:07,001 a");
+        assertEquals("2018-03-05T17:05:07.001Z", event.timestamp.toString());
     }
 
     @Test
@@ -262,6 +296,66 @@ public class Log4jDecoderTest {
         assertNull(event.mdc);
     }
 
+    @Test
+    public void mdcEntries() {
+        Log4jDecoder log4jDecoder = new Log4jDecoder("%m %X%n");
+        Log4jLoggingEvent event = log4jDecoder.parseString("a {test, x=1,=2, test2=456}");
+        assertEquals(Set.of("x", "test2"), event.mdc.keySet());
+        assertEquals("1[11,12]", event.mdc.get("x").toString());
+        assertEquals("456[23,26]", event.mdc.get("test2").toString());
+
+        event = log4jDecoder.parseString("a {no separator}");
+        assertTrue(event.mdc.isEmpty());
+
+        Log4jLoggingEvent reuse = new Log4jLoggingEvent();
+        assertTrue(log4jDecoder.parseInto("a {user=bob, ip=10.0.0.1}", reuse));
+        Map<String, Entity> mdc = reuse.mdc;
+        String key = mdc.keySet().iterator().next();
+        assertEquals("bob", mdc.get("user").value.toString());
+        assertTrue(log4jDecoder.parseInto("b {user=alice}", reuse));
+        assertSame(mdc, reuse.mdc);
+        assertSame(key, reuse.mdc.keySet().iterator().next());
+        assertEquals("alice", reuse.mdc.get("user").value.toString());
+        assertNull(reuse.mdc.get("ip"));
+
+        event = new Log4jDecoder("%m %K%n").parseString("a k=v, flag");
+        assertEquals(Set.of("k"), event.map.keySet());
+        assertEquals("v", event.map.get("k").value);
+    }
+
+    @Test
+    public void mdcRemovals() {
+        Log4jDecoder log4jDecoder = new Log4jDecoder("%m %X%n");
+        Log4jLoggingEvent event = log4jDecoder.parseString("a {a=1, b=2, c=3, d=4}");
+        assertEquals("1", event.mdc.remove("a").value.toString());
+        assertNull(event.mdc.remove("a"));
+        assertEquals(List.of("b", "c", "d"), new ArrayList<>(event.mdc.keySet()));
+
+        assertTrue(event.mdc.entrySet().removeIf(entry -> entry.getKey().equals("c")));
+        assertEquals(List.of("b", "d"), new ArrayList<>(event.mdc.keySet()));
+        assertEquals("4[20,21]", event.mdc.get("d").toString());
+
+        Entity replacement = new Entity("x", 0, 1);
+        for (Map.Entry<String, Entity> entry : event.mdc.entrySet()) {
+            if (entry.getKey().equals("b")) {
+                entry.setValue(replacement);
+            }
+        }
+        assertSame(replacement, event.mdc.get("b"));
+
+        event.mdc.keySet().remove("b");
+        event.mdc.keySet().remove("d");
+        assertTrue(event.mdc.isEmpty());
+
+        // the map is reused for the next line
+        Log4jLoggingEvent reuse = new Log4jLoggingEvent();
+        assertTrue(log4jDecoder.parseInto("a {user=bob, ip=10.0.0.1}", reuse));
+        reuse.mdc.remove("user");
+        assertTrue(log4jDecoder.parseInto("b {user=alice, ip=10.0.0.2}", reuse));
+        assertEquals("alice", reuse.mdc.get("user").value.toString());
+        assertEquals("10.0.0.2", reuse.mdc.get("ip").value.toString());
+    }
+
     @Test
     public void testNDC() throws  Exception {
         String pattern = "%x";
@@ -356,4 +450,405 @@ public class Log4jDecoderTest {
         assertEquals(14L, event.locLine.value);
         assertEquals("Debug Message Logged !!", event.message.value);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void parseInto() {
+        Log4jDecoder log4jDecoder = new Log4jDecoder("%d{yyyy-MM-dd HH:mm:ss} %-5p %c{1}:%L - %m%n");
+        Log4jLoggingEvent event = new Log4jLoggingEvent();
+
+        StringBuilder line = new StringBuilder("2017-09-26 23:08:06 ERROR TestLog:49 - oops, error found");
+        assertTrue(log4jDecoder.parseInto(line, event));
+        assertTrue(event.message.value instanceof TextSlice);
+        assertTrue(((TextSlice) event.message.value).contentEquals("oops, error found"));
+        assertEquals("ERROR[20,25]", event.level.toString());
+        assertEquals(49, event.locLine.value);
+        assertEquals(1506467286L, event.epochSecond);
+        assertEquals(1506467286000L, event.getTimestamp().toEpochMilli());
+        Entity message = event.message;
+
+        line.setLength(0);
+        line.append("2017-09-26 23:08:07 INFO  Other:50 - second");
+        assertTrue(log4jDecoder.parseInto(line, event));
+        assertSame(message, event.message);
+        assertEquals("second", event.message.value.toString());
+        assertEquals("Other", event.loggerName.value.toString());
+        assertEquals(50, event.locLine.value);
+        assertEquals(1506467287L, event.epochSecond);
+
+        assertFalse(log4jDecoder.parseInto("not a log line", event));
+        assertNull(event.message);
+        assertFalse(event.hasTimestamp);
+    }
+
+    @Test
+    public void parseBytes() {
+        Log4jDecoder log4jDecoder = new Log4jDecoder("%d{yyyy-MM-dd HH:mm:ss} [%t] %-5p %c{1}:%L - %m%n");
+        byte[] line = "xx2017-09-26 23:08:06 [w\u00f6rker] ERROR TestLog:49 - gro\u00dfer Fehler".getBytes(StandardCharsets.UTF_8);
+
+        Log4jLoggingEvent event = log4jDecoder.parse(line, 2, line.length - 2);
+        assertEquals("w\u00f6rker", event.thread.value);
+        assertEquals(21, event.thread.start);
+        assertEquals(28, event.thread.end);
+        assertEquals("ERROR", event.level.value);
+        assertEquals(49, event.locLine.value);
+        assertEquals("gro\u00dfer Fehler", event.message.value);
+        assertEquals(line.length - 2, event.message.end);
+        assertEquals(1506467286000L, event.timestamp.toEpochMilli());
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(line.length);
+        direct.put(line).position(2);
+        event = log4jDecoder.parse(direct);
+        assertEquals("gro\u00dfer Fehler", event.message.value);
+        assertEquals(2, direct.position());
+
+        Log4jLoggingEvent reuse = new Log4jLoggingEvent();
+        assertTrue(log4jDecoder.parseInto(line, 2, line.length - 2, reuse));
+        assertTrue(((TextSlice) reuse.message.value).source() instanceof Utf8Text);
+        assertEquals("gro\u00dfer Fehler", reuse.message.value.toString());
+        assertEquals(1506467286L, reuse.epochSecond);
+        assertFalse(log4jDecoder.parseInto(line, 0, line.length, reuse));
+
+        // widths count chars, so the line is matched decoded and the offsets are converted back
+        log4jDecoder = new Log4jDecoder("%d{yyyy-MM-dd HH:mm:ss} [%-8t] %m%n");
+        line = "2017-09-26 23:08:06 [\u00f6\u00f6\u00f6\ud83d\ude00   ] message".getBytes(StandardCharsets.UTF_8);
+        event = log4jDecoder.parse(line, 0, line.length);
+        assertEquals("\u00f6\u00f6\u00f6\ud83d\ude00", event.thread.value);
+        assertEquals(21, event.thread.start);
+        assertEquals(31, event.thread.end);
+        assertEquals("message", event.message.value);
+        assertEquals(line.length, event.message.end);
+
+        // malformed bytes are decoded to U+FFFD, and the offsets still count the bytes they replaced
+        ByteArrayOutputStream malformed = new ByteArrayOutputStream();
+        malformed.writeBytes("2017-09-26 23:08:06 [".getBytes(StandardCharsets.US_ASCII));
+        malformed.writeBytes(new byte[] {(byte) 0xFF, (byte) 0xC3, (byte) 0xB6, (byte) 0xE2, (byte) 0x82, 'x'});
+        malformed.writeBytes("    ] m".getBytes(StandardCharsets.US_ASCII));
+        malformed.writeBytes(new byte[] {(byte) 0xF0, (byte) 0x9F, '!'});
+        line = malformed.toByteArray();
+        event = log4jDecoder.parse(line, 0, line.length);
+        assertEquals("\ufffd\u00f6\ufffdx", event.thread.value);
+        assertEquals(21, event.thread.start);
+        assertEquals(27, event.thread.end);
+        assertEquals("m\ufffd!", event.message.value);
+        assertEquals(33, event.message.start);
+        assertEquals(line.length, event.message.end);
+    }
+
+    @Test
+    public void decodeBatch() {
+        Log4jDecoder log4jDecoder = new Log4jDecoder("%d{yyyy-MM-dd HH:mm:ss} [%t] %-5p %x %c{1}:%L - %m%n");
+        Log4jEventBatch batch = new Log4jEventBatch(2);
+        var lines = Arrays.asList(
+            "2017-09-26 23:08:06 [main] ERROR [req-1] TestLog:49 - failed",
+            "not an event",
+            "2017-09-26 23:08:07 [worker] INFO   TestLog:50 - done",
+            "2017-09-26 23:08:08 [worker] WARN   TestLog:51 - next batch").iterator();
+
+        assertEquals(2, log4jDecoder.decodeBatch(lines, batch));
+        assertEquals(1506467286L, batch.epochSeconds()[0]);
+        assertEquals(1506467287L, batch.epochSeconds()[1]);
+        assertTrue(batch.hasTimestamp(1));
+        assertEquals(Level.ERROR.code(), batch.levels()[0]);
+        assertEquals(Level.INFO, batch.level(1));
+        assertEquals("main", batch.get(ConversionPatternEl.Type.THREAD, 0));
+        assertEquals("req-1", batch.get(ConversionPatternEl.Type.NDC, 0));
+        assertFalse(batch.has(ConversionPatternEl.Type.NDC, 1));
+        assertNull(batch.get(ConversionPatternEl.Type.NDC, 1));
+        assertEquals("done", batch.get(ConversionPatternEl.Type.MESSAGE, 1));
+        assertEquals("50", batch.get(ConversionPatternEl.Type.LINE, 1));
+        assertEquals("2017-09-26 23:08:07 [worker] INFO   TestLog:50 - done",
+            new String(batch.text(), batch.rowStart(1), batch.rowEnd(1) - batch.rowStart(1)));
+        assertNull(batch.offsets(ConversionPatternEl.Type.MDC));
+
+        assertEquals(1, log4jDecoder.decodeBatch(lines, batch));
+        assertEquals(Level.WARN, batch.level(0));
+        assertEquals("next batch", batch.get(ConversionPatternEl.Type.MESSAGE, 0));
+        assertFalse(batch.has(ConversionPatternEl.Type.NDC, 0));
+        assertEquals(0, log4jDecoder.decodeBatch(lines, batch));
+
+        // every MDC key has a column of its own
+        log4jDecoder = new Log4jDecoder("%d{yyyy-MM-dd HH:mm:ss} user=%X{user} ip=%X{ip} %X - %m%n");
+        lines = Arrays.asList(
+            "2017-09-26 23:08:06 user=bob ip=10.0.0.1 {tx=1} - first",
+            "2017-09-26 23:08:07 user=alice ip= {} - second").iterator();
+        assertEquals(2, log4jDecoder.decodeBatch(lines, batch));
+        assertEquals(List.of("user", "ip"), batch.mdcKeys());
+        assertEquals("bob", batch.getMdc("user", 0));
+        assertEquals("10.0.0.1", batch.getMdc("ip", 0));
+        assertEquals("alice", batch.getMdc("user", 1));
+        assertNull(batch.getMdc("ip", 1));
+        assertEquals("{tx=1}", batch.get(ConversionPatternEl.Type.MDC, 0));
+        assertNull(batch.mdcOffsets("tx"));
+    }
+
+    @Test
+    public void threadSafe() throws Exception {
+        Log4jDecoder shared = Log4jDecoder.builder("%d{HH:mm:ss,SSS} [%t] %-5p %c - %m%n")
+            .defaultTimeZone(ZoneId.of("America/Los_Angeles"))
+            .threadSafe(true)
+            .build();
+        assertTrue(shared.isThreadSafe());
+        assertFalse(shared.copy().isThreadSafe());
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                int thread = t;
+                futures.add(executor.submit(() -> {
+                    Log4jLoggingEvent reuse = new Log4jLoggingEvent();
+                    LocalDate today = LocalDate.now(ZoneId.of("America/Los_Angeles"));
+                    for (int i = 0; i < 2000; i++) {
+                        int second = (i + thread * 7) % 60;
+                        String line = String.format("12:00:%02d,%03d [t-%d] INFO  App - message %d", second, i % 1000, thread, i);
+                        assertTrue(shared.parseInto(line, reuse));
+                        assertEquals("t-" + thread, reuse.thread.value.toString());
+                        assertEquals("message " + i, reuse.message.value.toString());
+                        Instant expected = today.atTime(12, 0, second, i % 1000 * 1_000_000)
+                            .atZone(ZoneId.of("America/Los_Angeles")).toInstant();
+                        assertEquals(expected, reuse.getTimestamp());
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void constructorsAreThreadSafe() throws Exception {
+        Log4jDecoder shared = new Log4jDecoder("%d{yyyy-MM-dd HH:mm:ss,SSS} [%t] %-5p %c - %m%n");
+        assertTrue(shared.isThreadSafe());
+        assertFalse(Log4jDecoder.builder("%m%n").build().isThreadSafe());
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                int thread = t;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 2000; i++) {
+                        String line = String.format("2018-02-28 12:00:%02d,%03d [t-%d] INFO  App - message %d",
+                            i % 60, thread, thread, i);
+                        Log4jLoggingEvent event = shared.parseString(line);
+                        assertEquals("t-" + thread, event.thread.value);
+                        assertEquals("message " + i, event.message.value);
+                        assertEquals(thread, event.timestamp.getNano() / 1_000_000);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void levels() {
+        Log4jDecoder log4jDecoder = new Log4jDecoder("%d{yyyy-MM-dd HH:mm:ss} %-5p %c - %m%n");
+        Log4jLoggingEvent event = new Log4jLoggingEvent();
+
+        assertTrue(log4jDecoder.parseInto("2017-09-26 23:08:06 INFO  App - started", event));
+        assertEquals(Level.INFO, event.logLevel);
+        assertSame(Level.INFO.name(), event.level.value);
+        assertEquals(20, event.level.start);
+        assertEquals(24, event.level.end);
+
+        Log4jLoggingEvent copied = log4jDecoder.parseString("2017-09-26 23:08:06 WARN  App - slow");
+        assertEquals(Level.WARN, copied.logLevel);
+        assertSame(Level.WARN.name(), copied.level.value);
+
+        assertEquals(Level.DEBUG, Level.of("[debug]", 1, 6));
+
+        assertTrue(log4jDecoder.parseInto("2017-09-26 23:08:06 NOTICE App - custom", event));
+        assertEquals(Level.OTHER, event.logLevel);
+        assertEquals("NOTICE", event.level.value.toString());
+
+        assertFalse(log4jDecoder.parseInto("no level", event));
+        assertNull(event.logLevel);
+    }
+
+    @Test
+    public void nameDictionary() {
+        Log4jDecoder log4jDecoder = Log4jDecoder.builder("%d{yyyy-MM-dd HH:mm:ss} [%t] %-5p %c - %m%n")
+            .nameDictionarySize(64)
+            .build();
+        Log4jLoggingEvent first = log4jDecoder.parseString("2017-09-26 23:08:06 [main] INFO  com.example.App - one");
+        Log4jLoggingEvent second = log4jDecoder.parseString("2017-09-26 23:08:07 [main] INFO  com.example.App - two");
+        assertSame(first.thread.value, second.thread.value);
+        assertSame(first.loggerName.value, second.loggerName.value);
+        assertEquals(21, second.thread.start);
+
+        Log4jLoggingEvent reuse = new Log4jLoggingEvent();
+        assertTrue(log4jDecoder.parseInto("2017-09-26 23:08:08 [main] INFO  com.example.App - three", reuse));
+        assertSame(first.loggerName.value, reuse.loggerName.value);
+        assertEquals(log4jDecoder.nameDictionary().id("main", 0, 4),
+            log4jDecoder.nameDictionary().id(reuse.thread.value, 0, reuse.thread.value.length()));
+        assertNull(new Log4jDecoder("%m%n").nameDictionary());
+    }
+
+    @Test
+    public void nameDictionaryWithUtf8Bytes() {
+        Log4jDecoder log4jDecoder = Log4jDecoder.builder("%d{yyyy-MM-dd HH:mm:ss} [%t] %-5p %c - %m %K%n")
+            .nameDictionarySize(64)
+            .build();
+        byte[] line = "2017-09-26 23:08:06 [main] INFO  com.Z\u00e4hler - hi k\u00e9y=v"
+            .getBytes(StandardCharsets.UTF_8);
+        Log4jLoggingEvent first = log4jDecoder.parse(line, 0, line.length);
+        int id = log4jDecoder.nameDictionary().lastId();
+        Log4jLoggingEvent second = log4jDecoder.parse(ByteBuffer.wrap(line));
+        assertEquals("com.Z\u00e4hler", first.loggerName.value);
+        assertSame(first.loggerName.value, second.loggerName.value);
+        assertEquals(id, log4jDecoder.nameDictionary().lastId());
+        assertSame(first.map.keySet().iterator().next(), second.map.keySet().iterator().next());
+
+        Log4jLoggingEvent chars = log4jDecoder.parseString(new String(line, StandardCharsets.UTF_8));
+        assertSame(first.loggerName.value, chars.loggerName.value);
+        assertEquals(id, log4jDecoder.nameDictionary().id("com.Z\u00e4hler", 0, 10));
+    }
+
+    @Test
+    public void projection() {
+        Log4jDecoder log4jDecoder = Log4jDecoder.builder("[%d] [%t] %-5p %c{2}: %m - tx.id=%X{tx.id} mdc=%X%n")
+            .fields(EnumSet.of(ConversionPatternEl.Type.DATE, ConversionPatternEl.Type.LEVEL, ConversionPatternEl.Type.MESSAGE))
+            .build();
+        String line = "[2017-09-26 23:08:06,123] [main] ERROR example.App: failed - tx.id=42 mdc={user=bob, ip=10.0.0.1}";
+        Log4jLoggingEvent event = log4jDecoder.parseString(line);
+        assertEquals(1506467286123L, event.timestamp.toEpochMilli());
+        assertEquals(Level.ERROR, event.logLevel);
+        assertEquals("failed", event.message.value);
+        assertNull(event.thread);
+        assertNull(event.loggerName);
+        assertNull(event.mdc);
+        assertTrue(log4jDecoder.extracts(ConversionPatternEl.Type.MESSAGE));
+        assertFalse(log4jDecoder.extracts(ConversionPatternEl.Type.MDC));
+        // still matched against the whole pattern
+        assertNull(log4jDecoder.parseString("[2017-09-26 23:08:06,123] [main] ERROR example.App: failed"));
+
+        Log4jEventBatch batch = new Log4jEventBatch(4);
+        assertEquals(1, log4jDecoder.decodeBatch(Arrays.asList(line).iterator(), batch));
+        assertEquals("failed", batch.get(ConversionPatternEl.Type.MESSAGE, 0));
+        assertNull(batch.offsets(ConversionPatternEl.Type.THREAD));
+    }
+
+    @Test
+    public void parseLazy() {
+        Log4jDecoder log4jDecoder = new Log4jDecoder("[%d] [%t] %-5p %c{2}: %m - tx.id=%X{tx.id} mdc=%X%n");
+        StringBuilder line = new StringBuilder(
+            "[2017-09-26 23:08:06,123] [main] ERROR example.App: failed - tx.id=42 mdc={user=bob, ip=10.0.0.1}");
+        LazyLog4jEvent event = log4jDecoder.parseLazy(line);
+        assertEquals(Level.ERROR, event.getLogLevel());
+        Entity message = event.getMessage();
+        assertEquals("failed", message.value);
+        assertSame(message, event.getMessage());
+
+        Log4jLoggingEvent extracted = event.toEvent();
+        assertEquals("main", extracted.thread.value);
+        assertEquals("42", extracted.mdc.get("tx.id").value);
+        assertEquals("bob", event.getMdc().get("user").value);
+        assertEquals(1506467286123L, event.getTimestamp().toEpochMilli());
+
+        line.setLength(0);
+        line.append("[2017-09-26 23:08:07,000] [worker] INFO  example.Db: done - tx.id=43 mdc={}");
+        assertTrue(log4jDecoder.parseLazyInto(line, event));
+        assertEquals("worker", event.getThread().value);
+        assertEquals("failed", message.value);
+        assertNull(event.getNdc());
+
+        assertFalse(log4jDecoder.parseLazyInto("not a log line", event));
+        assertNull(event.line());
+        assertNull(event.getMessage());
+        assertNull(log4jDecoder.parseLazy("not a log line"));
+
+        // numbers and maps are parsed on first access too
+        log4jDecoder = new Log4jDecoder("%r [%T] %-5p %C %M(%F:%L) - %m %K%n");
+        event = log4jDecoder.parseLazy(
+            "1500 [17] WARN  com.example.App run(App.java:42) - slow user=bob, ms=1200");
+        assertEquals(42, event.getLocLine().value);
+        assertEquals(17, event.getThreadId().value);
+        assertEquals(1500, event.getRelativeTimestamp().value);
+        assertSame(event.getThreadId(), event.getThreadId());
+        assertEquals("com.example.App", event.getLocClass().value);
+        assertEquals("run", event.getLocMethod().value);
+        assertEquals("App.java", event.getLocFileName().value);
+        Map<String, Entity> map = event.getMap();
+        assertEquals("bob", map.get("user").value);
+        assertEquals("1200", map.get("ms").value);
+        assertSame(map, event.getMap());
+        assertNull(event.getProcessId());
+        assertNull(event.getUuid());
+    }
+
+    @Test
+    public void referenceDate() {
+        Log4jDecoder log4jDecoder = Log4jDecoder.builder("%d{ABSOLUTE} %-5p %m%n")
+            .referenceDate(ReferenceDate.of(LocalDate.of(2018, 2, 28)))
+            .build();
+        assertEquals("2018-02-28T23:59:58.500Z", log4jDecoder.parseString("23:59:58,500 INFO  a").timestamp.toString());
+        // written a little out of order
+        assertEquals("2018-02-28T23:59:57Z", log4jDecoder.parseString("23:59:57,000 INFO  b").timestamp.toString());
+        assertEquals("2018-03-01T00:00:01Z", log4jDecoder.parseString("00:00:01,000 INFO  c").timestamp.toString());
+        assertEquals("2018-03-01T09:00:00Z", log4jDecoder.parseString("09:00:00,000 INFO  d").timestamp.toString());
+
+        log4jDecoder.setReferenceDate(LocalDate.of(2017, 12, 31));
+        assertEquals("2017-12-31T12:00:00Z", log4jDecoder.parseString("12:00:00,000 INFO  e").timestamp.toString());
+        // copies start from the reference date again
+        assertEquals("2018-02-28T01:00:00Z", log4jDecoder.copy().parseString("01:00:00,000 INFO  f").timestamp.toString());
+
+        // the formatter path, here for the zone name
+        log4jDecoder = Log4jDecoder.builder("%d{HH:mm:ss zzz} %m%n")
+            .referenceDate(ReferenceDate.of(LocalDate.of(2018, 7, 8)))
+            .build();
+        assertEquals("2018-07-08T22:00:00Z", log4jDecoder.parseString("15:00:00 PDT a").timestamp.toString());
+        assertEquals("2018-07-09T07:00:00Z", log4jDecoder.parseString("00:00:00 PDT b").timestamp.toString());
+    }
+
+    @Test
+    public void referenceDateAfterQuietNight() {
+        Log4jDecoder log4jDecoder = Log4jDecoder.builder("%d{ABSOLUTE} %-5p %m%n")
+            .referenceDate(ReferenceDate.of(LocalDate.of(2018, 2, 28)))
+            .build();
+        assertEquals("2018-02-28T20:00:00Z", log4jDecoder.parseString("20:00:00,000 INFO  a").timestamp.toString());
+        // only 11.5 hours back, but still the next morning
+        assertEquals("2018-03-01T08:30:00Z", log4jDecoder.parseString("08:30:00,000 INFO  b").timestamp.toString());
+
+        // a clock dates every line, whatever the gap
+        MutableClock clock = new MutableClock(Instant.parse("2018-02-28T20:00:05Z"));
+        log4jDecoder = Log4jDecoder.builder("%d{ABSOLUTE} %-5p %m%n")
+            .referenceDate(ReferenceDate.clock(clock))
+            .build();
+        assertEquals("2018-02-28T20:00:00Z", log4jDecoder.parseString("20:00:00,000 INFO  a").timestamp.toString());
+        clock.instant = Instant.parse("2018-03-02T08:30:10Z");
+        assertEquals("2018-03-02T08:30:00Z", log4jDecoder.parseString("08:30:00,000 INFO  b").timestamp.toString());
+        clock.instant = Instant.parse("2018-03-03T00:00:02Z");
+        assertEquals("2018-03-03T00:00:01Z", log4jDecoder.parseString("00:00:01,000 INFO  c").timestamp.toString());
+    }
+
+    private static final class MutableClock extends Clock {
+        Instant instant;
+
+        MutableClock(Instant instant) {
+            this.instant = instant;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+}
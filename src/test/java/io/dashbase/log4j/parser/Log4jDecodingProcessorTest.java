@@ -0,0 +1,291 @@
+package io.dashbase.log4j.parser;
+
+import io.dashbase.log4j.model.Log4jLoggingEvent;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class Log4jDecodingProcessorTest {
+    private static final String PATTERN = "%d{DEFAULT} [%t] %-5p %c - %m%n";
+
+    private static final String LOG = "orphan line\n"
+        + "2018-02-28 12:00:00,001 [main] INFO  com.example.App - started \u00e9t\u00e9\n"
+        + "2018-02-28 12:00:00,002 [main] ERROR com.example.App - request failed\r\n"
+        + "java.lang.IllegalStateException: boom\r\n"
+        + "\tat com.example.App.main(App.java:5)\r\n"
+        + "2018-02-28 12:00:01,000 [worker-1] WARN  com.example.Db - slow query\n"
+        + "2018-02-28 12:00:02,000 [worker-1] DEBUG com.example.Db - done";
+
+    @Test
+    public void decodesLinesInBatches() throws Exception {
+        Log4jDecodingProcessor<CharSequence> processor = Log4jDecodingProcessor.builder(new Log4jDecoder(PATTERN))
+            .batchSize(3)
+            .linger(Duration.ofMinutes(1))
+            .forLines();
+        CollectingSubscriber subscriber = new CollectingSubscriber(Long.MAX_VALUE);
+        processor.subscribe(subscriber);
+        try (SubmissionPublisher<String> publisher = new SubmissionPublisher<>()) {
+            publisher.subscribe(processor);
+            for (String line : LOG.split("\r?\n")) {
+                publisher.submit(line);
+            }
+        }
+        assertTrue(subscriber.done.await(10, TimeUnit.SECONDS));
+        assertNull(subscriber.error);
+        assertEquals(2, subscriber.batches.size());
+        assertEquals(3, subscriber.batches.get(0).size());
+        assertEquals(1, subscriber.batches.get(1).size());
+        assertEvents(subscriber.events());
+        assertEquals(1, processor.skippedLines());
+    }
+
+    @Test
+    public void splitsByteChunks() throws Exception {
+        byte[] bytes = LOG.getBytes(StandardCharsets.UTF_8);
+        // every chunk size splits lines, "\r\n" and the two-byte chars somewhere
+        for (int chunkSize = 1; chunkSize < 12; chunkSize++) {
+            Log4jDecodingProcessor<ByteBuffer> processor = Log4jDecodingProcessor.builder(new Log4jDecoder(PATTERN))
+                .linger(Duration.ofMinutes(1))
+                .forChunks(StandardCharsets.UTF_8);
+            CollectingSubscriber subscriber = new CollectingSubscriber(Long.MAX_VALUE);
+            processor.subscribe(subscriber);
+            try (SubmissionPublisher<ByteBuffer> publisher = new SubmissionPublisher<>()) {
+                publisher.subscribe(processor);
+                for (int i = 0; i < bytes.length; i += chunkSize) {
+                    publisher.submit(ByteBuffer.wrap(bytes, i, Math.min(chunkSize, bytes.length - i)));
+                }
+            }
+            assertTrue(subscriber.done.await(10, TimeUnit.SECONDS));
+            assertNull(subscriber.error);
+            assertEvents(subscriber.events());
+        }
+    }
+
+    @Test
+    public void capsChunkLinesInChars() throws Exception {
+        String prefix = "2018-02-28 12:00:00,001 [main] INFO  com.example.App - ";
+        byte[] bytes = (prefix + "started \u00e9t\u00e9\n" + prefix + "done\n").getBytes(StandardCharsets.UTF_8);
+        Log4jDecodingProcessor<ByteBuffer> processor = Log4jDecodingProcessor.builder(new Log4jDecoder(PATTERN))
+            .maxEventSize(prefix.length() + 10)
+            .linger(Duration.ofMinutes(1))
+            .forChunks(StandardCharsets.UTF_8);
+        CollectingSubscriber subscriber = new CollectingSubscriber(Long.MAX_VALUE);
+        processor.subscribe(subscriber);
+        try (SubmissionPublisher<ByteBuffer> publisher = new SubmissionPublisher<>()) {
+            publisher.subscribe(processor);
+            publisher.submit(ByteBuffer.wrap(bytes));
+        }
+        assertTrue(subscriber.done.await(10, TimeUnit.SECONDS));
+        List<Log4jLoggingEvent> events = subscriber.events();
+        assertEquals(2, events.size());
+        // ten chars, one more than fits in ten bytes
+        assertEquals("started \u00e9t", events.get(0).message.value);
+        assertEquals("done", events.get(1).message.value);
+        assertEquals(1, processor.truncatedLines());
+        assertEquals(0, processor.droppedLines());
+    }
+
+    @Test
+    public void honorsBackpressure() throws Exception {
+        Log4jDecodingProcessor<CharSequence> processor = Log4jDecodingProcessor.builder(new Log4jDecoder(PATTERN))
+            .batchSize(10)
+            .prefetch(16)
+            .linger(Duration.ofMinutes(1))
+            .forLines();
+        CollectingSubscriber subscriber = new CollectingSubscriber(1);
+        processor.subscribe(subscriber);
+        LinePublisher publisher = new LinePublisher(1000);
+        publisher.subscribe(processor);
+
+        // one batch is delivered, two more wait, and the publisher is paused
+        assertEquals(1, subscriber.batches.size());
+        assertTrue(publisher.requested.get() < 50);
+
+        subscriber.subscription.request(Long.MAX_VALUE);
+        assertTrue(subscriber.done.await(10, TimeUnit.SECONDS));
+        assertEquals(100, subscriber.batches.size());
+        List<Log4jLoggingEvent> events = subscriber.events();
+        assertEquals(1000, events.size());
+        assertEquals("line 999", events.get(999).message.value);
+    }
+
+    @Test
+    public void publishesPartialBatchesAfterLinger() throws Exception {
+        Log4jDecodingProcessor<CharSequence> processor = Log4jDecodingProcessor.builder(new Log4jDecoder(PATTERN))
+            .linger(Duration.ofMillis(20))
+            .forLines();
+        CollectingSubscriber subscriber = new CollectingSubscriber(Long.MAX_VALUE);
+        processor.subscribe(subscriber);
+        SubmissionPublisher<String> publisher = new SubmissionPublisher<>();
+        publisher.subscribe(processor);
+        publisher.submit("2018-02-28 12:00:00,001 [main] INFO  com.example.App - started");
+
+        assertTrue(subscriber.received.await(10, TimeUnit.SECONDS));
+        assertEquals("started", subscriber.events().get(0).message.value);
+        publisher.close();
+        assertTrue(subscriber.done.await(10, TimeUnit.SECONDS));
+        assertEquals(1, subscriber.events().size());
+    }
+
+    @Test
+    public void keepsOpenEventWhileLinesArrive() throws Exception {
+        Log4jDecodingProcessor<CharSequence> processor = Log4jDecodingProcessor.builder(new Log4jDecoder(PATTERN))
+            .linger(Duration.ofMillis(200))
+            .forLines();
+        CollectingSubscriber subscriber = new CollectingSubscriber(Long.MAX_VALUE);
+        processor.subscribe(subscriber);
+        SubmissionPublisher<String> publisher = new SubmissionPublisher<>();
+        publisher.subscribe(processor);
+        publisher.submit("2018-02-28 12:00:00,001 [main] INFO  com.example.App - started");
+        publisher.submit("2018-02-28 12:00:00,002 [main] ERROR com.example.App - request failed");
+        publisher.submit("java.lang.IllegalStateException: boom");
+
+        // trace lines keep arriving for longer than the linger time
+        for (int i = 0; i < 10; i++) {
+            Thread.sleep(50);
+            publisher.submit("\tat com.example.App.frame" + i + "(App.java:" + i + ")");
+        }
+        // only the completed event was published
+        assertTrue(subscriber.received.await(10, TimeUnit.SECONDS));
+        assertEquals(1, subscriber.events().size());
+        publisher.close();
+
+        assertTrue(subscriber.done.await(10, TimeUnit.SECONDS));
+        List<Log4jLoggingEvent> events = subscriber.events();
+        assertEquals(2, events.size());
+        assertTrue(events.get(1).throwableTrace.value.toString().endsWith("\tat com.example.App.frame9(App.java:9)"));
+        assertEquals(0, processor.skippedLines());
+    }
+
+    @Test
+    public void failsOnUndecodableLines() throws Exception {
+        Log4jDecodingProcessor<CharSequence> processor = Log4jDecodingProcessor.builder(new Log4jDecoder(PATTERN))
+            .linger(Duration.ZERO)
+            .forLines();
+        CollectingSubscriber subscriber = new CollectingSubscriber(Long.MAX_VALUE);
+        processor.subscribe(subscriber);
+        LinePublisher publisher = new LinePublisher(3);
+        publisher.invalidLine = 2;
+        publisher.subscribe(processor);
+
+        assertTrue(subscriber.done.await(10, TimeUnit.SECONDS));
+        assertEquals(2, subscriber.events().size());
+        assertTrue(subscriber.error instanceof RuntimeException);
+        assertTrue(publisher.cancelled);
+    }
+
+    private static void assertEvents(List<Log4jLoggingEvent> events) {
+        assertEquals(4, events.size());
+        assertEquals("started \u00e9t\u00e9", events.get(0).message.value);
+        assertEquals("request failed", events.get(1).message.value);
+        assertEquals("java.lang.IllegalStateException: boom\n\tat com.example.App.main(App.java:5)",
+            events.get(1).throwableTrace.value);
+        assertEquals("worker-1", events.get(2).thread.value);
+        assertEquals("done", events.get(3).message.value);
+        assertEquals(1519819202000L, events.get(3).timestamp.toEpochMilli());
+    }
+
+    private static final class CollectingSubscriber implements Flow.Subscriber<List<Log4jLoggingEvent>> {
+        private final long initialRequest;
+        final List<List<Log4jLoggingEvent>> batches = Collections.synchronizedList(new ArrayList<>());
+        final CountDownLatch received = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(1);
+        volatile Flow.Subscription subscription;
+        volatile Throwable error;
+
+        CollectingSubscriber(long initialRequest) {
+            this.initialRequest = initialRequest;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(initialRequest);
+        }
+
+        @Override
+        public void onNext(List<Log4jLoggingEvent> batch) {
+            batches.add(batch);
+            received.countDown();
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+            done.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            done.countDown();
+        }
+
+        List<Log4jLoggingEvent> events() {
+            List<Log4jLoggingEvent> events = new ArrayList<>();
+            synchronized (batches) {
+                batches.forEach(events::addAll);
+            }
+            return events;
+        }
+    }
+
+    /**
+     * Publishes numbered log lines on the requesting thread, as many as requested.
+     */
+    private static final class LinePublisher implements Flow.Publisher<CharSequence> {
+        private final int lines;
+        final AtomicLong requested = new AtomicLong();
+        int invalidLine = -1;
+        volatile boolean cancelled;
+
+        LinePublisher(int lines) {
+            this.lines = lines;
+        }
+
+        @Override
+        public void subscribe(Flow.Subscriber<? super CharSequence> subscriber) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                private int next;
+                private boolean emitting;
+
+                @Override
+                public void request(long n) {
+                    requested.addAndGet(n);
+                    if (emitting) {
+                        return;
+                    }
+                    emitting = true;
+                    while (!cancelled && next < lines && next < requested.get()) {
+                        int i = next++;
+                        String date = i == invalidLine ? "2018-13-28" : "2018-02-28";
+                        subscriber.onNext(date + " 12:00:00,000 [main] INFO  com.example.App - line " + i);
+                    }
+                    if (!cancelled && next == lines) {
+                        next++;
+                        subscriber.onComplete();
+                    }
+                    emitting = false;
+                }
+
+                @Override
+                public void cancel() {
+                    cancelled = true;
+                }
+            });
+        }
+    }
+}
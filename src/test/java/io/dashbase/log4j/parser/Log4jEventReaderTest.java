@@ -0,0 +1,149 @@
+package io.dashbase.log4j.parser;
+
+import io.dashbase.log4j.model.ConversionPatternEl;
+import io.dashbase.log4j.model.Log4jLoggingEvent;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class Log4jEventReaderTest {
+    private static final String PATTERN = "%d{DEFAULT} [%t] %-5p %c - %m%n";
+
+    private static final String LOG = "orphan line\n"
+        + "2018-02-28 12:00:00,001 [main] INFO  com.example.App - started\n"
+        + "2018-02-28 12:00:00,002 [main] ERROR com.example.App - request failed\r\n"
+        + "  while handling /index\r\n"
+        + "java.lang.IllegalStateException: boom\r\n"
+        + "\tat com.example.App.handle(App.java:12)\r\n"
+        + "\tat com.example.App.main(App.java:5)\r\n"
+        + "Caused by: java.io.IOException: closed\r\n"
+        + "\t... 2 more\r\n"
+        + "2018-02-28 12:00:01,000 [worker-1] WARN  com.example.Db - slow query\n"
+        + "java.lang.OutOfMemoryError\n"
+        + "2018-02-28 12:00:02,000 [worker-1] DEBUG com.example.Db - done";
+
+    @Test
+    public void assemblesContinuationLines() throws IOException {
+        Log4jEventReader reader = new Log4jEventReader(new Log4jDecoder(PATTERN), new StringReader(LOG));
+
+        Log4jLoggingEvent event = reader.read();
+        assertEquals("started", event.message.value);
+        assertNull(event.throwableTrace);
+
+        event = reader.read();
+        assertEquals("ERROR", event.level.value);
+        assertEquals("request failed\n  while handling /index", event.message.value);
+        assertEquals("java.lang.IllegalStateException: boom\n"
+            + "\tat com.example.App.handle(App.java:12)\n"
+            + "\tat com.example.App.main(App.java:5)\n"
+            + "Caused by: java.io.IOException: closed\n"
+            + "\t... 2 more", event.throwableTrace.value);
+
+        event = reader.read();
+        assertEquals("slow query", event.message.value);
+        assertEquals("java.lang.OutOfMemoryError", event.throwableTrace.value);
+
+        event = reader.read();
+        assertEquals("done", event.message.value);
+        assertEquals(1519819202000L, event.timestamp.toEpochMilli());
+
+        assertNull(reader.read());
+        assertEquals(1, reader.skippedLines());
+        assertEquals(0, reader.droppedLines());
+    }
+
+    @Test
+    public void readInto() throws IOException {
+        Log4jEventReader reader = new Log4jEventReader(new Log4jDecoder(PATTERN),
+            new ByteArrayInputStream(LOG.getBytes(StandardCharsets.UTF_8)), StandardCharsets.UTF_8);
+        Log4jLoggingEvent event = new Log4jLoggingEvent();
+        assertTrue(reader.readInto(event));
+        assertTrue(reader.readInto(event));
+        assertEquals("request failed\n  while handling /index", event.message.value.toString());
+        assertTrue(event.throwableTrace.value.toString().endsWith("\t... 2 more"));
+        assertEquals(1519819200L, event.epochSecond);
+        assertEquals(2_000_000, event.nanoOfSecond);
+        assertTrue(reader.readInto(event));
+        assertTrue(reader.readInto(event));
+        assertFalse(reader.readInto(event));
+    }
+
+    @Test
+    public void stream() {
+        Log4jEventReader reader = new Log4jEventReader(new Log4jDecoder(PATTERN),
+            Channels.newChannel(new ByteArrayInputStream(LOG.getBytes(StandardCharsets.UTF_8))), StandardCharsets.UTF_8);
+        List<String> threads = reader.stream().map(event -> event.thread.value.toString()).collect(Collectors.toList());
+        assertEquals(List.of("main", "main", "worker-1", "worker-1"), threads);
+    }
+
+    @Test
+    public void maxEventSize() throws IOException {
+        Log4jEventReader reader = new Log4jEventReader(new Log4jDecoder(PATTERN), new StringReader(LOG), 80);
+        reader.read();
+        Log4jLoggingEvent event = reader.read();
+        assertEquals("request failed", event.message.value);
+        assertNull(event.throwableTrace);
+        event = reader.read();
+        assertEquals("slow query", event.message.value);
+        assertNull(event.throwableTrace);
+        assertEquals(7, reader.droppedLines());
+    }
+
+    @Test
+    public void messageFollowedByFields() throws IOException {
+        Log4jDecoder decoder = new Log4jDecoder("%d{DEFAULT} %m [%t]%n");
+        Log4jEventReader reader = new Log4jEventReader(decoder, new StringReader(
+            "2018-02-28 12:00:00,001 failed [main]\nsecond line\njava.lang.Error\n"));
+        Log4jLoggingEvent event = reader.read();
+        assertEquals("failed", event.message.value);
+        assertEquals("second line\njava.lang.Error", event.throwableTrace.value);
+    }
+
+    @Test
+    public void stackTraceLines() {
+        assertTrue(isStackTraceLine("java.lang.IllegalStateException: boom"));
+        assertTrue(isStackTraceLine("com.example.Outer$InnerError"));
+        assertTrue(isStackTraceLine("    at com.example.App.main(App.java:5)"));
+        assertTrue(isStackTraceLine("\tSuppressed: java.io.IOException"));
+        assertFalse(isStackTraceLine("Exception in request"));
+        assertFalse(isStackTraceLine("  while handling /index"));
+        assertFalse(isStackTraceLine(""));
+        assertFalse(isStackTraceLine("a.b"));
+    }
+
+    private static boolean isStackTraceLine(String line) {
+        return EventAssembler.isStackTraceLine(line, 0, line.length());
+    }
+
+    @Test
+    public void leavesOutFieldsNotExtracted() throws IOException {
+        Log4jDecoder decoder = Log4jDecoder.builder(PATTERN)
+            .fields(EnumSet.of(ConversionPatternEl.Type.LEVEL, ConversionPatternEl.Type.MESSAGE))
+            .build();
+        Log4jEventReader reader = new Log4jEventReader(decoder, new StringReader(LOG));
+        reader.read();
+        Log4jLoggingEvent event = reader.read();
+        assertEquals("request failed\n  while handling /index", event.message.value);
+        assertNull(event.throwableTrace);
+        assertNull(event.thread);
+
+        decoder = Log4jDecoder.builder(PATTERN).fields(EnumSet.of(ConversionPatternEl.Type.EXCEPTION)).build();
+        reader = new Log4jEventReader(decoder, new StringReader(LOG));
+        reader.read();
+        event = reader.read();
+        assertNull(event.message);
+        assertTrue(event.throwableTrace.value.toString().startsWith("java.lang.IllegalStateException: boom\n"));
+    }
+}
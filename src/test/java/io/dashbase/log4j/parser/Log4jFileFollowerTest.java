@@ -0,0 +1,158 @@
+package io.dashbase.log4j.parser;
+
+import io.dashbase.log4j.model.Log4jLoggingEvent;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class Log4jFileFollowerTest {
+    private static final String PATTERN = "%d{DEFAULT} [%t] %-5p %c - %m%n";
+
+    private Path directory;
+    private Path file;
+    private Path checkpoint;
+    private final List<Log4jLoggingEvent> events = new ArrayList<>();
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("follower");
+        file = directory.resolve("app.log");
+        checkpoint = directory.resolve("app.checkpoint");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path path : files.collect(Collectors.toList())) {
+                Files.delete(path);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    @Test
+    public void followsAppendedEvents() throws IOException {
+        try (Log4jFileFollower follower = follower(Duration.ofHours(1))) {
+            // the file does not exist yet
+            assertEquals(0, follower.poll(events::add));
+            assertNull(follower.checkpoint());
+
+            append(line(1) + line(2) + "2018-02-28 12:00:03,000 [main] INFO  com.example.App - mes");
+            assertEquals(1, follower.poll(events::add));
+            assertEquals("message 1", events.get(0).message.value);
+
+            // the partial line is complete, and the second event gets a stack trace
+            append("sage 3\n" + line(4).replace("message 4\n", "message 4\r\n")
+                + "java.lang.IllegalStateException: boom\r\n\tat com.example.App.main(App.java:5)\r\n");
+            assertEquals(2, follower.poll(events::add));
+            assertEquals("message 2", events.get(1).message.value);
+            assertEquals("message 3", events.get(2).message.value);
+            assertEquals(0, follower.poll(events::add));
+        }
+        try (Log4jFileFollower follower = follower(Duration.ZERO)) {
+            // resumes at the event that was not passed on
+            assertEquals(1, follower.poll(events::add));
+            assertEquals("message 4", events.get(3).message.value);
+            assertEquals("java.lang.IllegalStateException: boom\n\tat com.example.App.main(App.java:5)",
+                events.get(3).throwableTrace.value);
+            assertEquals(Files.size(file), follower.checkpoint().offset());
+            assertEquals(events.get(3).timestamp, follower.checkpoint().timestamp());
+        }
+        assertEquals(4, events.size());
+    }
+
+    @Test
+    public void followsRotatedFiles() throws IOException {
+        try (Log4jFileFollower follower = follower(Duration.ofHours(1))) {
+            append(line(1) + line(2));
+            assertEquals(1, follower.poll(events::add));
+
+            // renamed away, with a last line written to the old file
+            Path rotated = directory.resolve("app.log.1");
+            Files.move(file, rotated);
+            Files.writeString(rotated, line(3), StandardOpenOption.APPEND);
+            assertEquals(1, follower.poll(events::add));
+            append(line(4) + line(5));
+            assertEquals(2, follower.poll(events::add));
+            assertEquals(1, follower.rotations());
+
+            // truncated in place, the last event of the old content is passed on
+            Files.writeString(file, line(6), StandardOpenOption.TRUNCATE_EXISTING);
+            assertEquals(1, follower.poll(events::add));
+            assertEquals(2, follower.rotations());
+            append(line(7));
+            assertEquals(1, follower.poll(events::add));
+        }
+        assertMessages(1, 2, 3, 4, 5, 6);
+    }
+
+    @Test
+    public void resumesInFileRotatedWhileStopped() throws IOException {
+        try (Log4jFileFollower follower = follower(Duration.ofHours(1))) {
+            append(line(1) + line(2));
+            assertEquals(1, follower.poll(events::add));
+        }
+        Path rotated = directory.resolve("app.log.1");
+        Files.move(file, rotated);
+        Files.writeString(rotated, line(3), StandardOpenOption.APPEND);
+        append(line(4) + line(5));
+
+        try (Log4jFileFollower follower = follower(Duration.ofHours(1))) {
+            assertEquals(3, follower.poll(events::add));
+            assertEquals(1, follower.rotations());
+        }
+        assertMessages(1, 2, 3, 4);
+    }
+
+    @Test
+    public void capsEventsInChars() throws IOException {
+        String prefix = "2018-02-28 12:00:01,000 [main] INFO  com.example.App - ";
+        try (Log4jFileFollower follower = Log4jFileFollower.builder(new Log4jDecoder(PATTERN), file)
+            .maxEventSize(prefix.length() + 5)
+            .idleFlush(Duration.ZERO)
+            .build()) {
+            // five two-byte chars fit although their bytes do not, the sixth is cut at a char boundary
+            append(prefix + "\u00e9\u00e9\u00e9\u00e9\u00e9\n" + prefix + "\u00e8\u00e8\u00e8\u00e8\u00e8\u00e8\u00e8\n");
+            assertEquals(2, follower.poll(events::add));
+            assertEquals("\u00e9\u00e9\u00e9\u00e9\u00e9", events.get(0).message.value);
+            assertEquals("\u00e8\u00e8\u00e8\u00e8\u00e8", events.get(1).message.value);
+            assertEquals(1, follower.truncatedLines());
+            assertEquals(0, follower.droppedLines());
+        }
+    }
+
+    private Log4jFileFollower follower(Duration idleFlush) {
+        return Log4jFileFollower.builder(new Log4jDecoder(PATTERN), file)
+            .checkpointFile(checkpoint)
+            .idleFlush(idleFlush)
+            .build();
+    }
+
+    private void append(String text) throws IOException {
+        Files.writeString(file, text, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    private static String line(int i) {
+        return "2018-02-28 12:00:0" + i + ",000 [main] INFO  com.example.App - message " + i + "\n";
+    }
+
+    private void assertMessages(int... expected) {
+        assertEquals(expected.length, events.size());
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals("message " + expected[i], events.get(i).message.value);
+        }
+    }
+}
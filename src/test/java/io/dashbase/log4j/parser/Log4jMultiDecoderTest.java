@@ -0,0 +1,56 @@
+package io.dashbase.log4j.parser;
+
+import io.dashbase.log4j.model.Level;
+import io.dashbase.log4j.model.Log4jLoggingEvent;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class Log4jMultiDecoderTest {
+
+    @Test
+    public void routesToTheMatchingPattern() {
+        Log4jMultiDecoder decoder = new Log4jMultiDecoder(List.of(
+            "%d{DEFAULT} [%t] %-5p %c - %m%n",
+            "[%d{ISO8601}] %p %c{1}:%L - %m%n",
+            "%-5p %d{ABSOLUTE} %m%n",
+            "%d{DATE} %m%n"));
+
+        Log4jLoggingEvent event = decoder.parseString("2018-02-28 12:00:00,001 [main] INFO  com.example.App - started");
+        assertEquals(0, decoder.matchedPattern());
+        assertEquals("started", event.message.value);
+        assertEquals("main", event.thread.value);
+
+        event = decoder.parseString("[2018-02-28T12:00:00,002] WARN App:12 - slow");
+        assertEquals(1, decoder.matchedPattern());
+        assertEquals(12, event.locLine.value);
+        assertEquals("slow", event.message.value);
+
+        Log4jLoggingEvent reuse = new Log4jLoggingEvent();
+        assertTrue(decoder.parseInto("ERROR 12:00:00,003 failed", reuse));
+        assertEquals(2, decoder.matchedPattern());
+        assertEquals(Level.ERROR, reuse.logLevel);
+        assertEquals("failed", reuse.message.value.toString());
+
+        assertTrue(decoder.parseInto("28 Feb 2018 12:00:00,004 dated", reuse));
+        assertEquals(3, decoder.matchedPattern());
+        assertEquals(1519819200004L, reuse.getTimestamp().toEpochMilli());
+
+        // the last matched pattern is tried first, and others still match after it
+        assertTrue(decoder.parseInto("2018-02-28 12:00:01,000 [worker] DEBUG com.example.Db - query", reuse));
+        assertEquals(0, decoder.matchedPattern());
+        assertTrue(decoder.parseInto("2018-02-28 12:00:01,001 [worker] DEBUG com.example.Db - again", reuse));
+        assertEquals(0, decoder.matchedPattern());
+
+        assertFalse(decoder.parseInto("\tat com.example.App.main(App.java:5)", reuse));
+        assertEquals(-1, decoder.matchedPattern());
+        assertNull(reuse.message);
+        assertNull(decoder.parseString(""));
+        assertEquals("%d{DATE} %m%n", decoder.conversionPatterns().get(3));
+    }
+}
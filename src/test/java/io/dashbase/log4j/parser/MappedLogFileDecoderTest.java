@@ -0,0 +1,138 @@
+package io.dashbase.log4j.parser;
+
+import io.dashbase.log4j.model.Latin1Text;
+import io.dashbase.log4j.model.Log4jLoggingEvent;
+import io.dashbase.log4j.model.TextSlice;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class MappedLogFileDecoderTest {
+    private static final String PATTERN = "%d{DEFAULT} [%t] %-5p %c - %m%n";
+
+    private Path file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = Files.createTempFile("mapped", ".log");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public void readsEvents() throws IOException {
+        String log = "orphan line\n"
+            + "2018-02-28 12:00:00,001 [main] INFO  com.example.App - started\n"
+            + "2018-02-28 12:00:00,002 [main] ERROR com.example.App - request failed\r\n"
+            + "  while handling /index\r\n"
+            + "java.lang.IllegalStateException: boom\r\n"
+            + "\tat com.example.App.main(App.java:5)\r\n"
+            + "2018-02-28 12:00:01,000 [worker-1] WARN  com.example.Db - slow query\n";
+        Files.write(file, log.getBytes(StandardCharsets.US_ASCII));
+
+        try (MappedLogFileDecoder decoder = new MappedLogFileDecoder(new Log4jDecoder(PATTERN), file)) {
+            Log4jLoggingEvent event = new Log4jLoggingEvent();
+            assertTrue(decoder.readInto(event));
+            assertEquals("started", event.message.value.toString());
+            assertTrue(((TextSlice) event.message.value).source() instanceof Latin1Text);
+            assertEquals(12, decoder.eventOffset());
+            assertEquals("started", log.substring((int) decoder.eventOffset() + event.message.start,
+                (int) decoder.eventOffset() + event.message.end));
+
+            assertTrue(decoder.readInto(event));
+            assertEquals("request failed\r\n  while handling /index", event.message.value.toString());
+            assertEquals("java.lang.IllegalStateException: boom\r\n\tat com.example.App.main(App.java:5)",
+                event.throwableTrace.value.toString());
+            assertEquals(1519819200L, event.epochSecond);
+
+            assertTrue(decoder.readInto(event));
+            assertEquals("slow query", event.message.value.toString());
+            assertNull(event.throwableTrace);
+            assertFalse(decoder.readInto(event));
+            assertEquals(1, decoder.skippedLines());
+        }
+    }
+
+    @Test
+    public void decodesNonAsciiEvents() throws IOException {
+        // U+00C5 is encoded as C3 85, and 0x85 read as a char would end the line for the pattern
+        String log = "2018-02-28 12:00:00,001 [main] INFO  com.example.App - gr\u00fc\u00dfe \u00c5\n"
+            + "java.lang.IllegalStateException: \u00e9\n"
+            + "2018-02-28 12:00:00,002 [main] INFO  com.example.App - plain\n";
+        Files.write(file, log.getBytes(StandardCharsets.UTF_8));
+
+        try (MappedLogFileDecoder decoder = new MappedLogFileDecoder(new Log4jDecoder(PATTERN), file)) {
+            Log4jLoggingEvent event = new Log4jLoggingEvent();
+            assertTrue(decoder.readInto(event));
+            assertEquals("gr\u00fc\u00dfe \u00c5", event.message.value.toString());
+            // byte offsets, like those of ASCII events
+            assertEquals(55, event.message.start);
+            assertEquals(65, event.message.end);
+            assertEquals("java.lang.IllegalStateException: \u00e9", event.throwableTrace.value.toString());
+            assertEquals(0, decoder.eventOffset());
+            assertTrue(decoder.readInto(event));
+            assertEquals("plain", event.message.value.toString());
+            assertEquals(55, event.message.start);
+            assertFalse(decoder.readInto(event));
+        }
+        try (MappedLogFileDecoder decoder = new MappedLogFileDecoder(new Log4jDecoder(PATTERN), file)) {
+            Log4jLoggingEvent event = decoder.read();
+            assertEquals("gr\u00fc\u00dfe \u00c5", event.message.value);
+            assertEquals(65, event.message.end);
+        }
+
+        // literals of the pattern are matched on the decoded line
+        Files.write(file, "2018-02-28 12:00:00,001 \u00b7 started\n".getBytes(StandardCharsets.UTF_8));
+        try (MappedLogFileDecoder decoder = new MappedLogFileDecoder(new Log4jDecoder("%d{DEFAULT} \u00b7 %m%n"), file)) {
+            Log4jLoggingEvent event = new Log4jLoggingEvent();
+            assertTrue(decoder.readInto(event));
+            assertEquals("started", event.message.value.toString());
+            assertEquals(27, event.message.start);
+        }
+    }
+
+    @Test
+    public void sameAsReaderAcrossWindows() throws IOException {
+        StringBuilder log = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            log.append(String.format("2018-02-28 12:%02d:%02d,%03d [t-%d] INFO  com.example.App - message %d%n",
+                i / 60 % 60, i % 60, i, i % 7, i));
+            for (int j = 0; j < i % 4; j++) {
+                log.append(j == 1 ? "java.lang.RuntimeException: line " + j : "\tat line " + j).append('\n');
+            }
+        }
+        Files.write(file, log.toString().getBytes(StandardCharsets.US_ASCII));
+
+        Log4jEventReader reader = new Log4jEventReader(new Log4jDecoder(PATTERN), new StringReader(log.toString()), 100);
+        try (MappedLogFileDecoder decoder = new MappedLogFileDecoder(new Log4jDecoder(PATTERN), file,
+            StandardCharsets.US_ASCII, 100, 512)) {
+            Log4jLoggingEvent event = new Log4jLoggingEvent();
+            int count = 0;
+            while (decoder.readInto(event)) {
+                Log4jLoggingEvent expected = reader.read();
+                assertEquals(expected.timestamp, event.getTimestamp());
+                assertEquals(expected.thread.value, event.thread.value.toString());
+                assertEquals(expected.message.value, event.message.value.toString());
+                assertEquals(String.valueOf(expected.throwableTrace), String.valueOf(event.throwableTrace));
+                count++;
+            }
+            assertEquals(500, count);
+            assertNull(reader.read());
+            assertEquals(reader.droppedLines(), decoder.droppedLines());
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package io.dashbase.log4j.parser;
+
+import io.dashbase.log4j.model.Log4jLoggingEvent;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+
+public class ParallelLogFileDecoderTest {
+    private static final String PATTERN = "%d{DEFAULT} [%t] %-5p %c - %m%n";
+
+    private Path file;
+    private ForkJoinPool pool;
+
+    @Before
+    public void setUp() throws IOException {
+        file = Files.createTempFile("parallel", ".log");
+        pool = new ForkJoinPool(4);
+        StringBuilder log = new StringBuilder("orphan line\n");
+        for (int i = 0; i < 1000; i++) {
+            log.append(String.format("2018-02-28 12:%02d:%02d,%03d [t-%d] INFO  com.example.App - message %d",
+                i / 60 % 60, i % 60, i, i % 7, i)).append(i % 3 == 0 ? "\r\n" : "\n");
+            for (int j = 0; j < i % 4; j++) {
+                log.append(j == 1 ? "java.lang.RuntimeException: line " + j : "\tat line " + j).append('\n');
+            }
+        }
+        Files.write(file, log.toString().getBytes(StandardCharsets.US_ASCII));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        pool.shutdown();
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public void sameAsSequential() throws IOException {
+        List<Log4jLoggingEvent> expected = new ArrayList<>();
+        try (MappedLogFileDecoder decoder = new MappedLogFileDecoder(new Log4jDecoder(PATTERN), file)) {
+            Log4jLoggingEvent event;
+            while ((event = decoder.read()) != null) {
+                expected.add(event);
+            }
+        }
+        assertEquals(1000, expected.size());
+
+        // chunk sizes that split lines, line breaks and events
+        for (long chunkSize : new long[]{1, 37, 97, 1000, 1 << 20}) {
+            List<Log4jLoggingEvent> events = new ArrayList<>();
+            long count = new ParallelLogFileDecoder(() -> new Log4jDecoder(PATTERN))
+                .pool(pool)
+                .chunkSize(chunkSize)
+                .maxChunksInFlight(3)
+                .decode(file, events::add);
+            assertEquals(1000, count);
+            assertSame(expected, events);
+        }
+    }
+
+    @Test
+    public void unordered() throws IOException {
+        List<Log4jLoggingEvent> events = new ArrayList<>();
+        new ParallelLogFileDecoder(new Log4jDecoder(PATTERN))
+            .pool(pool)
+            .chunkSize(101)
+            .unordered()
+            .decode(file, events::add);
+        assertEquals(1000, events.size());
+        events.sort(Comparator.comparing(Log4jLoggingEvent::getTimestamp));
+        for (int i = 0; i < events.size(); i++) {
+            assertEquals("message " + i, events.get(i).message.value);
+        }
+    }
+
+    @Test
+    public void timeOnlyTimestampsPerChunk() throws IOException {
+        Path timeOnly = Files.createTempFile("parallel", ".log");
+        try {
+            StringBuilder log = new StringBuilder();
+            for (int i = 0; i < 200; i++) {
+                log.append(String.format("%02d:%02d:00,000 INFO  message %d%n", i / 12, i % 12 * 5, i));
+            }
+            Files.write(timeOnly, log.toString().getBytes(StandardCharsets.US_ASCII));
+            Log4jDecoder decoder = Log4jDecoder.builder("%d{ABSOLUTE} %-5p %m%n")
+                .referenceDate(ReferenceDate.of(LocalDate.of(2018, 2, 28)))
+                .build();
+            // one thread decodes every chunk, twice, so the last chunk is followed by the first one
+            ForkJoinPool single = new ForkJoinPool(1);
+            try {
+                ParallelLogFileDecoder parallel = new ParallelLogFileDecoder(decoder).pool(single).chunkSize(500);
+                for (int run = 0; run < 2; run++) {
+                    List<Log4jLoggingEvent> events = new ArrayList<>();
+                    parallel.decode(timeOnly, events::add);
+                    assertEquals(200, events.size());
+                    for (int i = 0; i < events.size(); i++) {
+                        assertEquals(LocalDate.of(2018, 2, 28).atStartOfDay(ZoneOffset.UTC).plusMinutes(5 * i).toInstant(),
+                            events.get(i).getTimestamp());
+                    }
+                }
+            } finally {
+                single.shutdown();
+            }
+        } finally {
+            Files.deleteIfExists(timeOnly);
+        }
+    }
+
+    private static void assertSame(List<Log4jLoggingEvent> expected, List<Log4jLoggingEvent> events) {
+        assertEquals(expected.size(), events.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getTimestamp(), events.get(i).getTimestamp());
+            assertEquals(expected.get(i).thread.value, events.get(i).thread.value);
+            assertEquals(expected.get(i).message.value, events.get(i).message.value);
+            assertEquals(String.valueOf(expected.get(i).throwableTrace), String.valueOf(events.get(i).throwableTrace));
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package io.dashbase.log4j.parser;
+
+import io.dashbase.log4j.model.Log4jLoggingEvent;
+import org.junit.Test;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TimestampPrefixCacheTest {
+    @Test
+    public void supportedFormats() {
+        assertNotNull(TimestampPrefixCache.forFormat("dd MMM yyyy HH:mm:ss,SSS"));
+        assertNotNull(TimestampPrefixCache.forFormat("yyyyMMddHHmmssSSS"));
+        assertNotNull(TimestampPrefixCache.forFormat("HH:mm:ss,nnnnnn"));
+        assertNotNull(TimestampPrefixCache.forFormat("EEE MMM dd HH:mm:ss yyyy"));
+        assertNull(TimestampPrefixCache.forFormat("yyyy-MM-dd HH:mm:ss,SSS z"));
+        assertNull(TimestampPrefixCache.forFormat("HH:mm:ssnnnnnn"));
+        assertNull(TimestampPrefixCache.forFormat("HH:mm:ss,SSSSSSSSSS"));
+    }
+
+    @Test
+    public void addsFractionToCachedSecond() {
+        TimestampPrefixCache cache = TimestampPrefixCache.forFormat("dd MMM yyyy HH:mm:ss,SSS");
+        String first = "28 Feb 2018 12:00:01,001";
+        assertFalse(cache.get(first, 0, first.length(), 0));
+        cache.put(first, 0, first.length(), 0, 1519819201);
+
+        String second = "28 Feb 2018 12:00:01,459";
+        assertTrue(cache.get(second, 0, second.length(), 0));
+        assertEquals(1519819201, cache.epochSecond());
+        assertEquals(459_000_000, cache.nano());
+
+        String other = "28 Feb 2018 12:00:02,459";
+        assertFalse(cache.get(other, 0, other.length(), 0));
+        String malformed = "28 Feb 2018 12:00:01,45";
+        assertFalse(cache.get(malformed, 0, malformed.length(), 0));
+    }
+
+    @Test
+    public void nanoValue() {
+        TimestampPrefixCache cache = TimestampPrefixCache.forFormat("HH:mm:ss,nnnnnn");
+        String line = "x 23:08:06,000001 y";
+        cache.put(line, 2, 17, 17000, 1468800000L + 83286);
+        assertTrue(cache.get("23:08:06,123456", 0, 15, 17000));
+        assertEquals(123456, cache.nano());
+        // time-only formats are cached per local date
+        assertFalse(cache.get("23:08:06,123456", 0, 15, 17001));
+    }
+
+    @Test
+    public void keepsTheLastEntries() {
+        TimestampPrefixCache cache = TimestampPrefixCache.forFormat("HH:mm:ss");
+        for (int i = 0; i < 20; i++) {
+            String text = String.format("10:00:%02d", i);
+            cache.put(text, 0, text.length(), 0, i);
+        }
+        assertTrue(cache.get("10:00:19", 0, 8, 0));
+        assertEquals(19, cache.epochSecond());
+        assertTrue(cache.get("10:00:12", 0, 8, 0));
+        assertEquals(12, cache.epochSecond());
+        assertFalse(cache.get("10:00:11", 0, 8, 0));
+    }
+
+    @Test
+    public void decodesWithinTheSameSecond() {
+        ZoneId zone = ZoneId.of("America/Los_Angeles");
+        DateTimeFormatter dtf = DateTimeFormatter.ofPattern("dd MMM yyyy HH:mm:ss,SSS").withZone(zone);
+        Log4jDecoder decoder = new Log4jDecoder("%d{DATE} %m", zone);
+        Log4jLoggingEvent event = new Log4jLoggingEvent();
+        String[] timestamps = {
+            "28 Feb 2018 12:00:01,001", "28 Feb 2018 12:00:01,999", "28 Feb 2018 12:00:02,000",
+            "28 Feb 2018 12:00:01,500", "11 Mar 2018 03:00:00,250", "11 Mar 2018 03:00:00,750"
+        };
+        for (String timestamp : timestamps) {
+            Instant expected = ZonedDateTime.parse(timestamp, dtf).toInstant();
+            assertEquals(expected, decoder.parseString(timestamp + " message").timestamp);
+            assertTrue(decoder.parseInto(timestamp + " message", event));
+            assertEquals(expected, event.getTimestamp());
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package io.dashbase.log4j.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.regex.Pattern;
+
+public class DateFormatPatternTest {
+
+    @Test
+    public void tokenize() {
+        DateFormatPattern pattern = DateFormatPattern.of("yyyyMMdd'T'HHmmss.SSS");
+        List<DateFormatPattern.Token> tokens = pattern.tokens();
+        Assert.assertEquals("[yyyy, MM, dd, 'T', HH, mm, ss, '.', SSS]", tokens.toString());
+        Assert.assertTrue(tokens.get(3).isQuoted());
+        Assert.assertFalse(tokens.get(7).isQuoted());
+        Assert.assertEquals(3, tokens.get(8).count());
+        Assert.assertSame(pattern, DateFormatPattern.of("yyyyMMdd'T'HHmmss.SSS"));
+    }
+
+    @Test
+    public void quotes() {
+        Assert.assertEquals("[hh, ' o'clock']", DateFormatPattern.of("hh' o''clock'").tokens().toString());
+        Assert.assertEquals("[HH, ''', mm]", DateFormatPattern.of("HH''mm").tokens().toString());
+        Assert.assertTrue(DateFormatPattern.of("HH''mm").isClosed());
+        Assert.assertFalse(DateFormatPattern.of("HH 'mm").isClosed());
+    }
+
+    @Test
+    public void regex() {
+        Assert.assertEquals("\\d{1,2}:\\d{1,2}:\\d{1,2}\\.\\d{1,6}", DateFormatPattern.of("HH:mm:ss.SSS").regex());
+        Assert.assertEquals("\\d{1,2} [a-zA-Z]* \\d{4} \\d{1,2}:\\d{1,2}:\\d{1,2},\\d{1,6}",
+            DateFormatPattern.of("dd MMM yyyy HH:mm:ss,SSS").regex());
+        Assert.assertTrue(Pattern.matches(DateFormatPattern.of("yyyy-MM-dd'T'HH:mm:ss,SSSXXX").regex(),
+            "2018-02-28T12:00:00,001+09:00"));
+        Assert.assertTrue(Pattern.matches(DateFormatPattern.of("h 'o''clock' a").regex(), "5 o'clock PM"));
+    }
+}
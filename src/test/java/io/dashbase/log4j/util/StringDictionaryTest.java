@@ -0,0 +1,69 @@
+package io.dashbase.log4j.util;
+
+import io.dashbase.log4j.model.Utf8Text;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class StringDictionaryTest {
+
+    @Test
+    public void internsRanges() {
+        StringDictionary dictionary = new StringDictionary(16);
+        StringBuilder line = new StringBuilder("[main] com.example.App");
+        String main = dictionary.intern(line, 1, 5);
+        assertEquals("main", main);
+        int mainId = dictionary.lastId();
+
+        line.setLength(0);
+        line.append("xx main");
+        assertSame(main, dictionary.intern(line, 3, 7));
+        assertEquals(mainId, dictionary.lastId());
+        assertEquals(mainId, dictionary.id("main", 0, 4));
+        assertNotEquals(mainId, dictionary.id("worker", 0, 6));
+        assertEquals("", dictionary.intern("main", 2, 2));
+    }
+
+    @Test
+    public void staysBounded() {
+        StringDictionary dictionary = new StringDictionary(8);
+        assertEquals(8, dictionary.maxSize());
+        String first = dictionary.intern(new StringBuilder("thread-0"), 0, 8);
+        int firstId = dictionary.lastId();
+        for (int i = 1; i < 1000; i++) {
+            String name = "thread-" + i;
+            dictionary.intern(name, 0, name.length());
+        }
+        // evicted by now, comes back as a new entry with a new id
+        String again = dictionary.intern(new StringBuilder("thread-0"), 0, 8);
+        assertEquals(first, again);
+        assertNotSame(first, again);
+        assertNotEquals(firstId, dictionary.lastId());
+        assertEquals(4, new StringDictionary(1).maxSize());
+        assertEquals(1024, new StringDictionary(1000).maxSize());
+    }
+
+    @Test
+    public void matchesUtf8Bytes() {
+        StringDictionary dictionary = new StringDictionary(16);
+        String name = "Z\u00e4hler-\u20ac-\ud83d\ude00";
+        byte[] bytes = ("[" + name + "]").getBytes(StandardCharsets.UTF_8);
+        Utf8Text text = new Utf8Text().set(bytes, 0, bytes.length);
+        String first = dictionary.intern(text, 1, bytes.length - 1);
+        int id = dictionary.lastId();
+        assertEquals(name, first);
+        assertSame(first, dictionary.intern(text, 1, bytes.length - 1));
+        assertSame(first, dictionary.intern(name, 0, name.length()));
+        assertEquals(id, dictionary.lastId());
+
+        // same ASCII chars, other non-ASCII ones
+        byte[] other = "Z\u00f6hler-\u20ac-\ud83d\ude00".getBytes(StandardCharsets.UTF_8);
+        assertNotEquals(id, dictionary.id(new Utf8Text().set(other, 0, other.length), 0, other.length));
+        assertEquals(id, dictionary.id(text, 1, bytes.length - 1));
+    }
+}